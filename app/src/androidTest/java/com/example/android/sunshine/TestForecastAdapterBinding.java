@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.content.Context;
+import android.database.MatrixCursor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import android.view.ContextThemeWrapper;
+import android.widget.FrameLayout;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utilities.SunshineWeatherUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Checks that {@link ForecastAdapter} binds exactly what it used to format while binding, and
+ * compares the cost of binding a long list, an hourly forecast for two weeks, both ways.
+ * <p>
+ * The binds are grouped into frames of {@link #ROWS_PER_FRAME}, roughly what a fast fling binds,
+ * and a frame whose binds alone take more than {@link #JANK_BUDGET_NANOS} is counted as janky:
+ * that leaves too little of a 60 fps frame to lay out and draw.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestForecastAdapterBinding {
+
+    private static final String TAG = TestForecastAdapterBinding.class.getSimpleName();
+
+    private static final int HOURLY_ROWS = 24 * 14;
+
+    private static final int ROWS_PER_FRAME = 4;
+    private static final long JANK_BUDGET_NANOS = 8 * 1000 * 1000;
+
+    private final Context mContext = new ContextThemeWrapper(
+            InstrumentationRegistry.getTargetContext(), R.style.AppTheme_Forecast);
+
+    private MatrixCursor mCursor;
+
+    @Before
+    public void setUp() {
+        mCursor = new MatrixCursor(MainActivity.MAIN_FORECAST_PROJECTION);
+        long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+        int[] weatherIds = {200, 300, 500, 511, 600, 701, 761, 800, 801, 803, 900, 962};
+        for (int hour = 0; hour < HOURLY_ROWS; hour++) {
+            mCursor.addRow(new Object[]{
+                    today + (hour / 24) * SunshineDateUtils.DAY_IN_MILLIS,
+                    20 + hour % 7 + 0.5,
+                    10 + hour % 5 - 0.4,
+                    weatherIds[hour % weatherIds.length]});
+        }
+    }
+
+    @Test
+    public void testRowsMatchWhatBindingFormatted() {
+        List<ForecastRow> rows = ForecastRow.fromCursorRows(mContext, mCursor);
+        assertEquals(HOURLY_ROWS, rows.size());
+
+        for (int position = 0; position < HOURLY_ROWS; position++) {
+            mCursor.moveToPosition(position);
+            ForecastRow row = rows.get(position);
+            int weatherId = mCursor.getInt(MainActivity.INDEX_WEATHER_CONDITION_ID);
+            String high = SunshineWeatherUtils.formatTemperature(mContext,
+                    mCursor.getDouble(MainActivity.INDEX_WEATHER_MAX_TEMP));
+            String low = SunshineWeatherUtils.formatTemperature(mContext,
+                    mCursor.getDouble(MainActivity.INDEX_WEATHER_MIN_TEMP));
+            String description =
+                    SunshineWeatherUtils.getStringForWeatherCondition(mContext, weatherId);
+
+            assertEquals(mCursor.getLong(MainActivity.INDEX_WEATHER_DATE), row.date);
+            assertEquals(SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(weatherId),
+                    row.largeIconId);
+            assertEquals(SunshineWeatherUtils.getSmallArtResourceIdForWeatherCondition(weatherId),
+                    row.smallIconId);
+            assertEquals(SunshineDateUtils.getFriendlyDateString(mContext, row.date, false),
+                    row.dateText);
+            assertEquals(description, row.description);
+            assertEquals(mContext.getString(R.string.a11y_forecast, description),
+                    row.descriptionA11y);
+            assertEquals(high, row.highText);
+            assertEquals(mContext.getString(R.string.a11y_high_temp, high), row.highA11y);
+            assertEquals(low, row.lowText);
+            assertEquals(mContext.getString(R.string.a11y_low_temp, low), row.lowA11y);
+        }
+    }
+
+    @Test
+    public void benchmarkBinding() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                ForecastAdapter adapter = new ForecastAdapter(mContext,
+                        new ForecastAdapter.ForecastAdapterOnClickHandler() {
+                            @Override
+                            public void onClick(long date) {
+                            }
+                        });
+                ForecastAdapter.ForecastAdapterViewHolder holder = adapter.onCreateViewHolder(
+                        new FrameLayout(mContext), adapter.getItemViewType(1));
+
+                long start = System.nanoTime();
+                List<ForecastRow> rows = ForecastRow.fromCursorRows(mContext, mCursor);
+                long buildNanos = System.nanoTime() - start;
+                adapter.swapRows(rows);
+
+                /* Warm up both */
+                bindLikeBefore(holder, 1);
+                adapter.onBindViewHolder(holder, 1);
+
+                long[] beforeNanos = new long[HOURLY_ROWS];
+                long[] nowNanos = new long[HOURLY_ROWS];
+                for (int position = 1; position < HOURLY_ROWS; position++) {
+                    start = System.nanoTime();
+                    bindLikeBefore(holder, position);
+                    beforeNanos[position] = System.nanoTime() - start;
+
+                    start = System.nanoTime();
+                    adapter.onBindViewHolder(holder, position);
+                    nowNanos[position] = System.nanoTime() - start;
+                }
+
+                Log.i(TAG, "Building " + HOURLY_ROWS + " rows in the background took "
+                        + buildNanos / 1000 + " us");
+                Log.i(TAG, "Formatting while binding: " + describe(beforeNanos));
+                Log.i(TAG, "Binding prebuilt rows:    " + describe(nowNanos));
+            }
+        });
+    }
+
+    /* What onBindViewHolder did before rows were prebuilt, for the views of a future day */
+    private void bindLikeBefore(ForecastAdapter.ForecastAdapterViewHolder holder, int position) {
+        mCursor.moveToPosition(position);
+
+        int weatherId = mCursor.getInt(MainActivity.INDEX_WEATHER_CONDITION_ID);
+        holder.iconView.setImageResource(
+                SunshineWeatherUtils.getSmallArtResourceIdForWeatherCondition(weatherId));
+
+        long dateInMillis = mCursor.getLong(MainActivity.INDEX_WEATHER_DATE);
+        holder.dateView.setText(
+                SunshineDateUtils.getFriendlyDateString(mContext, dateInMillis, false));
+
+        String description = SunshineWeatherUtils.getStringForWeatherCondition(mContext, weatherId);
+        holder.descriptionView.setText(description);
+        holder.descriptionView.setContentDescription(
+                mContext.getString(R.string.a11y_forecast, description));
+
+        String highString = SunshineWeatherUtils.formatTemperature(mContext,
+                mCursor.getDouble(MainActivity.INDEX_WEATHER_MAX_TEMP));
+        holder.highTempView.setText(highString);
+        holder.highTempView.setContentDescription(
+                mContext.getString(R.string.a11y_high_temp, highString));
+
+        String lowString = SunshineWeatherUtils.formatTemperature(mContext,
+                mCursor.getDouble(MainActivity.INDEX_WEATHER_MIN_TEMP));
+        holder.lowTempView.setText(lowString);
+        holder.lowTempView.setContentDescription(
+                mContext.getString(R.string.a11y_low_temp, lowString));
+    }
+
+    /* Position 0 isn't timed, it is the warm up */
+    private static String describe(long[] nanos) {
+        int jankyFrames = 0;
+        long frameNanos = 0;
+        long total = 0;
+        for (int position = 1; position < nanos.length; position++) {
+            total += nanos[position];
+            frameNanos += nanos[position];
+            if (position % ROWS_PER_FRAME == 0) {
+                if (frameNanos > JANK_BUDGET_NANOS) {
+                    jankyFrames++;
+                }
+                frameNanos = 0;
+            }
+        }
+
+        long[] sorted = Arrays.copyOfRange(nanos, 1, nanos.length);
+        Arrays.sort(sorted);
+        return String.format("mean %.1f us, p50 %.1f us, p99 %.1f us per bind, "
+                        + "%d of %d frames janky",
+                total / 1e3 / sorted.length,
+                sorted[sorted.length / 2] / 1e3,
+                sorted[sorted.length * 99 / 100] / 1e3,
+                jankyFrames,
+                sorted.length / ROWS_PER_FRAME);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.content.Context;
+import android.database.MatrixCursor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Counts how many rows the forecast list rebinds when a load delivers rows diffed against the
+ * ones it shows: none when nothing changed, and just the changed one when a single day did.
+ * <p>
+ * The RecyclerView isn't attached to a window, so the tests lay it out themselves, the way a
+ * frame would after the adapter notified it.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestForecastRowsDiff {
+
+    private static final int DAYS = 14;
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+
+    private final Context mContext = new ContextThemeWrapper(
+            InstrumentationRegistry.getTargetContext(), R.style.AppTheme_Forecast);
+
+    private RecyclerView mRecyclerView;
+    private CountingAdapter mAdapter;
+
+    /* Positions bound since the last reset */
+    private final List<Integer> mBound = new ArrayList<Integer>();
+
+    @Before
+    public void setUp() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mAdapter = new CountingAdapter(mContext);
+                mRecyclerView = new RecyclerView(mContext);
+                mRecyclerView.setLayoutManager(new LinearLayoutManager(mContext));
+                /* A change animation would bind a second holder for the changed row */
+                mRecyclerView.setItemAnimator(null);
+                mRecyclerView.setAdapter(mAdapter);
+            }
+        });
+    }
+
+    @Test
+    public void testUnchangedSyncRebindsNothing() {
+        List<ForecastRow> rows = buildRows(-1);
+        int visible = show(ForecastRows.diff(rows, null));
+        assertTrue("Nothing was bound at first", visible > 0);
+
+        assertEquals(0, show(ForecastRows.diff(buildRows(-1), rows)));
+    }
+
+    @Test
+    public void testChangedDayRebindsOnlyThatRow() {
+        List<ForecastRow> rows = buildRows(-1);
+        show(ForecastRows.diff(rows, null));
+
+        assertEquals(1, show(ForecastRows.diff(buildRows(1), rows)));
+        assertEquals(1, mBound.size());
+        assertEquals(1, (int) mBound.get(0));
+    }
+
+    @Test
+    public void testRowsNotDiffedAgainstShownRowsRebindEverything() {
+        List<ForecastRow> rows = buildRows(-1);
+        int visible = show(ForecastRows.diff(rows, null));
+
+        /* Diffed against rows the adapter never showed, so it can't trust the diff */
+        List<ForecastRow> other = buildRows(-1);
+        assertEquals(visible, show(ForecastRows.diff(buildRows(-1), other)));
+    }
+
+    /**
+     * Hands the update to the adapter and lays the list out.
+     *
+     * @return How many rows were bound to do so
+     */
+    private int show(final ForecastRows update) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mBound.clear();
+                mAdapter.updateRows(update);
+                mRecyclerView.measure(
+                        View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                        View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+                mRecyclerView.layout(0, 0, WIDTH, HEIGHT);
+            }
+        });
+        return mBound.size();
+    }
+
+    /**
+     * A fortnight of forecast rows, the same each time except that the day at changedPosition,
+     * if there is one, is a degree warmer.
+     */
+    private List<ForecastRow> buildRows(int changedPosition) {
+        MatrixCursor cursor = new MatrixCursor(MainActivity.MAIN_FORECAST_PROJECTION);
+        long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+        for (int day = 0; day < DAYS; day++) {
+            double warmer = day == changedPosition ? 1 : 0;
+            cursor.addRow(new Object[]{
+                    today + day * SunshineDateUtils.DAY_IN_MILLIS,
+                    20 + day % 7 + warmer,
+                    10 + day % 5,
+                    800});
+        }
+        try {
+            return ForecastRow.fromCursorRows(mContext, cursor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private class CountingAdapter extends ForecastAdapter {
+
+        CountingAdapter(Context context) {
+            super(context, new ForecastAdapterOnClickHandler() {
+                @Override
+                public void onClick(long date) {
+                }
+            });
+        }
+
+        @Override
+        public void onBindViewHolder(ForecastAdapterViewHolder holder, int position) {
+            mBound.add(position);
+            super.onBindViewHolder(holder, position);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.R;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Map;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Checks that {@link SunshineConfig} snapshots hold what SharedPreferences holds, that a change
+ * replaces the snapshot rather than changing it, and that coordinates saved off the main thread
+ * can be read back right away.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestSunshineConfig {
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private SharedPreferences mPreferences;
+    private Map<String, ?> mSaved;
+
+    @Before
+    public void setUp() {
+        mPreferences = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mSaved = mPreferences.getAll();
+    }
+
+    @After
+    public void tearDown() {
+        /* Removed one by one, since clear() doesn't tell the change listeners */
+        SharedPreferences.Editor editor = mPreferences.edit();
+        for (String key : mPreferences.getAll().keySet()) {
+            if (!mSaved.containsKey(key)) {
+                editor.remove(key);
+            }
+        }
+        for (Map.Entry<String, ?> entry : mSaved.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof String) {
+                editor.putString(entry.getKey(), (String) value);
+            } else if (value instanceof Boolean) {
+                editor.putBoolean(entry.getKey(), (Boolean) value);
+            } else if (value instanceof Long) {
+                editor.putLong(entry.getKey(), (Long) value);
+            } else if (value instanceof Integer) {
+                editor.putInt(entry.getKey(), (Integer) value);
+            } else if (value instanceof Float) {
+                editor.putFloat(entry.getKey(), (Float) value);
+            }
+        }
+        commitOnMainThread(editor);
+    }
+
+    @Test
+    public void testSnapshotMatchesPreferences() {
+        commitOnMainThread(mPreferences.edit()
+                .putString(mContext.getString(R.string.pref_location_key), "Berlin,DE")
+                .putBoolean(mContext.getString(R.string.pref_enable_notifications_key), false)
+                .putString(mContext.getString(R.string.pref_units_key),
+                        mContext.getString(R.string.pref_units_imperial)));
+
+        SunshineConfig config = SunshineConfig.get(mContext);
+        assertEquals("Berlin,DE", config.getPreferredWeatherLocation());
+        assertFalse(config.areNotificationsEnabled());
+        assertFalse(config.isMetric());
+    }
+
+    @Test
+    public void testDefaults() {
+        commitOnMainThread(mPreferences.edit()
+                .remove(mContext.getString(R.string.pref_location_key))
+                .remove(mContext.getString(R.string.pref_enable_notifications_key))
+                .remove(mContext.getString(R.string.pref_units_key))
+                .remove(SunshinePreferences.PREF_COORD_LAT)
+                .remove(SunshinePreferences.PREF_COORD_LONG));
+
+        SunshineConfig config = SunshineConfig.get(mContext);
+        assertEquals(mContext.getString(R.string.pref_location_default),
+                config.getPreferredWeatherLocation());
+        assertEquals(mContext.getResources().getBoolean(R.bool.show_notifications_by_default),
+                config.areNotificationsEnabled());
+        assertTrue(config.isMetric());
+        assertFalse(config.isLocationLatLonAvailable());
+        assertEquals(0.0, config.getLocationCoordinates()[0], 0);
+        assertEquals(0.0, config.getLocationCoordinates()[1], 0);
+    }
+
+    @Test
+    public void testChangeReplacesSnapshot() {
+        commitOnMainThread(mPreferences.edit().putString(
+                mContext.getString(R.string.pref_units_key),
+                mContext.getString(R.string.pref_units_metric)));
+        SunshineConfig before = SunshineConfig.get(mContext);
+
+        commitOnMainThread(mPreferences.edit().putString(
+                mContext.getString(R.string.pref_units_key),
+                mContext.getString(R.string.pref_units_imperial)));
+        SunshineConfig after = SunshineConfig.get(mContext);
+
+        assertNotSame(before, after);
+        assertTrue(before.isMetric());
+        assertFalse(after.isMetric());
+        assertFalse(SunshinePreferences.isMetric(mContext));
+    }
+
+    @Test
+    public void testCoordinatesReadableRightAfterSaving() {
+        /* Off the main thread, the change listener won't have run yet */
+        SunshinePreferences.setLocationDetails(mContext, 52.52, 13.405);
+        assertTrue(SunshinePreferences.isLocationLatLonAvailable(mContext));
+        double[] coordinates = SunshinePreferences.getLocationCoordinates(mContext);
+        assertEquals(52.52, coordinates[0], 0);
+        assertEquals(13.405, coordinates[1], 0);
+
+        SunshinePreferences.resetLocationCoordinates(mContext);
+        assertFalse(SunshinePreferences.isLocationLatLonAvailable(mContext));
+    }
+
+    /* On the main thread, SharedPreferences calls the change listeners before commit returns */
+    private static void commitOnMainThread(final SharedPreferences.Editor editor) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                editor.commit();
+            }
+        });
+    }
+}
@@ -101,5 +101,10 @@ public class TestUriMatcher {
         assertEquals(weatherWithDateUriCodeDoesNotMatch,
                 expectedWeatherWithDateCode,
                 actualWeatherWithDateCode);
+
+        /* Test that the replace URI isn't mistaken for either of the URIs above */
+        assertEquals("Error: The CODE_WEATHER_REPLACE URI was matched incorrectly.",
+                WeatherProvider.CODE_WEATHER_REPLACE,
+                testMatcher.match(WeatherContract.WeatherEntry.CONTENT_URI_REPLACE));
     }
 }
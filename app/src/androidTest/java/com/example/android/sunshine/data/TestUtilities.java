@@ -15,7 +15,9 @@
  */
 package com.example.android.sunshine.data;
 
+import android.content.ContentProviderClient;
 import android.content.ContentValues;
+import android.content.Context;
 import android.database.ContentObserver;
 import android.database.Cursor;
 import android.net.Uri;
@@ -173,6 +175,51 @@ class TestUtilities {
     }
 
 
+    /**
+     * Copies an array of test ContentValues into a ForecastBatch, for the parts of our
+     * ContentProvider that take their rows in primitive arrays.
+     *
+     * @param values Rows created by one of the methods above
+     * @return A ForecastBatch holding the same rows, in the same order
+     */
+    static ForecastBatch createForecastBatch(ContentValues[] values) {
+        ForecastBatch batch = new ForecastBatch(values.length);
+        for (ContentValues row : values) {
+            batch.add(row.getAsLong(COLUMN_DATE),
+                    row.getAsInteger(COLUMN_WEATHER_ID),
+                    row.getAsDouble(COLUMN_MIN_TEMP),
+                    row.getAsDouble(COLUMN_MAX_TEMP),
+                    row.getAsDouble(COLUMN_HUMIDITY),
+                    row.getAsDouble(COLUMN_PRESSURE),
+                    row.getAsDouble(COLUMN_WIND_SPEED),
+                    row.getAsDouble(COLUMN_DEGREES));
+        }
+        return batch;
+    }
+
+    /**
+     * Returns the WeatherProvider instance running in our process. The tests share a process
+     * with the app, so the provider is local.
+     */
+    static WeatherProvider getWeatherProvider(Context context) {
+        ContentProviderClient client = context.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.WeatherEntry.CONTENT_URI);
+        try {
+            return (WeatherProvider) client.getLocalContentProvider();
+        } finally {
+            client.release();
+        }
+    }
+
+    /**
+     * WeatherProvider answers most queries from an in-memory snapshot that it refreshes after
+     * its own writes. Tests that write to the weather table directly call this afterwards so the
+     * provider doesn't answer from a stale snapshot.
+     */
+    static void invalidateWeatherProviderSnapshot(Context context) {
+        getWeatherProvider(context).invalidateSnapshot();
+    }
+
     static TestContentObserver getTestContentObserver() {
         return TestContentObserver.getTestContentObserver();
     }
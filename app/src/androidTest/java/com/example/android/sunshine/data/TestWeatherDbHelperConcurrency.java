@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Measures how long a typical forecast query takes while another thread is busy with a large
+ * bulk insert transaction, once with the rollback journal and once with write-ahead logging.
+ * The read latency percentiles of both modes are written to logcat.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestWeatherDbHelperConcurrency {
+
+    private static final String TAG = TestWeatherDbHelperConcurrency.class.getSimpleName();
+
+    private static final String BENCHMARK_DATABASE_NAME = "weather_concurrency_benchmark.db";
+
+    /* Rows written by the "sync" while we measure reads */
+    private static final int ROWS_TO_INSERT = 200000;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    @Test
+    public void benchmarkReadLatencyDuringBulkInsert() throws Exception {
+        long[] rollbackLatencies = measureReadLatencies(false);
+        long[] walLatencies = measureReadLatencies(true);
+
+        Log.i(TAG, "Rollback journal: " + describe(rollbackLatencies));
+        Log.i(TAG, "Write-ahead log:  " + describe(walLatencies));
+
+        assertTrue("No reads completed in WAL mode", walLatencies.length > 0);
+    }
+
+    /**
+     * Starts a bulk insert of {@link #ROWS_TO_INSERT} rows on a background thread and keeps
+     * querying a two week forecast until it has committed.
+     *
+     * @return The latency of every query, in nanoseconds, sorted
+     */
+    private long[] measureReadLatencies(boolean writeAheadLogging) throws Exception {
+        mContext.deleteDatabase(BENCHMARK_DATABASE_NAME);
+        final WeatherDbHelper helper =
+                new WeatherDbHelper(mContext, BENCHMARK_DATABASE_NAME, writeAheadLogging);
+        final SQLiteDatabase db = helper.getWritableDatabase();
+
+        try {
+            /* Something for the readers to find before the insert starts */
+            final long firstDate = SunshineDateUtils.normalizeDate(TestUtilities.DATE_NORMALIZED);
+            insertRows(db, firstDate, 14);
+
+            final CountDownLatch writerStarted = new CountDownLatch(1);
+            final AtomicBoolean writing = new AtomicBoolean(true);
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        WeatherDbHelper.beginWriteTransaction(db);
+                        try {
+                            writerStarted.countDown();
+                            insertRows(db, firstDate + 14 * SunshineDateUtils.DAY_IN_MILLIS,
+                                    ROWS_TO_INSERT);
+                            db.setTransactionSuccessful();
+                        } finally {
+                            db.endTransaction();
+                        }
+                    } finally {
+                        writing.set(false);
+                    }
+                }
+            });
+            writer.start();
+            writerStarted.await();
+
+            long[] latencies = new long[1024];
+            int count = 0;
+            String[] selectionArgs = {Long.toString(firstDate)};
+            while (writing.get()) {
+                long start = System.nanoTime();
+                Cursor cursor = db.query(
+                        WeatherContract.WeatherEntry.TABLE_NAME,
+                        null,
+                        WeatherContract.WeatherEntry.COLUMN_DATE + " >= ?",
+                        selectionArgs,
+                        null,
+                        null,
+                        WeatherContract.WeatherEntry.COLUMN_DATE + " ASC",
+                        "14");
+                cursor.getCount();
+                cursor.close();
+
+                if (count == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, count * 2);
+                }
+                latencies[count++] = System.nanoTime() - start;
+            }
+            writer.join();
+
+            latencies = Arrays.copyOf(latencies, count);
+            Arrays.sort(latencies);
+            return latencies;
+        } finally {
+            helper.close();
+            mContext.deleteDatabase(BENCHMARK_DATABASE_NAME);
+        }
+    }
+
+    private static void insertRows(SQLiteDatabase db, long firstDate, int rowCount) {
+        SQLiteStatement insert = db.compileStatement("INSERT INTO "
+                + WeatherContract.WeatherEntry.TABLE_NAME + " ("
+                + WeatherContract.WeatherEntry.COLUMN_DATE + ", "
+                + WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + ", "
+                + WeatherContract.WeatherEntry.COLUMN_MIN_TEMP + ", "
+                + WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + ", "
+                + WeatherContract.WeatherEntry.COLUMN_HUMIDITY + ", "
+                + WeatherContract.WeatherEntry.COLUMN_PRESSURE + ", "
+                + WeatherContract.WeatherEntry.COLUMN_WIND_SPEED + ", "
+                + WeatherContract.WeatherEntry.COLUMN_DEGREES
+                + ") VALUES (?, 800, 10, 20, 50, 1013, 5, 180)");
+        try {
+            for (int i = 0; i < rowCount; i++) {
+                insert.bindLong(1, firstDate + i * SunshineDateUtils.DAY_IN_MILLIS);
+                insert.executeInsert();
+            }
+        } finally {
+            insert.close();
+        }
+    }
+
+    private static String describe(long[] sortedLatencies) {
+        if (sortedLatencies.length == 0) {
+            return "no reads completed while the insert was running";
+        }
+        return String.format("%d reads, p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms",
+                sortedLatencies.length,
+                percentile(sortedLatencies, 50),
+                percentile(sortedLatencies, 90),
+                percentile(sortedLatencies, 99),
+                sortedLatencies[sortedLatencies.length - 1] / 1e6);
+    }
+
+    private static double percentile(long[] sortedLatencies, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sortedLatencies.length) - 1;
+        return sortedLatencies[Math.max(0, index)] / 1e6;
+    }
+}
@@ -21,16 +21,27 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.content.pm.ProviderInfo;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
 
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utils.PollingCheck;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static com.example.android.sunshine.data.TestUtilities.BULK_INSERT_RECORDS_TO_INSERT;
 import static com.example.android.sunshine.data.TestUtilities.createBulkInsertTestWeatherValues;
 import static junit.framework.Assert.assertEquals;
@@ -184,6 +195,7 @@ public class TestWeatherProvider {
 
         /* We are done with the database, close it now. */
         database.close();
+        TestUtilities.invalidateWeatherProviderSnapshot(mContext);
 
         /*
          * Perform our ContentProvider query. We expect the cursor that is returned will contain
@@ -326,6 +338,222 @@ public class TestWeatherProvider {
         cursor.close();
     }
 
+    /**
+     * Inserts the same rows as {@link #testBulkInsert()}, but through the ForecastBatch method of
+     * our ContentProvider, and makes sure they read back identically.
+     */
+    @Test
+    public void testBulkInsertBatch() {
+        ContentValues[] expectedValues = createBulkInsertTestWeatherValues();
+        ForecastBatch batch = TestUtilities.createForecastBatch(expectedValues);
+
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        ContentResolver contentResolver = mContext.getContentResolver();
+        contentResolver.registerContentObserver(
+                WeatherContract.WeatherEntry.CONTENT_URI, true, weatherObserver);
+
+        Bundle result = contentResolver.call(WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_BULK_INSERT_BATCH, null, batch.toBundle());
+
+        weatherObserver.waitForNotificationOrFail();
+        contentResolver.unregisterContentObserver(weatherObserver);
+
+        assertNotNull("call returned a null Bundle", result);
+        assertEquals("Number of expected records inserted does not match actual inserted record count",
+                BULK_INSERT_RECORDS_TO_INSERT,
+                result.getInt(WeatherContract.KEY_ROW_COUNT));
+
+        Cursor cursor = contentResolver.query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+
+        cursor.moveToFirst();
+        for (int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext()) {
+            TestUtilities.validateCurrentRecord(
+                    "testBulkInsertBatch. Error validating WeatherEntry " + i,
+                    cursor,
+                    expectedValues[i]);
+        }
+
+        cursor.close();
+    }
+
+    /**
+     * Syncs the same forecast twice, then a forecast where one day changed, one day is new and
+     * the first day is gone, and checks the counts reported by the differential sync methods.
+     */
+    @Test
+    public void testSyncBatch() {
+        ContentResolver contentResolver = mContext.getContentResolver();
+        ContentValues[] values = createBulkInsertTestWeatherValues();
+
+        Bundle first = syncBatch(contentResolver, TestUtilities.createForecastBatch(values));
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT,
+                first.getInt(WeatherContract.KEY_ROWS_INSERTED));
+
+        Bundle unchanged = syncBatch(contentResolver, TestUtilities.createForecastBatch(values));
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT,
+                unchanged.getInt(WeatherContract.KEY_ROWS_UNCHANGED));
+        assertEquals(0, unchanged.getInt(WeatherContract.KEY_ROWS_UPDATED));
+        assertEquals(0, unchanged.getInt(WeatherContract.KEY_ROWS_INSERTED));
+
+        /* Drop the first day, change the second one and add a day at the end */
+        ContentValues[] nextValues = new ContentValues[values.length];
+        System.arraycopy(values, 1, nextValues, 0, values.length - 1);
+        nextValues[0] = new ContentValues(nextValues[0]);
+        nextValues[0].put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 99.5);
+        ContentValues newDay = new ContentValues(values[values.length - 1]);
+        newDay.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                newDay.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE)
+                        + SunshineDateUtils.DAY_IN_MILLIS);
+        nextValues[values.length - 1] = newDay;
+
+        ForecastBatch nextBatch = TestUtilities.createForecastBatch(nextValues);
+        Bundle next = syncBatch(contentResolver, nextBatch);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT - 2,
+                next.getInt(WeatherContract.KEY_ROWS_UNCHANGED));
+        assertEquals(1, next.getInt(WeatherContract.KEY_ROWS_UPDATED));
+        assertEquals(1, next.getInt(WeatherContract.KEY_ROWS_INSERTED));
+
+        Bundle pruneExtras = new Bundle();
+        pruneExtras.putLong(WeatherContract.EXTRA_FIRST_DATE, nextBatch.date[0]);
+        pruneExtras.putLong(WeatherContract.EXTRA_LAST_DATE, nextBatch.date[nextBatch.size() - 1]);
+        Bundle pruned = contentResolver.call(WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_PRUNE, null, pruneExtras);
+        assertEquals(1, pruned.getInt(WeatherContract.KEY_ROWS_DELETED));
+
+        Cursor cursor = contentResolver.query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+
+        assertEquals(nextValues.length, cursor.getCount());
+        cursor.moveToFirst();
+        for (int i = 0; i < nextValues.length; i++, cursor.moveToNext()) {
+            TestUtilities.validateCurrentRecord(
+                    "testSyncBatch. Error validating WeatherEntry " + i,
+                    cursor,
+                    nextValues[i]);
+        }
+        cursor.close();
+    }
+
+    /**
+     * Replaces the forecast over and over through CONTENT_URI_REPLACE while several threads keep
+     * querying the weather table. Since the delete and the inserts share one transaction, no
+     * reader may ever see the table empty.
+     */
+    @Test
+    public void testReplaceIsAtomicForReaders() throws Exception {
+        final ContentResolver contentResolver = mContext.getContentResolver();
+        final ContentValues[] values = createBulkInsertTestWeatherValues();
+
+        contentResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI_REPLACE, values);
+
+        final int readerCount = 4;
+        final int replaceCount = 100;
+        final AtomicBoolean replacing = new AtomicBoolean(true);
+        final AtomicInteger emptyReads = new AtomicInteger();
+        final AtomicInteger totalReads = new AtomicInteger();
+
+        Thread[] readers = new Thread[readerCount];
+        for (int i = 0; i < readerCount; i++) {
+            readers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (replacing.get()) {
+                        Cursor cursor = contentResolver.query(
+                                WeatherContract.WeatherEntry.CONTENT_URI,
+                                new String[]{WeatherContract.WeatherEntry.COLUMN_DATE},
+                                null,
+                                null,
+                                null);
+                        if (cursor == null || cursor.getCount() == 0) {
+                            emptyReads.incrementAndGet();
+                        }
+                        if (cursor != null) {
+                            cursor.close();
+                        }
+                        totalReads.incrementAndGet();
+                    }
+                }
+            });
+            readers[i].start();
+        }
+
+        try {
+            for (int i = 0; i < replaceCount; i++) {
+                int replaced = contentResolver.bulkInsert(
+                        WeatherContract.WeatherEntry.CONTENT_URI_REPLACE, values);
+                assertEquals(BULK_INSERT_RECORDS_TO_INSERT, replaced);
+            }
+        } finally {
+            replacing.set(false);
+            for (Thread reader : readers) {
+                reader.join();
+            }
+        }
+
+        assertTrue("Readers didn't get to run during the replaces", totalReads.get() > 0);
+        assertEquals("A reader saw an empty weather table during a replace",
+                0, emptyReads.get());
+    }
+
+    /**
+     * A replace deletes and inserts, but observers must only be told about it once.
+     */
+    @Test
+    public void testReplaceNotifiesOnce() throws Exception {
+        ContentResolver contentResolver = mContext.getContentResolver();
+        ContentValues[] values = createBulkInsertTestWeatherValues();
+        contentResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, values);
+
+        HandlerThread observerThread = new HandlerThread("ReplaceObserverThread");
+        observerThread.start();
+        final AtomicInteger notifications = new AtomicInteger();
+        ContentObserver observer = new ContentObserver(new Handler(observerThread.getLooper())) {
+            @Override
+            public void onChange(boolean selfChange) {
+                notifications.incrementAndGet();
+            }
+        };
+        contentResolver.registerContentObserver(
+                WeatherContract.WeatherEntry.CONTENT_URI, true, observer);
+
+        try {
+            contentResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI_REPLACE, values);
+
+            PollingCheck.check("No notification after a replace", 5000,
+                    new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() {
+                            return notifications.get() > 0;
+                        }
+                    });
+
+            /* Give any further notification the chance to arrive */
+            Thread.sleep(500);
+            assertEquals(1, notifications.get());
+        } finally {
+            contentResolver.unregisterContentObserver(observer);
+            observerThread.quit();
+        }
+    }
+
+    private static Bundle syncBatch(ContentResolver contentResolver, ForecastBatch batch) {
+        Bundle result = contentResolver.call(WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_SYNC_BATCH, null, batch.toBundle());
+        assertNotNull("call returned a null Bundle", result);
+        return result;
+    }
+
     /**
      * This test deletes all records from the weather table using the ContentProvider. It also
      * verifies that registered ContentObservers receive onChange callbacks when data is deleted.
@@ -445,5 +673,8 @@ public class TestWeatherProvider {
 
         /* Always close the database when you're through with it */
         database.close();
+
+        /* We went around the provider, so make sure it doesn't answer from a stale snapshot */
+        TestUtilities.invalidateWeatherProviderSnapshot(InstrumentationRegistry.getTargetContext());
     }
 }
\ No newline at end of file
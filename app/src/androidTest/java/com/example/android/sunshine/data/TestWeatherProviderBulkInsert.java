@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Compares the compiled statement path of {@link WeatherProvider#bulkInsert} with the original
+ * loop that validated each row and called {@link SQLiteDatabase#insert} for it. Both insert the
+ * same rows in a single transaction and the timings are written to logcat.
+ * <p>
+ * To keep a million rows from needing a million ContentValues, the rows are inserted in chunks
+ * that reuse the same ContentValues with new dates. Both paths are timed the same way.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestWeatherProviderBulkInsert {
+
+    private static final String TAG = TestWeatherProviderBulkInsert.class.getSimpleName();
+
+    private static final String BENCHMARK_DATABASE_NAME = "weather_bulk_insert_benchmark.db";
+
+    private static final int CHUNK_SIZE = 10000;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private WeatherDbHelper mHelper;
+    private ContentValues[] mChunk;
+
+    @Before
+    public void setUp() {
+        mContext.deleteDatabase(BENCHMARK_DATABASE_NAME);
+        mHelper = new WeatherDbHelper(mContext, BENCHMARK_DATABASE_NAME, true);
+
+        mChunk = new ContentValues[CHUNK_SIZE];
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            mChunk[i] = TestUtilities.createTestWeatherContentValues();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mHelper.close();
+        mContext.deleteDatabase(BENCHMARK_DATABASE_NAME);
+    }
+
+    @Test
+    public void benchmarkBulkInsert() {
+        for (int rowCount : new int[]{10000, 100000, 1000000}) {
+            long loopNanos = timeInsert(rowCount, false);
+            long compiledNanos = timeInsert(rowCount, true);
+
+            Log.i(TAG, String.format("%d rows: insert loop %.1f ms, compiled statement %.1f ms",
+                    rowCount, loopNanos / 1e6, compiledNanos / 1e6));
+        }
+    }
+
+    /**
+     * Empties the table and inserts rowCount rows in one transaction.
+     *
+     * @return How long the transaction took, in nanoseconds
+     */
+    private long timeInsert(int rowCount, boolean compiled) {
+        SQLiteDatabase db = mHelper.getWritableDatabase();
+        db.delete(WeatherContract.WeatherEntry.TABLE_NAME, null, null);
+
+        long firstDate = SunshineDateUtils.normalizeDate(TestUtilities.DATE_NORMALIZED);
+        int rowsInserted = 0;
+
+        long start = System.nanoTime();
+        WeatherDbHelper.beginWriteTransaction(db);
+        try {
+            for (int offset = 0; offset < rowCount; offset += CHUNK_SIZE) {
+                ContentValues[] values = mChunk;
+                if (rowCount - offset < CHUNK_SIZE) {
+                    values = new ContentValues[rowCount - offset];
+                    System.arraycopy(mChunk, 0, values, 0, values.length);
+                }
+                for (int i = 0; i < values.length; i++) {
+                    values[i].put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                            firstDate + (offset + i) * SunshineDateUtils.DAY_IN_MILLIS);
+                }
+
+                if (compiled) {
+                    long[] dates = WeatherProvider.getNormalizedDates(values);
+                    rowsInserted += WeatherProvider.insertWeatherValues(db, values, dates);
+                } else {
+                    rowsInserted += insertLoop(db, values);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        assertEquals(rowCount, rowsInserted);
+        assertEquals(rowCount,
+                DatabaseUtils.queryNumEntries(db, WeatherContract.WeatherEntry.TABLE_NAME));
+        return elapsed;
+    }
+
+    /* The loop WeatherProvider#bulkInsert used before it compiled its INSERT */
+    private static int insertLoop(SQLiteDatabase db, ContentValues[] values) {
+        int rowsInserted = 0;
+        for (ContentValues value : values) {
+            long weatherDate = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+            if (!SunshineDateUtils.isDateNormalized(weatherDate)) {
+                throw new IllegalArgumentException("Date must be normalized to insert");
+            }
+
+            long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+            if (_id != -1) {
+                rowsInserted++;
+            }
+        }
+        return rowsInserted;
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Checks that the queries {@link WeatherProvider} answers from its in-memory forecast snapshot
+ * return exactly what SQLite would have, that other queries still go to SQLite, and logs how
+ * the latency of both paths compares.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestWeatherProviderSnapshot {
+
+    private static final String TAG = TestWeatherProviderSnapshot.class.getSimpleName();
+
+    private static final int BENCHMARK_QUERIES = 2000;
+
+    /* The columns MainActivity asks for */
+    private static final String[] LIST_PROJECTION = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+    };
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private ContentResolver mContentResolver;
+    private WeatherProvider mProvider;
+
+    @Before
+    public void setUp() {
+        mContentResolver = mContext.getContentResolver();
+        mProvider = TestUtilities.getWeatherProvider(mContext);
+        mProvider.setSnapshotEnabled(true);
+
+        mContentResolver.delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContentResolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI,
+                TestUtilities.createBulkInsertTestWeatherValues());
+    }
+
+    @After
+    public void tearDown() {
+        mProvider.setSnapshotEnabled(true);
+        mContentResolver.delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+    }
+
+    @Test
+    public void testSnapshotMatchesSqlite() {
+        long thirdDay = TestUtilities.DATE_NORMALIZED + 2 * SunshineDateUtils.DAY_IN_MILLIS;
+        String dateAscending = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+
+        assertSameAsSqlite(WeatherContract.WeatherEntry.CONTENT_URI,
+                null, null, null, null);
+        assertSameAsSqlite(WeatherContract.WeatherEntry.CONTENT_URI,
+                LIST_PROJECTION,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " >= " + thirdDay,
+                null,
+                dateAscending);
+        assertSameAsSqlite(WeatherContract.WeatherEntry.CONTENT_URI,
+                LIST_PROJECTION,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " >= ?",
+                new String[]{Long.toString(thirdDay)},
+                WeatherContract.WeatherEntry.COLUMN_DATE + " DESC");
+        assertSameAsSqlite(WeatherContract.WeatherEntry.buildWeatherUriWithDate(thirdDay),
+                null, null, null, null);
+        assertSameAsSqlite(WeatherContract.WeatherEntry.buildWeatherUriWithDate(
+                TestUtilities.DATE_NORMALIZED - SunshineDateUtils.DAY_IN_MILLIS),
+                LIST_PROJECTION, null, null, null);
+    }
+
+    @Test
+    public void testSnapshotFollowsWrites() {
+        long firstDay = TestUtilities.DATE_NORMALIZED;
+        mContentResolver.delete(WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{Long.toString(firstDay)});
+
+        int hits = getSnapshotStats().getInt(WeatherContract.KEY_SNAPSHOT_HITS);
+        Cursor cursor = mContentResolver.query(
+                WeatherContract.WeatherEntry.buildWeatherUriWithDate(firstDay),
+                null, null, null, null);
+        assertNotNull(cursor);
+        assertEquals("Snapshot still holds a deleted row", 0, cursor.getCount());
+        cursor.close();
+        assertEquals(hits + 1, getSnapshotStats().getInt(WeatherContract.KEY_SNAPSHOT_HITS));
+    }
+
+    @Test
+    public void testUnsupportedQueriesGoToSqlite() {
+        Bundle before = getSnapshotStats();
+
+        Cursor cursor = mContentResolver.query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                LIST_PROJECTION,
+                WeatherContract.WeatherEntry.COLUMN_HUMIDITY + " > ?",
+                new String[]{"0"},
+                null);
+        assertNotNull(cursor);
+        assertEquals(TestUtilities.BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.close();
+
+        Bundle after = getSnapshotStats();
+        assertEquals(before.getInt(WeatherContract.KEY_SNAPSHOT_HITS),
+                after.getInt(WeatherContract.KEY_SNAPSHOT_HITS));
+        assertEquals(before.getInt(WeatherContract.KEY_SNAPSHOT_MISSES) + 1,
+                after.getInt(WeatherContract.KEY_SNAPSHOT_MISSES));
+    }
+
+    @Test
+    public void benchmarkSnapshotAgainstSqlite() {
+        String selection = WeatherContract.WeatherEntry.getSqlSelectForTodayOnwards();
+        String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+
+        mProvider.setSnapshotEnabled(false);
+        long[] sqliteNanos = timeQueries(selection, sortOrder);
+        mProvider.setSnapshotEnabled(true);
+        long[] snapshotNanos = timeQueries(selection, sortOrder);
+
+        Log.i(TAG, "SQLite:   " + describe(sqliteNanos));
+        Log.i(TAG, "Snapshot: " + describe(snapshotNanos));
+    }
+
+    private void assertSameAsSqlite(Uri uri, String[] projection, String selection,
+                                    String[] selectionArgs, String sortOrder) {
+        Bundle before = getSnapshotStats();
+        Cursor fromSnapshot = mContentResolver.query(
+                uri, projection, selection, selectionArgs, sortOrder);
+        Bundle after = getSnapshotStats();
+        assertEquals("Query was not answered from the snapshot: " + uri + " " + selection,
+                before.getInt(WeatherContract.KEY_SNAPSHOT_HITS) + 1,
+                after.getInt(WeatherContract.KEY_SNAPSHOT_HITS));
+
+        mProvider.setSnapshotEnabled(false);
+        Cursor fromSqlite = mContentResolver.query(
+                uri, projection, selection, selectionArgs, sortOrder);
+        mProvider.setSnapshotEnabled(true);
+
+        assertNotNull(fromSnapshot);
+        assertNotNull(fromSqlite);
+        try {
+            assertTrue(Arrays.equals(fromSqlite.getColumnNames(), fromSnapshot.getColumnNames()));
+            assertEquals(fromSqlite.getCount(), fromSnapshot.getCount());
+            while (fromSqlite.moveToNext()) {
+                assertTrue(fromSnapshot.moveToNext());
+                for (int i = 0; i < fromSqlite.getColumnCount(); i++) {
+                    assertEquals(fromSqlite.getType(i), fromSnapshot.getType(i));
+                    /* SQLite and Java format doubles differently, so compare their values */
+                    if (fromSqlite.getType(i) == Cursor.FIELD_TYPE_FLOAT) {
+                        assertEquals(fromSqlite.getDouble(i), fromSnapshot.getDouble(i));
+                    } else {
+                        assertEquals(fromSqlite.getString(i), fromSnapshot.getString(i));
+                    }
+                }
+            }
+        } finally {
+            fromSnapshot.close();
+            fromSqlite.close();
+        }
+    }
+
+    private Bundle getSnapshotStats() {
+        return mContentResolver.call(WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_GET_SNAPSHOT_STATS, null, null);
+    }
+
+    /* Runs the main forecast query over and over, reading every row like the list does */
+    private long[] timeQueries(String selection, String sortOrder) {
+        long[] nanos = new long[BENCHMARK_QUERIES];
+        for (int i = 0; i < BENCHMARK_QUERIES; i++) {
+            long start = System.nanoTime();
+            Cursor cursor = mContentResolver.query(WeatherContract.WeatherEntry.CONTENT_URI,
+                    LIST_PROJECTION, selection, null, sortOrder);
+            while (cursor.moveToNext()) {
+                cursor.getLong(0);
+                cursor.getDouble(1);
+                cursor.getDouble(2);
+                cursor.getInt(3);
+            }
+            cursor.close();
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        return nanos;
+    }
+
+    private static String describe(long[] sortedNanos) {
+        long total = 0;
+        for (long nanos : sortedNanos) {
+            total += nanos;
+        }
+        return String.format("%d queries, mean %.1f us, p50 %.1f us, p99 %.1f us",
+                sortedNanos.length,
+                total / 1e3 / sortedNanos.length,
+                sortedNanos[sortedNanos.length / 2] / 1e3,
+                sortedNanos[sortedNanos.length * 99 / 100] / 1e3);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Checks that {@link PublishedForecastCache} remembers the last published forecast across
+ * instances, as it would across process restarts, but not across app versions.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestPublishedForecastCache {
+
+    private static final int VERSION_CODE = 3;
+
+    /* The cache doesn't look inside, any bytes will do */
+    private static final byte[] FORECAST = {1, 1, 1, 0, 0, 0x43, 0x0f, 0, 0, 3, 0x20, 0, 100};
+    private static final byte[] OTHER_FORECAST = {1, 0, 0, 0, 0, 0, 0};
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private File mCacheFile;
+
+    @Before
+    public void setUp() {
+        mCacheFile = new File(mContext.getCacheDir(),
+                "test_" + PublishedForecastCache.CACHE_FILE_NAME);
+        mCacheFile.delete();
+    }
+
+    @After
+    public void tearDown() {
+        mCacheFile.delete();
+    }
+
+    @Test
+    public void testSkipsTheForecastLastPublished() {
+        PublishedForecastCache cache = new PublishedForecastCache(mCacheFile, VERSION_CODE);
+        assertFalse(cache.isPublished(FORECAST));
+
+        cache.setPublished(FORECAST, TimeUnit.MILLISECONDS.toNanos(200));
+
+        assertTrue(cache.isPublished(FORECAST.clone()));
+        assertTrue(cache.isPublished(FORECAST));
+        assertFalse(cache.isPublished(OTHER_FORECAST));
+        assertEquals(1, cache.getSentCount());
+        assertEquals(2, cache.getSkippedCount());
+        assertEquals(400, cache.getTimeSavedMillis());
+    }
+
+    @Test
+    public void testSurvivesRestarts() {
+        new PublishedForecastCache(mCacheFile, VERSION_CODE).setPublished(FORECAST, 0);
+
+        assertTrue(new PublishedForecastCache(mCacheFile, VERSION_CODE).isPublished(FORECAST));
+    }
+
+    @Test
+    public void testOtherVersionsPublishAgain() {
+        new PublishedForecastCache(mCacheFile, VERSION_CODE).setPublished(FORECAST, 0);
+
+        assertFalse(new PublishedForecastCache(mCacheFile, VERSION_CODE + 1).isPublished(FORECAST));
+    }
+
+    @Test
+    public void testDamagedFileIsIgnored() throws IOException {
+        FileOutputStream out = new FileOutputStream(mCacheFile);
+        /* The right version, then a length far bigger than the file */
+        out.write(new byte[]{0, 0, 0, VERSION_CODE, 0x7f, 0, 0, 0, 1, 1});
+        out.close();
+
+        assertFalse(new PublishedForecastCache(mCacheFile, VERSION_CODE).isPublished(FORECAST));
+    }
+
+    @Test
+    public void testClear() {
+        PublishedForecastCache cache = new PublishedForecastCache(mCacheFile, VERSION_CODE);
+        cache.setPublished(FORECAST, 0);
+        cache.clear();
+
+        assertFalse(cache.isPublished(FORECAST));
+        assertFalse(mCacheFile.exists());
+    }
+}
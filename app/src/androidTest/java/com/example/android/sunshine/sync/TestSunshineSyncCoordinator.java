@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v4.os.CancellationSignal;
+
+import com.example.android.sunshine.R;
+import com.example.android.sunshine.data.SunshinePreferences;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Checks that {@link SunshineSyncCoordinator} lets syncs for the same location share one run,
+ * and that a sync for a new location cancels the obsolete one, only runs once that one has
+ * stopped and hands its result to the callers of both. The syncs themselves are faked.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestSunshineSyncCoordinator {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    /* How long the successor is given to start too early */
+    private static final long TOO_EARLY_MILLIS = 200;
+
+    private static final WeatherSyncResult FIRST_RESULT =
+            WeatherSyncResult.success(0, 0, 1, 0, null, null);
+    private static final WeatherSyncResult SECOND_RESULT =
+            WeatherSyncResult.success(0, 0, 2, 0, null, null);
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+
+    private SharedPreferences mPreferences;
+    private Map<String, ?> mSaved;
+
+    private FakeSyncRunner mRunner;
+    private SunshineSyncCoordinator mCoordinator;
+
+    @Before
+    public void setUp() {
+        mPreferences = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mSaved = mPreferences.getAll();
+        setLocation("Berlin,DE");
+
+        mRunner = new FakeSyncRunner();
+        mCoordinator = new SunshineSyncCoordinator(mRunner);
+    }
+
+    @After
+    public void tearDown() {
+        /* Never leave a sync blocked */
+        mRunner.releaseFirst.countDown();
+        mExecutor.shutdownNow();
+
+        SharedPreferences.Editor editor = mPreferences.edit();
+        for (String key : new String[]{mContext.getString(R.string.pref_location_key),
+                SunshinePreferences.PREF_COORD_LAT, SunshinePreferences.PREF_COORD_LONG}) {
+            Object value = mSaved.get(key);
+            if (value instanceof String) {
+                editor.putString(key, (String) value);
+            } else if (value instanceof Long) {
+                editor.putLong(key, (Long) value);
+            } else {
+                editor.remove(key);
+            }
+        }
+        commitOnMainThread(editor);
+    }
+
+    @Test
+    public void testConcurrentSyncsShareOneRun() throws Exception {
+        Future<WeatherSyncResult> first = startSync();
+        assertTrue(mRunner.firstStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        Future<WeatherSyncResult> second = startSync();
+        waitForCoalescedCount(1);
+
+        mRunner.releaseFirst.countDown();
+        assertSame(FIRST_RESULT, first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertSame(FIRST_RESULT, second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        assertEquals(1, mRunner.runs.get());
+        assertEquals(1, mCoordinator.getExecutedCount());
+        assertEquals(1, mCoordinator.getCoalescedCount());
+        assertEquals(0, mCoordinator.getCancelledCount());
+    }
+
+    @Test
+    public void testSyncsOneAfterAnotherBothRun() throws Exception {
+        mRunner.releaseFirst.countDown();
+
+        assertSame(FIRST_RESULT, startSync().get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertSame(SECOND_RESULT, startSync().get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        assertEquals(2, mRunner.runs.get());
+        assertEquals(2, mCoordinator.getExecutedCount());
+        assertEquals(0, mCoordinator.getCoalescedCount());
+        assertEquals(0, mCoordinator.getCancelledCount());
+    }
+
+    @Test
+    public void testObsoleteSyncIsCancelledAndSucceeded() throws Exception {
+        Future<WeatherSyncResult> first = startSync();
+        assertTrue(mRunner.firstStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        /* The obsolete sync stores the coordinates of the old location */
+        SunshinePreferences.setLocationDetails(mContext, 52.52, 13.405);
+
+        setLocation("Paris,FR");
+        mCoordinator.cancelObsoleteSync(mContext);
+        assertTrue(mRunner.firstCancelled.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(1, mCoordinator.getCancelledCount());
+
+        /* Cancelling again changes nothing */
+        mCoordinator.cancelObsoleteSync(mContext);
+        assertEquals(1, mCoordinator.getCancelledCount());
+
+        Future<WeatherSyncResult> second = startSync();
+        assertFalse("The new sync ran while the obsolete one was still writing",
+                mRunner.secondStarted.await(TOO_EARLY_MILLIS, TimeUnit.MILLISECONDS));
+
+        mRunner.releaseFirst.countDown();
+        assertSame(SECOND_RESULT, second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        /* Whoever waited for the obsolete sync gets the forecast for the new location */
+        assertSame(SECOND_RESULT, first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        assertTrue(mRunner.firstReturnedBeforeSecond);
+        assertTrue(mRunner.coordinatesResetBeforeSecond);
+        assertEquals(2, mRunner.runs.get());
+        assertEquals(2, mCoordinator.getExecutedCount());
+        assertEquals(0, mCoordinator.getCoalescedCount());
+        assertEquals(1, mCoordinator.getCancelledCount());
+    }
+
+    @Test
+    public void testSyncForNewLocationCancelsRunningSync() throws Exception {
+        Future<WeatherSyncResult> first = startSync();
+        assertTrue(mRunner.firstStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        /* Without cancelObsoleteSync, as when the location changes while the app isn't open */
+        setLocation("Paris,FR");
+        Future<WeatherSyncResult> second = startSync();
+        assertTrue(mRunner.firstCancelled.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        mRunner.releaseFirst.countDown();
+        assertSame(SECOND_RESULT, second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertSame(SECOND_RESULT, first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        assertTrue(mRunner.firstReturnedBeforeSecond);
+        assertEquals(2, mCoordinator.getExecutedCount());
+        assertEquals(1, mCoordinator.getCancelledCount());
+    }
+
+    private Future<WeatherSyncResult> startSync() {
+        return mExecutor.submit(new Callable<WeatherSyncResult>() {
+            @Override
+            public WeatherSyncResult call() {
+                return mCoordinator.sync(mContext);
+            }
+        });
+    }
+
+    /* The coalesced sync has nothing to signal, so poll until it joined the running one */
+    private void waitForCoalescedCount(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+        while (mCoordinator.getCoalescedCount() < count) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Sync was never coalesced");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private void setLocation(String location) {
+        commitOnMainThread(mPreferences.edit()
+                .putString(mContext.getString(R.string.pref_location_key), location));
+    }
+
+    /* On the main thread, SharedPreferences calls the change listeners before commit returns */
+    private static void commitOnMainThread(final SharedPreferences.Editor editor) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                editor.commit();
+            }
+        });
+    }
+
+    /**
+     * The first sync blocks until it is released, like a slow download, and returns
+     * {@link #FIRST_RESULT} unless it was cancelled. Every later sync returns
+     * {@link #SECOND_RESULT} right away.
+     */
+    private static final class FakeSyncRunner implements SunshineSyncCoordinator.SyncRunner {
+
+        final AtomicInteger runs = new AtomicInteger();
+
+        final CountDownLatch firstStarted = new CountDownLatch(1);
+        final CountDownLatch firstCancelled = new CountDownLatch(1);
+        final CountDownLatch releaseFirst = new CountDownLatch(1);
+        final CountDownLatch secondStarted = new CountDownLatch(1);
+
+        volatile boolean firstReturned;
+        volatile boolean firstReturnedBeforeSecond;
+        volatile boolean coordinatesResetBeforeSecond;
+
+        @Override
+        public WeatherSyncResult performSync(Context context,
+                                             CancellationSignal cancellationSignal) {
+            if (runs.incrementAndGet() > 1) {
+                firstReturnedBeforeSecond = firstReturned;
+                coordinatesResetBeforeSecond =
+                        !SunshinePreferences.isLocationLatLonAvailable(context);
+                secondStarted.countDown();
+                return SECOND_RESULT;
+            }
+
+            cancellationSignal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    firstCancelled.countDown();
+                }
+            });
+            firstStarted.countDown();
+            try {
+                releaseFirst.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            firstReturned = true;
+            return cancellationSignal.isCanceled() ? WeatherSyncResult.CANCELLED : FIRST_RESULT;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Checks when {@link WatchFaceNodes} lets wearable work be skipped, and that what it learned
+ * survives a process restart.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestWatchFaceNodes {
+
+    private static final Set<String> NO_NODES = Collections.emptySet();
+    private static final Set<String> TWO_NODES = new HashSet<String>(Arrays.asList("a1", "b2"));
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private SharedPreferences mPreferences;
+
+    @Before
+    public void setUp() {
+        mPreferences = mContext.getSharedPreferences("test_watch_face_nodes",
+                Context.MODE_PRIVATE);
+        mPreferences.edit().clear().commit();
+    }
+
+    @After
+    public void tearDown() {
+        mPreferences.edit().clear().commit();
+    }
+
+    @Test
+    public void testUnknownUntilDiscovered() {
+        WatchFaceNodes nodes = new WatchFaceNodes(mPreferences);
+
+        assertFalse(nodes.isKnown());
+        assertFalse(nodes.isKnownAbsent());
+    }
+
+    @Test
+    public void testNoNodes() {
+        WatchFaceNodes nodes = new WatchFaceNodes(mPreferences);
+
+        assertFalse(nodes.update(NO_NODES));
+        assertTrue(nodes.isKnown());
+        assertTrue(nodes.isKnownAbsent());
+    }
+
+    @Test
+    public void testReportsWatchFacesBecomingReachable() {
+        WatchFaceNodes nodes = new WatchFaceNodes(mPreferences);
+        nodes.update(NO_NODES);
+
+        assertTrue(nodes.update(TWO_NODES));
+        assertFalse(nodes.isKnownAbsent());
+        /* Still reachable, nothing new */
+        assertFalse(nodes.update(Collections.singleton("a1")));
+        assertFalse(nodes.update(NO_NODES));
+        assertTrue(nodes.isKnownAbsent());
+    }
+
+    @Test
+    public void testSurvivesRestarts() {
+        new WatchFaceNodes(mPreferences).update(NO_NODES);
+        assertTrue(new WatchFaceNodes(mPreferences).isKnownAbsent());
+
+        new WatchFaceNodes(mPreferences).update(TWO_NODES);
+        WatchFaceNodes restarted = new WatchFaceNodes(mPreferences);
+        assertTrue(restarted.isKnown());
+        assertFalse(restarted.isKnownAbsent());
+        assertFalse(restarted.update(TWO_NODES));
+    }
+}
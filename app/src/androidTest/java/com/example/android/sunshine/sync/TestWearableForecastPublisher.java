@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Checks that {@link WearableForecastPublisher} writes one data item per window, skips
+ * forecasts the wearable already has and only sends urgently when today's weather changed.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestWearableForecastPublisher {
+
+    private static final long WINDOW_MILLIS = 300;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    /* What the publisher sent, in order */
+    private final List<byte[]> mSent = new ArrayList<byte[]>();
+    private final List<Boolean> mUrgent = new ArrayList<Boolean>();
+
+    private File mCacheFile;
+    private WearableForecastPublisher mPublisher;
+
+    @Before
+    public void setUp() {
+        mCacheFile = new File(mContext.getCacheDir(),
+                "test_" + PublishedForecastCache.CACHE_FILE_NAME);
+        mCacheFile.delete();
+
+        WearableForecastPublisher.Sender sender = new WearableForecastPublisher.Sender() {
+            @Override
+            public boolean send(byte[] forecast, boolean urgent) {
+                synchronized (mSent) {
+                    mSent.add(forecast);
+                    mUrgent.add(urgent);
+                }
+                return true;
+            }
+        };
+        mPublisher = new WearableForecastPublisher(
+                new PublishedForecastCache(mCacheFile, 1), sender, WINDOW_MILLIS);
+    }
+
+    @After
+    public void tearDown() {
+        mCacheFile.delete();
+    }
+
+    @Test
+    public void testCoalescesForecastsWithinAWindow() throws InterruptedException {
+        WearableForecast last = createForecast(800, 20, 21);
+        publishAndWait(createForecast(500, 10, 11), createForecast(600, 15, 16), last);
+
+        assertEquals(1, mPublisher.getSentCount());
+        assertEquals(2, mPublisher.getCoalescedCount());
+        assertEquals(1, mSent.size());
+        assertTrue(Arrays.equals(last.encode(), mSent.get(0)));
+    }
+
+    @Test
+    public void testSkipsTheForecastTheWearableHas() throws InterruptedException {
+        publishAndWait(createForecast(800, 20, 21));
+        publishAndWait(createForecast(800, 20, 21));
+
+        assertEquals(1, mPublisher.getSentCount());
+        assertEquals(1, mPublisher.getSkippedCount());
+        assertEquals(1, mSent.size());
+    }
+
+    @Test
+    public void testOnlyUrgentWhenTodayChanged() throws InterruptedException {
+        publishAndWait(createForecast(800, 20, 21));
+        /* Only tomorrow changed */
+        publishAndWait(createForecast(800, 20, 25));
+        /* Today changed */
+        publishAndWait(createForecast(500, 20, 25));
+
+        assertEquals(3, mSent.size());
+        assertTrue(mUrgent.get(0));
+        assertFalse(mUrgent.get(1));
+        assertTrue(mUrgent.get(2));
+    }
+
+    /* Publishes the forecasts back to back and waits until all of them are done */
+    private void publishAndWait(WearableForecast... forecasts) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(forecasts.length);
+        for (WearableForecast forecast : forecasts) {
+            mPublisher.publish(forecast, new Runnable() {
+                @Override
+                public void run() {
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    /* A forecast for today and tomorrow */
+    private static WearableForecast createForecast(int todayWeatherId, double todayMax,
+                                                   double tomorrowMax) {
+        long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+        return new WearableForecast(true,
+                new long[]{today, today + SunshineDateUtils.DAY_IN_MILLIS},
+                new int[]{todayWeatherId, 800},
+                new double[]{10, 10},
+                new double[]{todayMax, tomorrowMax});
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.utilities.SunshineWeatherUtils;
+import com.google.android.gms.wearable.DataMap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Compares how many bytes a sync sends the watch with the {@link WearableForecast} protocol
+ * against the DataMaps it used to send: today's formatted temperatures plus a PNG of the art.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestWearablePayloadSize {
+
+    private static final String TAG = TestWearablePayloadSize.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+
+    /* As many days as the app downloads */
+    private static final int FORECAST_DAYS = 14;
+
+    /* One of each condition we have art for */
+    private static final int[] WEATHER_IDS = {211, 301, 501, 602, 741, 800, 801, 803};
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    @Test
+    public void testForecastIsSmallerThanTheOldPayload() {
+        int newBytes = createForecast().encode().length;
+
+        for (int weatherId : WEATHER_IDS) {
+            int legacyBytes = getLegacyInfoBytes() + getLegacyImageBytes(weatherId);
+            Log.i(TAG, "Weather " + weatherId + ": " + legacyBytes + " bytes for today before, "
+                    + newBytes + " bytes for " + FORECAST_DAYS + " days now");
+            assertTrue(newBytes < legacyBytes);
+        }
+    }
+
+    private WearableForecast createForecast() {
+        long[] dates = new long[FORECAST_DAYS];
+        int[] weatherIds = new int[FORECAST_DAYS];
+        double[] minTemps = new double[FORECAST_DAYS];
+        double[] maxTemps = new double[FORECAST_DAYS];
+        for (int i = 0; i < FORECAST_DAYS; i++) {
+            dates[i] = (17167 + i) * DAY_IN_MILLIS;
+            weatherIds[i] = WEATHER_IDS[i % WEATHER_IDS.length];
+            minTemps[i] = 10 + i / 10.0;
+            maxTemps[i] = 20 + i / 10.0;
+        }
+        return new WearableForecast(true, dates, weatherIds, minTemps, maxTemps);
+    }
+
+    private int getLegacyInfoBytes() {
+        DataMap dataMap = new DataMap();
+        dataMap.putString(SunshineFirebaseJobService.KEY_HIGH,
+                SunshineWeatherUtils.formatTemperature(mContext, 20));
+        dataMap.putString(SunshineFirebaseJobService.KEY_LOW,
+                SunshineWeatherUtils.formatTemperature(mContext, 10));
+        return dataMap.toByteArray().length;
+    }
+
+    /* The PNG asset the watch used to be sent, the DataMap around it only adds a few bytes */
+    private int getLegacyImageBytes(int weatherId) {
+        int resId = SunshineWeatherUtils.getSmallArtResourceIdForWeatherCondition(weatherId);
+        Bitmap bitmap = BitmapFactory.decodeResource(mContext.getResources(), resId);
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, byteStream);
+        return byteStream.size();
+    }
+}
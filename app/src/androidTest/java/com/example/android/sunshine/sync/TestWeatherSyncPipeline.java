@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v4.os.CancellationSignal;
+
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utils.PollingCheck;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Checks that {@link WeatherSyncPipeline} runs its stages in order on the executor it is given,
+ * stops at a stage boundary when cancelled, and tells its listener exactly once that it is done,
+ * unless it was cancelled. The sync is faked and the publisher sends to a stub, so the pipeline
+ * can only publish what the sync handed on, never anything stored in the ContentProvider.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestWeatherSyncPipeline {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private static final String STAGE_THREAD_NAME = "test-pipeline-stage";
+
+    private static final String NODES_PREFS_NAME = "test_pipeline_watch_face_nodes";
+
+    private static final int WEATHER_ID = 500;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    /* What happened, in order */
+    private final List<String> mEvents = Collections.synchronizedList(new ArrayList<String>());
+
+    private final AtomicInteger mFinishedCount = new AtomicInteger();
+    private final CountDownLatch mFinished = new CountDownLatch(1);
+
+    /* Lets the fake sync run */
+    private final CountDownLatch mReleaseSync = new CountDownLatch(1);
+    private final CountDownLatch mSyncStarted = new CountDownLatch(1);
+
+    /* What the fake sync returns */
+    private volatile WeatherSyncResult mSyncResult;
+
+    private volatile String mSyncThreadName;
+    private volatile byte[] mSent;
+
+    private File mCacheFile;
+    private ThreadPoolExecutor mExecutor;
+    private WatchFaceNodes mWatchFaceNodes;
+    private WeatherSyncPipeline mPipeline;
+
+    @Before
+    public void setUp() {
+        mCacheFile = new File(mContext.getCacheDir(),
+                "test_pipeline_" + PublishedForecastCache.CACHE_FILE_NAME);
+        mCacheFile.delete();
+
+        ForecastBatch rows = new ForecastBatch(2);
+        long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+        rows.add(today, WEATHER_ID, 10, 20, 50, 1000, 3, 90);
+        rows.add(today + SunshineDateUtils.DAY_IN_MILLIS, 800, 11, 21, 55, 1005, 4, 180);
+        mSyncResult = WeatherSyncResult.success(0, 0, 2, 0, null, rows);
+
+        /* Bounded like the real one, with a thread we can recognize */
+        mExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(1), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        return new Thread(runnable, STAGE_THREAD_NAME);
+                    }
+                });
+
+        SunshineSyncCoordinator coordinator = new SunshineSyncCoordinator(
+                new SunshineSyncCoordinator.SyncRunner() {
+                    @Override
+                    public WeatherSyncResult performSync(Context context,
+                                                         CancellationSignal cancellationSignal) {
+                        mSyncThreadName = Thread.currentThread().getName();
+                        mSyncStarted.countDown();
+                        try {
+                            mReleaseSync.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        mEvents.add("sync");
+                        return mSyncResult;
+                    }
+                });
+
+        mWatchFaceNodes = new WatchFaceNodes(mContext.getSharedPreferences(
+                NODES_PREFS_NAME, Context.MODE_PRIVATE));
+
+        WearableForecastPublisher.Sender sender = new WearableForecastPublisher.Sender() {
+            @Override
+            public boolean send(byte[] forecast, boolean urgent) {
+                mSent = forecast;
+                mEvents.add("publish");
+                return true;
+            }
+        };
+        WearableForecastPublisher publisher = new WearableForecastPublisher(
+                new PublishedForecastCache(mCacheFile, 1), sender, 0);
+
+        mPipeline = new WeatherSyncPipeline(mContext,
+                new WeatherSyncPipeline.Listener() {
+                    @Override
+                    public void onPipelineFinished(WeatherSyncPipeline pipeline) {
+                        mEvents.add("finished");
+                        mFinishedCount.incrementAndGet();
+                        mFinished.countDown();
+                    }
+                }, mExecutor, coordinator, mWatchFaceNodes, publisher);
+    }
+
+    @After
+    public void tearDown() {
+        mReleaseSync.countDown();
+        mExecutor.shutdownNow();
+        mCacheFile.delete();
+        mContext.getSharedPreferences(NODES_PREFS_NAME, Context.MODE_PRIVATE)
+                .edit().clear().commit();
+    }
+
+    @Test
+    public void testStagesRunInOrder() throws Exception {
+        mPipeline.start();
+        mReleaseSync.countDown();
+
+        assertTrue(mFinished.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        waitForStages(3);
+
+        assertEquals(STAGE_THREAD_NAME, mSyncThreadName);
+        assertEquals(Arrays.asList("sync", "publish", "finished"), mEvents);
+        assertEquals(1, mFinishedCount.get());
+
+        /* The summary stage packed what the sync handed on */
+        WearableForecast sent = WearableForecast.decode(mSent);
+        assertEquals(2, sent.size());
+        assertEquals(WEATHER_ID, sent.weatherIds[0]);
+        assertTrue(Arrays.equals(
+                WeatherSyncPipeline.toWearableForecast(mContext, mSyncResult.forecast).encode(),
+                mSent));
+    }
+
+    @Test
+    public void testFailedSyncSkipsWearableStages() throws Exception {
+        mSyncResult = WeatherSyncResult.FAILED;
+
+        mPipeline.start();
+        mReleaseSync.countDown();
+
+        assertTrue(mFinished.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        waitForStages(2);
+
+        assertEquals(Arrays.asList("sync", "finished"), mEvents);
+        assertNull(mSent);
+        assertEquals(1, mFinishedCount.get());
+    }
+
+    @Test
+    public void testSkipsWearableStagesWithoutWatchFace() throws Exception {
+        mWatchFaceNodes.update(Collections.<String>emptySet());
+
+        mPipeline.start();
+        mReleaseSync.countDown();
+
+        assertTrue(mFinished.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        waitForStages(2);
+
+        assertEquals(Arrays.asList("sync", "finished"), mEvents);
+        assertEquals(1, mFinishedCount.get());
+    }
+
+    @Test
+    public void testCancelStopsAtStageBoundary() throws Exception {
+        mPipeline.start();
+        assertTrue(mSyncStarted.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+        /* The running sync finishes, the summary stage after it doesn't start */
+        mPipeline.cancel();
+        mReleaseSync.countDown();
+        waitForStages(2);
+
+        assertEquals(Arrays.asList("sync"), mEvents);
+        assertEquals(0, mPipeline.getStageTimeMillis(WeatherSyncPipeline.STAGE_PUBLISH));
+        assertEquals(0, mFinishedCount.get());
+    }
+
+    @Test
+    public void testRejectedStageStillFinishes() {
+        /* A full queue rejects the same way */
+        mExecutor.shutdown();
+
+        mPipeline.start();
+
+        assertEquals(Arrays.asList("finished"), mEvents);
+        assertEquals(1, mFinishedCount.get());
+    }
+
+    /* Waits until the given number of stage tasks ran to completion on the executor */
+    private void waitForStages(final int count) throws Exception {
+        PollingCheck.check("Stages never completed", TIMEOUT_MILLIS, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return mExecutor.getCompletedTaskCount() >= count
+                        && mExecutor.getActiveCount() == 0
+                        && mExecutor.getQueue().isEmpty();
+            }
+        });
+        assertEquals(count, mExecutor.getCompletedTaskCount());
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.Scanner;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.fail;
+
+/**
+ * Tests the conditional requests made by
+ * {@link NetworkUtils#readResponseFromHttpUrl(Context, URL, boolean, NetworkUtils.ResponseStreamHandler)}
+ * against a tiny local HTTP server that hands out an ETag and answers 304 when it is sent back.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestNetworkUtils {
+
+    private static final String ETAG = "\"forecast-v1\"";
+    private static final String BODY = "{\"cod\":\"200\",\"list\":[]}";
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private ForecastResponseCache mCache;
+    private ETagServer mServer;
+    private URL mUrl;
+
+    @Before
+    public void setUp() throws IOException {
+        mCache = ForecastResponseCache.getInstance(mContext);
+        mCache.clear();
+
+        mServer = new ETagServer();
+        mServer.start();
+        mUrl = new URL("http://127.0.0.1:" + mServer.getPort() + "/weather");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+        mCache.clear();
+    }
+
+    @Test
+    public void testNotModifiedSkipsHandler() throws IOException {
+        int hits = mCache.getHitCount();
+        int misses = mCache.getMissCount();
+
+        assertEquals(BODY, fetch(true));
+        assertNull("Server sent If-None-Match on the first request", mServer.mLastIfNoneMatch);
+
+        String secondResponse = NetworkUtils.readResponseFromHttpUrl(mContext, mUrl, true,
+                new NetworkUtils.ResponseStreamHandler<String>() {
+                    @Override
+                    public String onResponse(InputStream in) {
+                        fail("Handler called although the response was not modified");
+                        return null;
+                    }
+                });
+
+        assertNull(secondResponse);
+        assertEquals(ETAG, mServer.mLastIfNoneMatch);
+        assertEquals(2, mServer.mRequestCount);
+        assertEquals(hits + 1, mCache.getHitCount());
+        assertEquals(misses + 1, mCache.getMissCount());
+    }
+
+    @Test
+    public void testUnconditionalRequestWhenNotModifiedIsNotAllowed() throws IOException {
+        fetch(true);
+
+        assertEquals(BODY, fetch(false));
+        assertNull("Conditional request sent although it wasn't allowed",
+                mServer.mLastIfNoneMatch);
+    }
+
+    @Test
+    public void testFailedHandlerDoesNotStoreValidators() throws IOException {
+        try {
+            NetworkUtils.readResponseFromHttpUrl(mContext, mUrl, true,
+                    new NetworkUtils.ResponseStreamHandler<String>() {
+                        @Override
+                        public String onResponse(InputStream in) throws IOException {
+                            throw new IOException("Parsing failed");
+                        }
+                    });
+            fail("Handler exception was swallowed");
+        } catch (IOException expected) {
+        }
+
+        assertNull(mCache.get(mUrl.toString()));
+        assertEquals(BODY, fetch(true));
+        assertNull(mServer.mLastIfNoneMatch);
+    }
+
+    @Test
+    public void testNotModifiedOnLaterDayFetchesInFull() throws IOException {
+        /* As if the body was parsed yesterday, dating the stored rows from yesterday */
+        long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+        mCache.put(mUrl.toString(), ETAG, null, today - SunshineDateUtils.DAY_IN_MILLIS);
+
+        /* The server would answer 304, but the body has to be parsed again to date it today */
+        assertEquals(BODY, fetch(true));
+        assertNull("Conditional request sent for a response parsed on an earlier day",
+                mServer.mLastIfNoneMatch);
+        assertEquals(today, mCache.get(mUrl.toString()).startDay);
+
+        /* Later the same day, the response is good again */
+        assertNull(fetch(true));
+        assertEquals(ETAG, mServer.mLastIfNoneMatch);
+    }
+
+    private String fetch(boolean allowNotModified) throws IOException {
+        return NetworkUtils.readResponseFromHttpUrl(mContext, mUrl, allowNotModified,
+                new NetworkUtils.ResponseStreamHandler<String>() {
+                    @Override
+                    public String onResponse(InputStream in) {
+                        return new Scanner(in, "UTF-8").useDelimiter("\\A").next();
+                    }
+                });
+    }
+
+    /**
+     * Answers every request with {@link #BODY} and {@link #ETAG}, unless the request carries
+     * that ETag in If-None-Match, in which case it answers 304 Not Modified.
+     */
+    private static class ETagServer extends Thread {
+        private final ServerSocket mServerSocket;
+
+        volatile int mRequestCount;
+        volatile String mLastIfNoneMatch;
+
+        ETagServer() throws IOException {
+            mServerSocket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        }
+
+        int getPort() {
+            return mServerSocket.getLocalPort();
+        }
+
+        void shutdown() throws IOException {
+            mServerSocket.close();
+        }
+
+        @Override
+        public void run() {
+            while (!mServerSocket.isClosed()) {
+                try {
+                    Socket socket = mServerSocket.accept();
+                    try {
+                        handle(socket);
+                    } finally {
+                        socket.close();
+                    }
+                } catch (IOException e) {
+                    /* Thrown by accept once the socket is closed */
+                }
+            }
+        }
+
+        private void handle(Socket socket) throws IOException {
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), "UTF-8"));
+
+            String ifNoneMatch = null;
+            String line;
+            while ((line = reader.readLine()) != null && line.length() > 0) {
+                int colon = line.indexOf(':');
+                if (colon > 0 && line.substring(0, colon).equalsIgnoreCase("If-None-Match")) {
+                    ifNoneMatch = line.substring(colon + 1).trim();
+                }
+            }
+            mLastIfNoneMatch = ifNoneMatch;
+            mRequestCount++;
+
+            String response;
+            if (ETAG.equals(ifNoneMatch)) {
+                response = "HTTP/1.1 304 Not Modified\r\n"
+                        + "ETag: " + ETAG + "\r\n"
+                        + "Connection: close\r\n"
+                        + "\r\n";
+            } else {
+                byte[] body = BODY.getBytes("UTF-8");
+                response = "HTTP/1.1 200 OK\r\n"
+                        + "ETag: " + ETAG + "\r\n"
+                        + "Content-Type: application/json\r\n"
+                        + "Content-Length: " + body.length + "\r\n"
+                        + "Connection: close\r\n"
+                        + "\r\n"
+                        + BODY;
+            }
+
+            OutputStream out = socket.getOutputStream();
+            out.write(response.getBytes("UTF-8"));
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.data.WeatherContract;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.fail;
+
+/**
+ * Compares the streaming forecast parser with the String + JSONObject parser. The first test
+ * makes sure both produce exactly the same rows, the second one logs how much each of them
+ * allocates and how long each of them takes for growing response sizes.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestOpenWeatherJsonUtils {
+
+    private static final String TAG = TestOpenWeatherJsonUtils.class.getSimpleName();
+
+    private static final int[] BENCHMARK_ENTRY_COUNTS = {14, 1000, 100000};
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    @Test
+    public void testStreamingParserMatchesJsonObjectParser() throws Exception {
+        String json = buildForecastJson(14);
+
+        ContentValues[] expected =
+                OpenWeatherJsonUtils.getWeatherContentValuesFromJson(mContext, json);
+
+        /* A small batch makes sure rows are carried over correctly between flushes */
+        final List<ContentValues> actual = new ArrayList<>();
+        int entriesParsed = OpenWeatherJsonUtils.parseWeatherStream(mContext,
+                new ByteArrayInputStream(json.getBytes("UTF-8")),
+                new ForecastBatch(3),
+                new OpenWeatherJsonUtils.ForecastBatchSink() {
+                    @Override
+                    public void onForecastBatch(ForecastBatch batch) {
+                        for (int i = 0; i < batch.size(); i++) {
+                            actual.add(toContentValues(batch, i));
+                        }
+                    }
+                });
+
+        assertEquals("Streaming parser returned the wrong number of entries",
+                expected.length, entriesParsed);
+        assertEquals(expected.length, actual.size());
+        for (int i = 0; i < expected.length; i++) {
+            String error = "Entry " + i + " differs between the two parsers";
+            for (String column : expected[i].keySet()) {
+                assertEquals(error, expected[i].getAsDouble(column),
+                        actual.get(i).getAsDouble(column));
+            }
+        }
+    }
+
+    @Test
+    public void testErrorCodeIsReported() throws Exception {
+        String json = "{\"cod\":\"404\",\"message\":\"city not found\"}";
+
+        int entriesParsed = OpenWeatherJsonUtils.parseWeatherStream(mContext,
+                new ByteArrayInputStream(json.getBytes("UTF-8")),
+                new ForecastBatch(14),
+                new OpenWeatherJsonUtils.ForecastBatchSink() {
+                    @Override
+                    public void onForecastBatch(ForecastBatch batch) {
+                        throw new AssertionError("No rows expected for an error response");
+                    }
+                });
+
+        assertEquals(OpenWeatherJsonUtils.PARSE_ERROR, entriesParsed);
+    }
+
+    @Test
+    public void testEntryMissingValueIsRejected() throws Exception {
+        String json = buildForecastJson(1);
+
+        /* Each of these is required by the JSONObject parser as well */
+        assertMalformed(json.replace("\"pressure\":1010.5,", ""));
+        assertMalformed(json.replace("\"humidity\":40,", ""));
+        assertMalformed(json.replace("\"speed\":0.2,", ""));
+        assertMalformed(json.replace("\"deg\":0,", ""));
+        assertMalformed(json.replace("\"min\":10.25,", ""));
+        assertMalformed(json.replace("\"max\":20.75,", ""));
+        assertMalformed(json.replaceAll("\"temp\":\\{[^}]*\\},", ""));
+        assertMalformed(json.replace("{\"id\":800,", "{"));
+        assertMalformed(json.replace("\"weather\":[{\"id\":800,\"main\":\"Clear\","
+                + "\"description\":\"sky is clear\",\"icon\":\"01d\"}]", "\"weather\":[]"));
+    }
+
+    @Test
+    public void testCityWithoutCoordinatesIsRejected() throws Exception {
+        String json = buildForecastJson(1);
+
+        assertMalformed(json.replace("\"lon\":-122.0838,", ""));
+        assertMalformed(json.replace(",\"lat\":37.3861", ""));
+    }
+
+    /**
+     * Not a correctness test: logs allocated bytes and wall time of both parsers for each entry
+     * count in {@link #BENCHMARK_ENTRY_COUNTS}. The response is read from a file so that, like
+     * the network, only the streaming parser avoids holding the whole body in memory.
+     */
+    @SuppressWarnings("deprecation")
+    @Test
+    public void benchmarkStreamingAgainstJsonObjectParser() throws Exception {
+        for (int entryCount : BENCHMARK_ENTRY_COUNTS) {
+            File responseFile = writeForecastFile(entryCount);
+
+            Debug.startAllocCounting();
+            try {
+                /* JSONObject path: read the whole body into a String, then build the tree */
+                System.gc();
+                Debug.resetThreadAllocSize();
+                long start = System.nanoTime();
+                String domResult;
+                try {
+                    ContentValues[] values = OpenWeatherJsonUtils.getWeatherContentValuesFromJson(
+                            mContext, readFully(responseFile));
+                    domResult = values.length + " rows";
+                } catch (OutOfMemoryError e) {
+                    domResult = "OutOfMemoryError";
+                }
+                long domNanos = System.nanoTime() - start;
+                long domBytes = Debug.getThreadAllocSize();
+
+                /* Streaming path: rows are dropped as soon as they are parsed */
+                System.gc();
+                Debug.resetThreadAllocSize();
+                start = System.nanoTime();
+                InputStream in = new BufferedInputStream(new FileInputStream(responseFile));
+                int streamed = OpenWeatherJsonUtils.parseWeatherStream(mContext, in,
+                        new ForecastBatch(64),
+                        new OpenWeatherJsonUtils.ForecastBatchSink() {
+                            @Override
+                            public void onForecastBatch(ForecastBatch batch) {
+                            }
+                        });
+                long streamNanos = System.nanoTime() - start;
+                long streamBytes = Debug.getThreadAllocSize();
+
+                assertEquals(entryCount, streamed);
+
+                Log.i(TAG, String.format("%d entries: JSONObject %s, %d KB, %d ms | "
+                                + "streaming %d KB, %d ms",
+                        entryCount, domResult, domBytes / 1024, domNanos / 1000000,
+                        streamBytes / 1024, streamNanos / 1000000));
+            } finally {
+                Debug.stopAllocCounting();
+                responseFile.delete();
+            }
+        }
+    }
+
+    /* Checks that the streaming parser fails on the JSON without handing over a single row */
+    private void assertMalformed(final String json) throws Exception {
+        try {
+            OpenWeatherJsonUtils.parseWeatherStream(mContext,
+                    new ByteArrayInputStream(json.getBytes("UTF-8")),
+                    new ForecastBatch(14),
+                    new OpenWeatherJsonUtils.ForecastBatchSink() {
+                        @Override
+                        public void onForecastBatch(ForecastBatch batch) {
+                            throw new AssertionError("No rows expected for " + json);
+                        }
+                    });
+            fail("Malformed forecast was parsed: " + json);
+        } catch (IOException expected) {
+        }
+    }
+
+    private static ContentValues toContentValues(ForecastBatch batch, int i) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherContract.WeatherEntry.COLUMN_DATE, batch.date[i]);
+        values.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, batch.weatherId[i]);
+        values.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, batch.min[i]);
+        values.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, batch.max[i]);
+        values.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, batch.humidity[i]);
+        values.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, batch.pressure[i]);
+        values.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, batch.wind[i]);
+        values.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, batch.degrees[i]);
+        return values;
+    }
+
+    private File writeForecastFile(int entryCount) throws IOException {
+        File file = new File(mContext.getCacheDir(), "forecast-" + entryCount + ".json");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writeForecastJson(writer, entryCount);
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    private static String readFully(File file) throws IOException {
+        Scanner scanner = new Scanner(new FileInputStream(file), "UTF-8");
+        try {
+            return scanner.useDelimiter("\\A").next();
+        } finally {
+            scanner.close();
+        }
+    }
+
+    private static String buildForecastJson(int entryCount) throws IOException {
+        StringWriter writer = new StringWriter();
+        writeForecastJson(writer, entryCount);
+        return writer.toString();
+    }
+
+    /* Mirrors the layout of the responses returned by the weather server */
+    private static void writeForecastJson(Writer writer, int entryCount) throws IOException {
+        writer.write("{\"city\":{\"id\":5375480,\"name\":\"Mountain View\","
+                + "\"coord\":{\"lon\":-122.0838,\"lat\":37.3861},\"country\":\"US\"},"
+                + "\"cod\":\"200\",\"message\":0.0126,\"cnt\":" + entryCount + ",\"list\":[");
+        for (int i = 0; i < entryCount; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write("{\"dt\":" + (1475280000L + i * 86400L)
+                    + ",\"temp\":{\"day\":20.5,\"min\":" + (10 + i % 7) + ".25,\"max\":"
+                    + (20 + i % 9) + ".75,\"night\":12.1,\"eve\":18.3,\"morn\":11.9},"
+                    + "\"pressure\":" + (1010 + i % 13) + ".5,\"humidity\":" + (40 + i % 50)
+                    + ",\"weather\":[{\"id\":" + (800 + i % 5) + ",\"main\":\"Clear\","
+                    + "\"description\":\"sky is clear\",\"icon\":\"01d\"}],"
+                    + "\"speed\":" + (i % 11) + ".2,\"deg\":" + (i % 360) + ",\"clouds\":0}");
+        }
+        writer.write("]}");
+    }
+}
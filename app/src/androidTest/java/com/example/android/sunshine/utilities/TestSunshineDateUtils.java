@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+
+/**
+ * Checks that {@link SunshineDateUtils#getFriendlyDateString} returns what formatting the date
+ * on the spot does, before and after the time zone or locale changes, and logs how much the
+ * cached strings save when a fortnight of rows is bound over and over.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestSunshineDateUtils {
+
+    private static final String TAG = TestSunshineDateUtils.class.getSimpleName();
+
+    /* From yesterday to three weeks out, covering every kind of friendly date */
+    private static final int FIRST_DAY = -1;
+    private static final int LAST_DAY = 21;
+
+    private static final int BENCHMARK_DAYS = 14;
+    private static final int BENCHMARK_ROUNDS = 100;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private TimeZone mTimeZone;
+    private Locale mLocale;
+    private Locale mDefaultLocale;
+
+    @Before
+    public void setUp() {
+        mTimeZone = TimeZone.getDefault();
+        mLocale = mContext.getResources().getConfiguration().locale;
+        mDefaultLocale = Locale.getDefault();
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(mTimeZone);
+        setLocale(mLocale);
+        Locale.setDefault(mDefaultLocale);
+    }
+
+    @Test
+    public void testCachedStringsMatchFormattedStrings() {
+        long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+        assertAllMatch(today);
+
+        String first = SunshineDateUtils.getFriendlyDateString(mContext, today, true);
+        assertSame(first, SunshineDateUtils.getFriendlyDateString(mContext, today, true));
+    }
+
+    @Test
+    public void testTimeZoneChangeInvalidatesCache() {
+        /*
+         * A day apart, the two zones put today, tomorrow and the end of the week on different
+         * dates, so strings cached in one are wrong in the other
+         */
+        TimeZone.setDefault(TimeZone.getTimeZone("Pacific/Kiritimati"));
+        long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+        assertAllMatch(today);
+
+        TimeZone.setDefault(TimeZone.getTimeZone("Pacific/Pago_Pago"));
+        assertAllMatch(today);
+    }
+
+    @Test
+    public void testLocaleChangeInvalidatesCache() {
+        long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+        long later = today + 10 * SunshineDateUtils.DAY_IN_MILLIS;
+        setLocale(Locale.US);
+        Locale.setDefault(Locale.US);
+        String english = SunshineDateUtils.getFriendlyDateString(mContext, later, false);
+        assertAllMatch(today);
+
+        setLocale(Locale.FRANCE);
+        Locale.setDefault(Locale.FRANCE);
+        String french = SunshineDateUtils.getFriendlyDateString(mContext, later, false);
+
+        assertFalse(english.equals(french));
+        assertAllMatch(today);
+    }
+
+    @Test
+    public void benchmarkFriendlyDateString() {
+        long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+
+        /* Warm up both */
+        SunshineDateUtils.formatFriendlyDateString(mContext, today, false);
+        SunshineDateUtils.getFriendlyDateString(mContext, today, false);
+
+        long start = System.nanoTime();
+        for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+            for (int day = 0; day < BENCHMARK_DAYS; day++) {
+                SunshineDateUtils.formatFriendlyDateString(mContext,
+                        today + day * SunshineDateUtils.DAY_IN_MILLIS, false);
+            }
+        }
+        long formattedNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+            for (int day = 0; day < BENCHMARK_DAYS; day++) {
+                SunshineDateUtils.getFriendlyDateString(mContext,
+                        today + day * SunshineDateUtils.DAY_IN_MILLIS, false);
+            }
+        }
+        long cachedNanos = System.nanoTime() - start;
+
+        int calls = BENCHMARK_ROUNDS * BENCHMARK_DAYS;
+        Log.i(TAG, String.format("Friendly date string, mean per call: formatted %.1f us, "
+                        + "cached %.1f us",
+                formattedNanos / 1e3 / calls,
+                cachedNanos / 1e3 / calls));
+    }
+
+    /* Around the given day */
+    private void assertAllMatch(long today) {
+        for (int day = FIRST_DAY; day <= LAST_DAY; day++) {
+            long date = today + day * SunshineDateUtils.DAY_IN_MILLIS;
+            for (boolean showFullDate : new boolean[]{false, true}) {
+                assertEquals("Day " + day + ", full date " + showFullDate,
+                        SunshineDateUtils.formatFriendlyDateString(mContext, date, showFullDate),
+                        SunshineDateUtils.getFriendlyDateString(mContext, date, showFullDate));
+            }
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private void setLocale(Locale locale) {
+        Resources resources = mContext.getResources();
+        Configuration configuration = new Configuration(resources.getConfiguration());
+        configuration.locale = locale;
+        resources.updateConfiguration(configuration, resources.getDisplayMetrics());
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.sunshine.R;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Checks that the lookup tables of {@link SunshineWeatherUtils} give the same description and
+ * art as the comparison ladders they replaced, for every condition id from 0 to 1000 and a few
+ * far outside, and logs what a lookup costs either way.
+ * <p>
+ * The ladders are kept below, as they were, without their logging.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestSunshineWeatherUtils {
+
+    private static final String TAG = TestSunshineWeatherUtils.class.getSimpleName();
+
+    private static final int FIRST_ID = 0;
+    private static final int LAST_ID = 1000;
+    private static final int[] FAR_IDS = {Integer.MIN_VALUE, -1, 199, 963, Integer.MAX_VALUE};
+
+    /* Ids a forecast really has, round and round */
+    private static final int[] BENCHMARK_IDS = {200, 301, 500, 511, 521, 600, 701, 761, 781,
+            800, 801, 803, 904, 957, 962};
+    private static final int BENCHMARK_ROUNDS = 20000;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    @Test
+    public void testTablesMatchLadders() {
+        for (int weatherId = FIRST_ID; weatherId <= LAST_ID; weatherId++) {
+            assertSameCondition(weatherId);
+        }
+        for (int weatherId : FAR_IDS) {
+            assertSameCondition(weatherId);
+        }
+    }
+
+    @Test
+    public void benchmarkLookups() {
+        int sink = 0;
+
+        /* Warm up both */
+        for (int weatherId : BENCHMARK_IDS) {
+            sink += ladderSmallArt(weatherId) + ladderLargeArt(weatherId);
+            sink += SunshineWeatherUtils.getSmallArtResourceIdForWeatherCondition(weatherId)
+                    + SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(weatherId);
+        }
+
+        long start = System.nanoTime();
+        for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+            for (int weatherId : BENCHMARK_IDS) {
+                sink += ladderSmallArt(weatherId) + ladderLargeArt(weatherId);
+            }
+        }
+        long ladderNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int round = 0; round < BENCHMARK_ROUNDS; round++) {
+            for (int weatherId : BENCHMARK_IDS) {
+                sink += SunshineWeatherUtils.getSmallArtResourceIdForWeatherCondition(weatherId)
+                        + SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(weatherId);
+            }
+        }
+        long tableNanos = System.nanoTime() - start;
+
+        /* Two lookups per id; the sink keeps either loop from being optimized away */
+        long lookups = 2L * BENCHMARK_ROUNDS * BENCHMARK_IDS.length;
+        Log.i(TAG, String.format("Art lookup, mean: ladder %.1f ns, table %.1f ns (%d)",
+                (double) ladderNanos / lookups,
+                (double) tableNanos / lookups,
+                sink));
+    }
+
+    private void assertSameCondition(int weatherId) {
+        assertEquals("Description of " + weatherId,
+                ladderString(mContext, weatherId),
+                SunshineWeatherUtils.getStringForWeatherCondition(mContext, weatherId));
+        assertEquals("Small art of " + weatherId,
+                ladderSmallArt(weatherId),
+                SunshineWeatherUtils.getSmallArtResourceIdForWeatherCondition(weatherId));
+        assertEquals("Large art of " + weatherId,
+                ladderLargeArt(weatherId),
+                SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(weatherId));
+    }
+
+    private static String ladderString(Context context, int weatherId) {
+        int stringId;
+        if (weatherId >= 200 && weatherId <= 232) {
+            stringId = R.string.condition_2xx;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            stringId = R.string.condition_3xx;
+        } else switch (weatherId) {
+            case 500:
+                stringId = R.string.condition_500;
+                break;
+            case 501:
+                stringId = R.string.condition_501;
+                break;
+            case 502:
+                stringId = R.string.condition_502;
+                break;
+            case 503:
+                stringId = R.string.condition_503;
+                break;
+            case 504:
+                stringId = R.string.condition_504;
+                break;
+            case 511:
+                stringId = R.string.condition_511;
+                break;
+            case 520:
+                stringId = R.string.condition_520;
+                break;
+            case 531:
+                stringId = R.string.condition_531;
+                break;
+            case 600:
+                stringId = R.string.condition_600;
+                break;
+            case 601:
+                stringId = R.string.condition_601;
+                break;
+            case 602:
+                stringId = R.string.condition_602;
+                break;
+            case 611:
+                stringId = R.string.condition_611;
+                break;
+            case 612:
+                stringId = R.string.condition_612;
+                break;
+            case 615:
+                stringId = R.string.condition_615;
+                break;
+            case 616:
+                stringId = R.string.condition_616;
+                break;
+            case 620:
+                stringId = R.string.condition_620;
+                break;
+            case 621:
+                stringId = R.string.condition_621;
+                break;
+            case 622:
+                stringId = R.string.condition_622;
+                break;
+            case 701:
+                stringId = R.string.condition_701;
+                break;
+            case 711:
+                stringId = R.string.condition_711;
+                break;
+            case 721:
+                stringId = R.string.condition_721;
+                break;
+            case 731:
+                stringId = R.string.condition_731;
+                break;
+            case 741:
+                stringId = R.string.condition_741;
+                break;
+            case 751:
+                stringId = R.string.condition_751;
+                break;
+            case 761:
+                stringId = R.string.condition_761;
+                break;
+            case 762:
+                stringId = R.string.condition_762;
+                break;
+            case 771:
+                stringId = R.string.condition_771;
+                break;
+            case 781:
+                stringId = R.string.condition_781;
+                break;
+            case 800:
+                stringId = R.string.condition_800;
+                break;
+            case 801:
+                stringId = R.string.condition_801;
+                break;
+            case 802:
+                stringId = R.string.condition_802;
+                break;
+            case 803:
+                stringId = R.string.condition_803;
+                break;
+            case 804:
+                stringId = R.string.condition_804;
+                break;
+            case 900:
+                stringId = R.string.condition_900;
+                break;
+            case 901:
+                stringId = R.string.condition_901;
+                break;
+            case 902:
+                stringId = R.string.condition_902;
+                break;
+            case 903:
+                stringId = R.string.condition_903;
+                break;
+            case 904:
+                stringId = R.string.condition_904;
+                break;
+            case 905:
+                stringId = R.string.condition_905;
+                break;
+            case 906:
+                stringId = R.string.condition_906;
+                break;
+            case 951:
+                stringId = R.string.condition_951;
+                break;
+            case 952:
+                stringId = R.string.condition_952;
+                break;
+            case 953:
+                stringId = R.string.condition_953;
+                break;
+            case 954:
+                stringId = R.string.condition_954;
+                break;
+            case 955:
+                stringId = R.string.condition_955;
+                break;
+            case 956:
+                stringId = R.string.condition_956;
+                break;
+            case 957:
+                stringId = R.string.condition_957;
+                break;
+            case 958:
+                stringId = R.string.condition_958;
+                break;
+            case 959:
+                stringId = R.string.condition_959;
+                break;
+            case 960:
+                stringId = R.string.condition_960;
+                break;
+            case 961:
+                stringId = R.string.condition_961;
+                break;
+            case 962:
+                stringId = R.string.condition_962;
+                break;
+            default:
+                return context.getString(R.string.condition_unknown, weatherId);
+        }
+
+        return context.getString(stringId);
+    }
+
+    private static int ladderSmallArt(int weatherId) {
+
+        /*
+         * Based on weather code data for Open Weather Map.
+         */
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.ic_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.ic_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.ic_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.ic_fog;
+        } else if (weatherId == 761 || weatherId == 771 || weatherId == 781) {
+            return R.drawable.ic_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.ic_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.ic_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.ic_cloudy;
+        } else if (weatherId >= 900 && weatherId <= 906) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 958 && weatherId <= 962) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 951 && weatherId <= 957) {
+            return R.drawable.ic_clear;
+        }
+
+        return R.drawable.ic_storm;
+    }
+
+    private static int ladderLargeArt(int weatherId) {
+
+        /*
+         * Based on weather code data for Open Weather Map.
+         */
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.art_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.art_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.art_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.art_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.art_fog;
+        } else if (weatherId == 761 || weatherId == 771 || weatherId == 781) {
+            return R.drawable.art_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.art_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.art_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.art_clouds;
+        } else if (weatherId >= 900 && weatherId <= 906) {
+            return R.drawable.art_storm;
+        } else if (weatherId >= 958 && weatherId <= 962) {
+            return R.drawable.art_storm;
+        } else if (weatherId >= 951 && weatherId <= 957) {
+            return R.drawable.art_clear;
+        }
+
+        return R.drawable.art_storm;
+    }
+}
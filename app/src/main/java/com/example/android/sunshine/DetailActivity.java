@@ -29,6 +29,7 @@ import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 
+import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
 import com.example.android.sunshine.databinding.ActivityDetailBinding;
 import com.example.android.sunshine.utilities.SunshineDateUtils;
@@ -87,6 +88,10 @@ public class DetailActivity extends AppCompatActivity implements
     /* The URI that is used to access the chosen day's weather details */
     private Uri mUri;
 
+    /* The cursor the views show, and whether its temperatures were shown in metric units */
+    private Cursor mBoundCursor;
+    private boolean mBoundMetric;
+
 
     /*
      * This field is used for data binding. Normally, we would have to call findViewById many
@@ -111,6 +116,20 @@ public class DetailActivity extends AppCompatActivity implements
         getSupportLoaderManager().initLoader(ID_DETAIL_LOADER, null, this);
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        /*
+         * Changing units in the settings doesn't change the weather data, so rather than query
+         * it again, we format the row we already have again.
+         */
+        if (mBoundCursor != null && !mBoundCursor.isClosed()
+                && mBoundMetric != SunshinePreferences.isMetric(this)
+                && mBoundCursor.moveToFirst()) {
+            bind(mBoundCursor);
+        }
+    }
+
     /**
      * This is where we inflate and set up the menu for this Activity.
      *
@@ -239,6 +258,19 @@ public class DetailActivity extends AppCompatActivity implements
             return;
         }
 
+        bind(data);
+    }
+
+    /**
+     * Binds the weather in the current row of the cursor to our views, and remembers the cursor
+     * and the units it was shown in.
+     *
+     * @param data A cursor positioned on the row to show
+     */
+    private void bind(Cursor data) {
+        mBoundCursor = data;
+        mBoundMetric = SunshinePreferences.isMetric(this);
+
         /****************
          * Weather Icon *
          ****************/
@@ -382,11 +414,12 @@ public class DetailActivity extends AppCompatActivity implements
     /**
      * Called when a previously created loader is being reset, thus making its data unavailable.
      * The application should at this point remove any references it has to the Loader's data.
-     * Since we don't store any of this cursor's data, there are no references we need to remove.
+     * We only hold on to the cursor itself, to format it again when the units change.
      *
      * @param loader The Loader that is being reset.
      */
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
+        mBoundCursor = null;
     }
 }
\ No newline at end of file
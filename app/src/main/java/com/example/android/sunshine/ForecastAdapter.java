@@ -16,7 +16,6 @@
 package com.example.android.sunshine;
 
 import android.content.Context;
-import android.database.Cursor;
 import android.support.annotation.NonNull;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
@@ -25,12 +24,11 @@ import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.example.android.sunshine.utilities.SunshineDateUtils;
-import com.example.android.sunshine.utilities.SunshineWeatherUtils;
+import java.util.List;
 
 /**
- * {@link ForecastAdapter} exposes a list of weather forecasts
- * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
+ * {@link ForecastAdapter} exposes a list of weather forecasts, as {@link ForecastRow}s, to a
+ * {@link android.support.v7.widget.RecyclerView}.
  */
 class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
 
@@ -63,7 +61,7 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      */
     private boolean mUseTodayLayout;
 
-    private Cursor mCursor;
+    private List<ForecastRow> mRows;
 
     /**
      * Creates a ForecastAdapter.
@@ -129,90 +127,50 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      */
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
+        /* Everything the row shows was worked out by ForecastRowsLoader, off the main thread */
+        ForecastRow row = mRows.get(position);
 
         /****************
          * Weather Icon *
          ****************/
-        int weatherId = mCursor.getInt(MainActivity.INDEX_WEATHER_CONDITION_ID);
-        int weatherImageId;
-
         int viewType = getItemViewType(position);
 
         switch (viewType) {
 
             case VIEW_TYPE_TODAY:
-                weatherImageId = SunshineWeatherUtils
-                        .getLargeArtResourceIdForWeatherCondition(weatherId);
+                forecastAdapterViewHolder.iconView.setImageResource(row.largeIconId);
                 break;
 
             case VIEW_TYPE_FUTURE_DAY:
-                weatherImageId = SunshineWeatherUtils
-                        .getSmallArtResourceIdForWeatherCondition(weatherId);
+                forecastAdapterViewHolder.iconView.setImageResource(row.smallIconId);
                 break;
 
             default:
                 throw new IllegalArgumentException("Invalid view type, value of " + viewType);
         }
 
-        forecastAdapterViewHolder.iconView.setImageResource(weatherImageId);
-
         /****************
          * Weather Date *
          ****************/
-         /* Read date from the cursor */
-        long dateInMillis = mCursor.getLong(MainActivity.INDEX_WEATHER_DATE);
-         /* Get human readable string using our utility method */
-        String dateString = SunshineDateUtils.getFriendlyDateString(mContext, dateInMillis, false);
-
-         /* Display friendly date string */
-        forecastAdapterViewHolder.dateView.setText(dateString);
+        forecastAdapterViewHolder.dateView.setText(row.dateText);
 
         /***********************
          * Weather Description *
          ***********************/
-        String description = SunshineWeatherUtils.getStringForWeatherCondition(mContext, weatherId);
-         /* Create the accessibility (a11y) String from the weather description */
-        String descriptionA11y = mContext.getString(R.string.a11y_forecast, description);
-
-         /* Set the text and content description (for accessibility purposes) */
-        forecastAdapterViewHolder.descriptionView.setText(description);
-        forecastAdapterViewHolder.descriptionView.setContentDescription(descriptionA11y);
+        forecastAdapterViewHolder.descriptionView.setText(row.description);
+        forecastAdapterViewHolder.descriptionView.setContentDescription(row.descriptionA11y);
 
         /**************************
          * High (max) temperature *
          **************************/
-         /* Read high temperature from the cursor (in degrees celsius) */
-        double highInCelsius = mCursor.getDouble(MainActivity.INDEX_WEATHER_MAX_TEMP);
-         /*
-          * If the user's preference for weather is fahrenheit, formatTemperature will convert
-          * the temperature. This method will also append either °C or °F to the temperature
-          * String.
-          */
-        String highString = SunshineWeatherUtils.formatTemperature(mContext, highInCelsius);
-         /* Create the accessibility (a11y) String from the weather description */
-        String highA11y = mContext.getString(R.string.a11y_high_temp, highString);
-
-         /* Set the text and content description (for accessibility purposes) */
-        forecastAdapterViewHolder.highTempView.setText(highString);
-        forecastAdapterViewHolder.highTempView.setContentDescription(highA11y);
+        forecastAdapterViewHolder.highTempView.setText(row.highText);
+        forecastAdapterViewHolder.highTempView.setContentDescription(row.highA11y);
 
         /*************************
          * Low (min) temperature *
          *************************/
-         /* Read low temperature from the cursor (in degrees celsius) */
-        double lowInCelsius = mCursor.getDouble(MainActivity.INDEX_WEATHER_MIN_TEMP);
-         /*
-          * If the user's preference for weather is fahrenheit, formatTemperature will convert
-          * the temperature. This method will also append either °C or °F to the temperature
-          * String.
-          */
-        String lowString = SunshineWeatherUtils.formatTemperature(mContext, lowInCelsius);
-        String lowA11y = mContext.getString(R.string.a11y_low_temp, lowString);
-
-         /* Set the text and content description (for accessibility purposes) */
-        forecastAdapterViewHolder.lowTempView.setText(lowString);
-        forecastAdapterViewHolder.lowTempView.setContentDescription(lowA11y);
+        forecastAdapterViewHolder.lowTempView.setText(row.lowText);
+        forecastAdapterViewHolder.lowTempView.setContentDescription(row.lowA11y);
     }
 
     /**
@@ -223,8 +181,8 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      */
     @Override
     public int getItemCount() {
-        if (null == mCursor) return 0;
-        return mCursor.getCount();
+        if (null == mRows) return 0;
+        return mRows.size();
     }
 
     /**
@@ -247,18 +205,42 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
     }
 
     /**
-     * Swaps the cursor used by the ForecastAdapter for its weather data. This method is called by
+     * Swaps the rows used by the ForecastAdapter for its weather data. This method is called by
      * MainActivity after a load has finished, as well as when the Loader responsible for loading
      * the weather data is reset. When this method is called, we assume we have a completely new
      * set of data, so we call notifyDataSetChanged to tell the RecyclerView to update.
      *
-     * @param newCursor the new cursor to use as ForecastAdapter's data source
+     * @param newRows the new rows to use as ForecastAdapter's data source
      */
-    void swapCursor(Cursor newCursor) {
-        mCursor = newCursor;
+    void swapRows(List<ForecastRow> newRows) {
+        mRows = newRows;
         notifyDataSetChanged();
     }
 
+    /**
+     * Moves to rows loaded after the ones shown. If the update was diffed against the rows this
+     * adapter shows, only the rows that were inserted, removed or changed are notified, so a sync
+     * that changed nothing doesn't rebind anything. Otherwise this is {@link #swapRows}.
+     *
+     * @param update The rows and how they differ from those loaded before, or null for none
+     */
+    void updateRows(ForecastRows update) {
+        if (update == null) {
+            swapRows(null);
+            return;
+        }
+        if (update.rows == mRows) {
+            /* Delivered again, say after a configuration change */
+            return;
+        }
+        if (update.diff == null || update.previous != mRows) {
+            swapRows(update.rows);
+            return;
+        }
+        mRows = update.rows;
+        update.diff.dispatchUpdatesTo(this);
+    }
+
     /**
      * A ViewHolder is a required part of the pattern for RecyclerViews. It mostly behaves as
      * a cache of the child views for a forecast item. It's also a convenient place to set an
@@ -294,9 +276,10 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            long dateInMillis = mCursor.getLong(MainActivity.INDEX_WEATHER_DATE);
-            mClickHandler.onClick(dateInMillis);
+            if (adapterPosition == RecyclerView.NO_POSITION) {
+                return;
+            }
+            mClickHandler.onClick(mRows.get(adapterPosition).date);
         }
     }
 }
\ No newline at end of file
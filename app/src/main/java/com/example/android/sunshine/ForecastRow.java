@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.example.android.sunshine.utilities.SunshineWeatherUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything one row of the forecast list displays, worked out ahead of time so that
+ * {@link ForecastAdapter#onBindViewHolder} only has to hand it to the views. Rows are immutable
+ * and built off the main thread by {@link ForecastRowsLoader}.
+ */
+final class ForecastRow {
+
+    /* Normalized UTC date of the forecast, what a click on the row opens */
+    final long date;
+
+    /* What the row was formatted from, to format it again when the units change */
+    final int weatherId;
+    final double highCelsius;
+    final double lowCelsius;
+
+    /* The art for the "today" layout and for every other row */
+    final int largeIconId;
+    final int smallIconId;
+
+    final String dateText;
+    final String description;
+    final String descriptionA11y;
+    final String highText;
+    final String highA11y;
+    final String lowText;
+    final String lowA11y;
+
+    private ForecastRow(long date, int weatherId, double highCelsius, double lowCelsius,
+                        int largeIconId, int smallIconId, String dateText,
+                        String description, String descriptionA11y, String highText,
+                        String highA11y, String lowText, String lowA11y) {
+        this.date = date;
+        this.weatherId = weatherId;
+        this.highCelsius = highCelsius;
+        this.lowCelsius = lowCelsius;
+        this.largeIconId = largeIconId;
+        this.smallIconId = smallIconId;
+        this.dateText = dateText;
+        this.description = description;
+        this.descriptionA11y = descriptionA11y;
+        this.highText = highText;
+        this.highA11y = highA11y;
+        this.lowText = lowText;
+        this.lowA11y = lowA11y;
+    }
+
+    /**
+     * @return Whether the other row displays exactly the same thing as this one
+     */
+    boolean hasSameContent(ForecastRow other) {
+        return date == other.date
+                && largeIconId == other.largeIconId
+                && smallIconId == other.smallIconId
+                && dateText.equals(other.dateText)
+                && description.equals(other.description)
+                && descriptionA11y.equals(other.descriptionA11y)
+                && highText.equals(other.highText)
+                && highA11y.equals(other.highA11y)
+                && lowText.equals(other.lowText)
+                && lowA11y.equals(other.lowA11y);
+    }
+
+    /**
+     * Builds the row for the cursor's current position. Reads preferences and formats strings,
+     * so keep it off the main thread.
+     *
+     * @param cursor A cursor with the columns of {@link MainActivity#MAIN_FORECAST_PROJECTION}
+     */
+    static ForecastRow fromCursor(Context context, Cursor cursor) {
+        return format(context,
+                cursor.getLong(MainActivity.INDEX_WEATHER_DATE),
+                cursor.getInt(MainActivity.INDEX_WEATHER_CONDITION_ID),
+                cursor.getDouble(MainActivity.INDEX_WEATHER_MAX_TEMP),
+                cursor.getDouble(MainActivity.INDEX_WEATHER_MIN_TEMP));
+    }
+
+    private static ForecastRow format(Context context, long date, int weatherId,
+                                      double highCelsius, double lowCelsius) {
+        String description = SunshineWeatherUtils.getStringForWeatherCondition(context, weatherId);
+        /*
+         * If the user's preference for weather is fahrenheit, formatTemperature will convert
+         * the temperature. This method will also append either °C or °F to the temperature
+         * String.
+         */
+        String highText = SunshineWeatherUtils.formatTemperature(context, highCelsius);
+        String lowText = SunshineWeatherUtils.formatTemperature(context, lowCelsius);
+
+        return new ForecastRow(date, weatherId, highCelsius, lowCelsius,
+                SunshineWeatherUtils.getLargeArtResourceIdForWeatherCondition(weatherId),
+                SunshineWeatherUtils.getSmallArtResourceIdForWeatherCondition(weatherId),
+                SunshineDateUtils.getFriendlyDateString(context, date, false),
+                description,
+                context.getString(R.string.a11y_forecast, description),
+                highText,
+                context.getString(R.string.a11y_high_temp, highText),
+                lowText,
+                context.getString(R.string.a11y_low_temp, lowText));
+    }
+
+    /**
+     * Builds a row for every position of the cursor. Doesn't close the cursor.
+     *
+     * @return The rows, in the cursor's order. The list can't be modified.
+     */
+    static List<ForecastRow> fromCursorRows(Context context, Cursor cursor) {
+        List<ForecastRow> rows = new ArrayList<ForecastRow>(cursor.getCount());
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            rows.add(fromCursor(context, cursor));
+        }
+        return Collections.unmodifiableList(rows);
+    }
+
+    /**
+     * Formats the rows again from what they were formatted from, for when the user's preferences
+     * changed but the weather didn't. Like building them, keep it off the main thread.
+     *
+     * @return New rows, in the same order. The list can't be modified.
+     */
+    static List<ForecastRow> reformat(Context context, List<ForecastRow> rows) {
+        List<ForecastRow> reformatted = new ArrayList<ForecastRow>(rows.size());
+        for (ForecastRow row : rows) {
+            reformatted.add(format(context, row.date, row.weatherId, row.highCelsius,
+                    row.lowCelsius));
+        }
+        return Collections.unmodifiableList(reformatted);
+    }
+}
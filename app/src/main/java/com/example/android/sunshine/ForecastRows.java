@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.support.v7.util.DiffUtil;
+
+import java.util.List;
+
+/**
+ * A list of {@link ForecastRow}s together with how it differs from the list loaded before it,
+ * so {@link ForecastAdapter} can tell the RecyclerView about just the rows that changed instead
+ * of rebinding all of them.
+ * <p>
+ * Rows are the same item if they are for the same date, and have the same contents if they
+ * display exactly the same strings and icons.
+ */
+final class ForecastRows {
+
+    /* The rows, never null */
+    final List<ForecastRow> rows;
+
+    /* The rows the diff was computed against, or null if there were none */
+    final List<ForecastRow> previous;
+
+    /* How to go from previous to rows, null if previous is */
+    final DiffUtil.DiffResult diff;
+
+    private ForecastRows(List<ForecastRow> rows, List<ForecastRow> previous,
+                         DiffUtil.DiffResult diff) {
+        this.rows = rows;
+        this.previous = previous;
+        this.diff = diff;
+    }
+
+    /**
+     * Compares the rows with the previous ones. Takes time linear in the number of rows when
+     * little changed, so call it off the main thread.
+     *
+     * @param previous The rows shown so far, or null
+     */
+    static ForecastRows diff(List<ForecastRow> rows, List<ForecastRow> previous) {
+        if (previous == null) {
+            return new ForecastRows(rows, null, null);
+        }
+        /* Both are sorted by date, so no row ever moves */
+        DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new Callback(previous, rows), false);
+        return new ForecastRows(rows, previous, diff);
+    }
+
+    private static final class Callback extends DiffUtil.Callback {
+
+        private final List<ForecastRow> mOldRows;
+        private final List<ForecastRow> mNewRows;
+
+        Callback(List<ForecastRow> oldRows, List<ForecastRow> newRows) {
+            mOldRows = oldRows;
+            mNewRows = newRows;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldRows.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewRows.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldRows.get(oldItemPosition).date == mNewRows.get(newItemPosition).date;
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldRows.get(oldItemPosition).hasSameContent(mNewRows.get(newItemPosition));
+        }
+    }
+}
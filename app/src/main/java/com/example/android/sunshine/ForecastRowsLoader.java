@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.data.WeatherContract;
+
+import java.util.List;
+
+/**
+ * Loads the forecast from today onwards and turns it into {@link ForecastRow}s on the loader's
+ * background thread, so the list never formats anything while it scrolls. That thread also diffs
+ * the rows against those delivered last, so the list only rebinds the rows that changed.
+ * <p>
+ * Like a CursorLoader it loads again whenever the weather content URI is notified of a change.
+ * The cursor itself is closed as soon as the rows are built. When the user changes units
+ * the weather doesn't change, so the rows are just formatted again from what they were built
+ * from, without querying.
+ */
+class ForecastRowsLoader extends AsyncTaskLoader<ForecastRows> {
+
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver() {
+        @Override
+        public void onChange(boolean selfChange) {
+            mQueryNeeded = true;
+            super.onChange(selfChange);
+        }
+    };
+
+    /* Whether the weather may have changed since the last query */
+    private volatile boolean mQueryNeeded = true;
+
+    /* The units the last rows were formatted in */
+    private volatile boolean mRowsMetric;
+
+    /* Read by loadInBackground to diff against */
+    private volatile ForecastRows mRows;
+    private boolean mObserving;
+
+    ForecastRowsLoader(Context context) {
+        super(context);
+    }
+
+    @Override
+    public ForecastRows loadInBackground() {
+        Context context = getContext();
+        ForecastRows delivered = mRows;
+        boolean metric = SunshinePreferences.isMetric(context);
+
+        if (!mQueryNeeded && delivered != null) {
+            List<ForecastRow> rows = ForecastRow.reformat(context, delivered.rows);
+            mRowsMetric = metric;
+            return ForecastRows.diff(rows, delivered.rows);
+        }
+
+        /* Cleared first, so a change notified while we query isn't lost */
+        mQueryNeeded = false;
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                MainActivity.MAIN_FORECAST_PROJECTION,
+                WeatherContract.WeatherEntry.getSqlSelectForTodayOnwards(),
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            mQueryNeeded = true;
+            return null;
+        }
+
+        List<ForecastRow> rows;
+        try {
+            rows = ForecastRow.fromCursorRows(context, cursor);
+        } finally {
+            cursor.close();
+        }
+
+        mRowsMetric = metric;
+        return ForecastRows.diff(rows, delivered == null ? null : delivered.rows);
+    }
+
+    @Override
+    public void deliverResult(ForecastRows rows) {
+        if (isReset()) {
+            return;
+        }
+        mRows = rows;
+        if (isStarted()) {
+            super.deliverResult(rows);
+        }
+    }
+
+    @Override
+    public void onCanceled(ForecastRows rows) {
+        /* The query may have been what was cancelled, so don't trust the rows we have */
+        mQueryNeeded = true;
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mObserving) {
+            getContext().getContentResolver().registerContentObserver(
+                    WeatherContract.WeatherEntry.CONTENT_URI, true, mObserver);
+            mObserving = true;
+        }
+
+        if (mRows != null) {
+            deliverResult(mRows);
+        }
+        if (takeContentChanged() || mRows == null
+                || mRowsMetric != SunshinePreferences.isMetric(getContext())) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        if (mObserving) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mObserving = false;
+        }
+        mRows = null;
+        mQueryNeeded = true;
+    }
+}
@@ -16,7 +16,6 @@
 package com.example.android.sunshine;
 
 import android.content.Intent;
-import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
@@ -24,7 +23,6 @@ import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.LinearLayoutManager;
@@ -59,7 +57,7 @@ import static com.example.android.sunshine.sync.SunshineFirebaseJobService.PATH_
 public class MainActivity extends AppCompatActivity implements
         //GoogleApiClient.ConnectionCallbacks,
         //GoogleApiClient.OnConnectionFailedListener,
-        LoaderManager.LoaderCallbacks<Cursor>,
+        LoaderManager.LoaderCallbacks<ForecastRows>,
         ForecastAdapter.ForecastAdapterOnClickHandler {
 
     private final String LOG_TAG = MainActivity.class.getSimpleName();
@@ -225,29 +223,17 @@ public class MainActivity extends AppCompatActivity implements
      * @return A new Loader instance that is ready to start loading.
      */
     @Override
-    public Loader<Cursor> onCreateLoader(int loaderId, Bundle bundle) {
+    public Loader<ForecastRows> onCreateLoader(int loaderId, Bundle bundle) {
 
 
         switch (loaderId) {
 
             case ID_FORECAST_LOADER:
-                /* URI for all rows of weather data in our weather table */
-                Uri forecastQueryUri = WeatherContract.WeatherEntry.CONTENT_URI;
-                /* Sort order: Ascending by date */
-                String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
                 /*
-                 * A SELECTION in SQL declares which rows you'd like to return. In our case, we
-                 * want all weather data from today onwards that is stored in our weather table.
-                 * We created a handy method to do that in our WeatherEntry class.
+                 * Queries all weather data from today onwards, ascending by date, and formats
+                 * each row for display on a background thread.
                  */
-                String selection = WeatherContract.WeatherEntry.getSqlSelectForTodayOnwards();
-
-                return new CursorLoader(this,
-                        forecastQueryUri,
-                        MAIN_FORECAST_PROJECTION,
-                        selection,
-                        null,
-                        sortOrder);
+                return new ForecastRowsLoader(this);
 
             default:
                 throw new RuntimeException("Loader Not Implemented: " + loaderId);
@@ -266,13 +252,16 @@ public class MainActivity extends AppCompatActivity implements
      * @param data   The data generated by the Loader.
      */
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+    public void onLoadFinished(Loader<ForecastRows> loader, ForecastRows data) {
 
 
-        mForecastAdapter.swapCursor(data);
-        if (mPosition == RecyclerView.NO_POSITION) mPosition = 0;
-        mRecyclerView.smoothScrollToPosition(mPosition);
-        if (data.getCount() != 0) showWeatherDataView();
+        mForecastAdapter.updateRows(data);
+        /* Later loads are syncs, which shouldn't move the list the user may be scrolling */
+        if (mPosition == RecyclerView.NO_POSITION) {
+            mPosition = 0;
+            mRecyclerView.smoothScrollToPosition(mPosition);
+        }
+        if (data != null && data.rows.size() != 0) showWeatherDataView();
     }
 
     /**
@@ -282,12 +271,12 @@ public class MainActivity extends AppCompatActivity implements
      * @param loader The Loader that is being reset.
      */
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
+    public void onLoaderReset(Loader<ForecastRows> loader) {
         /*
          * Since this Loader's data is now invalid, we need to clear the Adapter that is
          * displaying the data.
          */
-        mForecastAdapter.swapCursor(null);
+        mForecastAdapter.swapRows(null);
     }
 
     /**
@@ -25,7 +25,7 @@ import android.support.v7.preference.PreferenceFragmentCompat;
 import android.support.v7.preference.PreferenceScreen;
 
 import com.example.android.sunshine.data.SunshinePreferences;
-import com.example.android.sunshine.data.WeatherContract;
+import com.example.android.sunshine.sync.SunshineSyncCoordinator;
 import com.example.android.sunshine.sync.SunshineSyncUtils;
 
 /**
@@ -98,11 +98,12 @@ public class SettingsFragment extends PreferenceFragmentCompat implements
             // we've changed the location
             // Wipe out any potential PlacePicker latlng values so that we can use this text entry.
             SunshinePreferences.resetLocationCoordinates(activity);
+            // A sync still fetching the old location's forecast is pointless now, stop it
+            SunshineSyncCoordinator.getInstance().cancelObsoleteSync(activity);
             SunshineSyncUtils.startImmediateSync(activity);
-        } else if (key.equals(getString(R.string.pref_units_key))) {
-            // units have changed. update lists of weather entries accordingly
-            activity.getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
         }
+        // Units need no work here: the weather data doesn't change, so rather than query it
+        // again the screens format what they already loaded again when they next start.
         Preference preference = findPreference(key);
         if (null != preference) {
             if (!(preference instanceof CheckBoxPreference)) {
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.os.Bundle;
+
+/**
+ * A fixed capacity batch of forecast rows stored column by column in primitive arrays. This is
+ * what the forecast parser fills and what {@link WeatherProvider} inserts from, so moving a row
+ * from the network into the database doesn't box a single value.
+ * <p>
+ * Each array holds one column of the weather table, in the same order as the rows were added.
+ * Only the first {@link #size()} entries of each array are valid.
+ */
+public final class ForecastBatch {
+
+    /* Keys used to hand a batch to WeatherProvider#call inside of a Bundle */
+    private static final String KEY_SIZE = "size";
+    private static final String KEY_DATE = WeatherContract.WeatherEntry.COLUMN_DATE;
+    private static final String KEY_WEATHER_ID = WeatherContract.WeatherEntry.COLUMN_WEATHER_ID;
+    private static final String KEY_MIN = WeatherContract.WeatherEntry.COLUMN_MIN_TEMP;
+    private static final String KEY_MAX = WeatherContract.WeatherEntry.COLUMN_MAX_TEMP;
+    private static final String KEY_HUMIDITY = WeatherContract.WeatherEntry.COLUMN_HUMIDITY;
+    private static final String KEY_PRESSURE = WeatherContract.WeatherEntry.COLUMN_PRESSURE;
+    private static final String KEY_WIND = WeatherContract.WeatherEntry.COLUMN_WIND_SPEED;
+    private static final String KEY_DEGREES = WeatherContract.WeatherEntry.COLUMN_DEGREES;
+
+    public final long[] date;
+    public final int[] weatherId;
+    public final double[] min;
+    public final double[] max;
+    public final double[] humidity;
+    public final double[] pressure;
+    public final double[] wind;
+    public final double[] degrees;
+
+    private int mSize;
+
+    public ForecastBatch(int capacity) {
+        this(new long[capacity], new int[capacity], new double[capacity], new double[capacity],
+                new double[capacity], new double[capacity], new double[capacity],
+                new double[capacity], 0);
+    }
+
+    private ForecastBatch(long[] date, int[] weatherId, double[] min, double[] max,
+                          double[] humidity, double[] pressure, double[] wind, double[] degrees,
+                          int size) {
+        this.date = date;
+        this.weatherId = weatherId;
+        this.min = min;
+        this.max = max;
+        this.humidity = humidity;
+        this.pressure = pressure;
+        this.wind = wind;
+        this.degrees = degrees;
+        mSize = size;
+    }
+
+    /**
+     * Appends a row to the batch.
+     *
+     * @throws IllegalStateException if the batch is already full
+     */
+    public void add(long date, int weatherId, double min, double max, double humidity,
+                    double pressure, double wind, double degrees) {
+        if (isFull()) {
+            throw new IllegalStateException("ForecastBatch is full");
+        }
+        int i = mSize++;
+        this.date[i] = date;
+        this.weatherId[i] = weatherId;
+        this.min[i] = min;
+        this.max[i] = max;
+        this.humidity[i] = humidity;
+        this.pressure[i] = pressure;
+        this.wind[i] = wind;
+        this.degrees[i] = degrees;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public int capacity() {
+        return date.length;
+    }
+
+    public boolean isFull() {
+        return mSize == date.length;
+    }
+
+    /* Empties the batch so its arrays can be reused for the next rows */
+    public void clear() {
+        mSize = 0;
+    }
+
+    /**
+     * Wraps the column arrays in a Bundle so the batch can be passed to
+     * {@link WeatherProvider#call(String, String, Bundle)}. The arrays are not copied.
+     *
+     * @return A Bundle that {@link #fromBundle(Bundle)} turns back into a batch
+     */
+    public Bundle toBundle() {
+        Bundle bundle = new Bundle();
+        bundle.putInt(KEY_SIZE, mSize);
+        bundle.putLongArray(KEY_DATE, date);
+        bundle.putIntArray(KEY_WEATHER_ID, weatherId);
+        bundle.putDoubleArray(KEY_MIN, min);
+        bundle.putDoubleArray(KEY_MAX, max);
+        bundle.putDoubleArray(KEY_HUMIDITY, humidity);
+        bundle.putDoubleArray(KEY_PRESSURE, pressure);
+        bundle.putDoubleArray(KEY_WIND, wind);
+        bundle.putDoubleArray(KEY_DEGREES, degrees);
+        return bundle;
+    }
+
+    /**
+     * Rebuilds a batch from a Bundle created by {@link #toBundle()}.
+     *
+     * @throws IllegalArgumentException if the Bundle does not contain a complete batch
+     */
+    public static ForecastBatch fromBundle(Bundle bundle) {
+        if (bundle == null || !bundle.containsKey(KEY_SIZE)) {
+            throw new IllegalArgumentException("Bundle does not contain a ForecastBatch");
+        }
+
+        ForecastBatch batch = new ForecastBatch(
+                bundle.getLongArray(KEY_DATE),
+                bundle.getIntArray(KEY_WEATHER_ID),
+                bundle.getDoubleArray(KEY_MIN),
+                bundle.getDoubleArray(KEY_MAX),
+                bundle.getDoubleArray(KEY_HUMIDITY),
+                bundle.getDoubleArray(KEY_PRESSURE),
+                bundle.getDoubleArray(KEY_WIND),
+                bundle.getDoubleArray(KEY_DEGREES),
+                bundle.getInt(KEY_SIZE));
+
+        int size = batch.mSize;
+        if (batch.date == null || batch.weatherId == null || batch.min == null
+                || batch.max == null || batch.humidity == null || batch.pressure == null
+                || batch.wind == null || batch.degrees == null
+                || size < 0 || size > batch.date.length || size > batch.weatherId.length
+                || size > batch.min.length || size > batch.max.length
+                || size > batch.humidity.length || size > batch.pressure.length
+                || size > batch.wind.length || size > batch.degrees.length) {
+            throw new IllegalArgumentException("Bundle does not contain a complete ForecastBatch");
+        }
+
+        return batch;
+    }
+}
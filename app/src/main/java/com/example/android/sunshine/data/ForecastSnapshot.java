@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * An immutable copy of every row in the weather table, sorted by date. {@link WeatherProvider}
+ * keeps the latest one in memory and answers the simple forecast queries the app makes over and
+ * over again from it, instead of opening a SQLite cursor each time.
+ * <p>
+ * A snapshot is only taken while the table is small. If the table holds more than
+ * {@link #MAX_ROWS} rows, {@link #load(SQLiteDatabase)} returns a snapshot that answers nothing
+ * and every query goes to SQLite.
+ */
+final class ForecastSnapshot {
+
+    /* Far more than the two weeks of forecast a sync writes */
+    static final int MAX_ROWS = 64;
+
+    /* The columns of the weather table, in the order SQLite returns them for a null projection */
+    private static final String[] ALL_COLUMNS = {
+            WeatherContract.WeatherEntry._ID,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES,
+    };
+
+    private static final int INDEX_ID = 0;
+    private static final int INDEX_DATE = 1;
+    private static final int INDEX_WEATHER_ID = 2;
+    private static final int INDEX_MIN_TEMP = 3;
+    private static final int INDEX_MAX_TEMP = 4;
+    private static final int INDEX_HUMIDITY = 5;
+    private static final int INDEX_PRESSURE = 6;
+    private static final int INDEX_WIND_SPEED = 7;
+    private static final int INDEX_DEGREES = 8;
+
+    /* Answers nothing, used while the table is too big to keep in memory */
+    private static final ForecastSnapshot TOO_LARGE = new ForecastSnapshot(null, null);
+
+    private final long[] mIds;
+    private final ForecastBatch mRows;
+
+    private ForecastSnapshot(long[] ids, ForecastBatch rows) {
+        mIds = ids;
+        mRows = rows;
+    }
+
+    /**
+     * Reads the whole weather table. Call this with no write transaction of our own open, so
+     * the snapshot only ever contains committed rows.
+     */
+    static ForecastSnapshot load(SQLiteDatabase db) {
+        Cursor cursor = db.query(
+                WeatherContract.WeatherEntry.TABLE_NAME,
+                ALL_COLUMNS,
+                null,
+                null,
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC",
+                Integer.toString(MAX_ROWS + 1));
+        try {
+            int count = cursor.getCount();
+            if (count > MAX_ROWS) {
+                return TOO_LARGE;
+            }
+
+            long[] ids = new long[count];
+            ForecastBatch rows = new ForecastBatch(count);
+            while (cursor.moveToNext()) {
+                ids[rows.size()] = cursor.getLong(INDEX_ID);
+                rows.add(cursor.getLong(INDEX_DATE),
+                        cursor.getInt(INDEX_WEATHER_ID),
+                        cursor.getDouble(INDEX_MIN_TEMP),
+                        cursor.getDouble(INDEX_MAX_TEMP),
+                        cursor.getDouble(INDEX_HUMIDITY),
+                        cursor.getDouble(INDEX_PRESSURE),
+                        cursor.getDouble(INDEX_WIND_SPEED),
+                        cursor.getDouble(INDEX_DEGREES));
+            }
+            return new ForecastSnapshot(ids, rows);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Builds a cursor over the rows dated from firstDate to lastDate, both inclusive.
+     *
+     * @param projection The columns to return, or null for every column
+     * @param firstDate  The earliest date to include
+     * @param lastDate   The latest date to include
+     * @param descending Whether to return the newest date first
+     * @return The cursor, or null if this snapshot can't answer the query and SQLite has to
+     */
+    Cursor query(String[] projection, long firstDate, long lastDate, boolean descending) {
+        if (mRows == null) {
+            return null;
+        }
+
+        String[] columns = projection == null ? ALL_COLUMNS : projection;
+        int[] columnIndexes = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            columnIndexes[i] = indexOf(columns[i]);
+            if (columnIndexes[i] == -1) {
+                return null;
+            }
+        }
+
+        int size = mRows.size();
+        int from = 0;
+        while (from < size && mRows.date[from] < firstDate) {
+            from++;
+        }
+        int to = size;
+        while (to > from && mRows.date[to - 1] > lastDate) {
+            to--;
+        }
+
+        MatrixCursor cursor = new MatrixCursor(columns, to - from);
+        for (int n = 0; n < to - from; n++) {
+            int row = descending ? to - 1 - n : from + n;
+            Object[] values = new Object[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                values[i] = getValue(row, columnIndexes[i]);
+            }
+            cursor.addRow(values);
+        }
+        return cursor;
+    }
+
+    private static int indexOf(String column) {
+        for (int i = 0; i < ALL_COLUMNS.length; i++) {
+            if (ALL_COLUMNS[i].equals(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /* Boxes a value the same way SQLite types it: INTEGER columns as Long, REAL ones as Double */
+    private Object getValue(int row, int columnIndex) {
+        switch (columnIndex) {
+            case INDEX_ID:
+                return mIds[row];
+            case INDEX_DATE:
+                return mRows.date[row];
+            case INDEX_WEATHER_ID:
+                return (long) mRows.weatherId[row];
+            case INDEX_MIN_TEMP:
+                return mRows.min[row];
+            case INDEX_MAX_TEMP:
+                return mRows.max[row];
+            case INDEX_HUMIDITY:
+                return mRows.humidity[row];
+            case INDEX_PRESSURE:
+                return mRows.pressure[row];
+            case INDEX_WIND_SPEED:
+                return mRows.wind[row];
+            case INDEX_DEGREES:
+                return mRows.degrees[row];
+            default:
+                throw new IllegalArgumentException("Unknown column index: " + columnIndex);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.R;
+
+/**
+ * An immutable snapshot of the user's preferences, as {@link SunshinePreferences} reads them.
+ * <p>
+ * Formatting a single list row asks whether the user prefers metric units twice, and every
+ * notification and wearable send asks again, so rather than fetching SharedPreferences and
+ * looking up keys and defaults each time, the preferences are read once into a snapshot. One
+ * change listener on the default SharedPreferences replaces it whenever a preference changes,
+ * and readers on any thread just read the current snapshot.
+ */
+public final class SunshineConfig {
+
+    private static final Object sLock = new Object();
+
+    private static volatile SunshineConfig sConfig;
+
+    /* SharedPreferences only holds on to its listeners weakly, so we have to */
+    private static SharedPreferences.OnSharedPreferenceChangeListener sListener;
+
+    private final boolean mMetric;
+    private final String mLocation;
+    private final boolean mNotificationsEnabled;
+    private final boolean mLocationLatLonAvailable;
+    private final double mLatitude;
+    private final double mLongitude;
+
+    private SunshineConfig(Context context, SharedPreferences sp) {
+        String units = sp.getString(context.getString(R.string.pref_units_key),
+                context.getString(R.string.pref_units_metric));
+        mMetric = context.getString(R.string.pref_units_metric).equals(units);
+
+        mLocation = sp.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+
+        mNotificationsEnabled = sp.getBoolean(
+                context.getString(R.string.pref_enable_notifications_key),
+                context.getResources().getBoolean(R.bool.show_notifications_by_default));
+
+        /* SharedPreferences can't hold doubles, so the coordinates are stored as their bits */
+        mLocationLatLonAvailable = sp.contains(SunshinePreferences.PREF_COORD_LAT)
+                && sp.contains(SunshinePreferences.PREF_COORD_LONG);
+        mLatitude = Double.longBitsToDouble(sp.getLong(SunshinePreferences.PREF_COORD_LAT,
+                Double.doubleToRawLongBits(0.0)));
+        mLongitude = Double.longBitsToDouble(sp.getLong(SunshinePreferences.PREF_COORD_LONG,
+                Double.doubleToRawLongBits(0.0)));
+    }
+
+    /**
+     * Returns the current snapshot. The first call reads the preferences and starts listening
+     * for changes to them.
+     *
+     * @param context Used to get the SharedPreferences the first time
+     * @return The preferences as they were after the last change
+     */
+    public static SunshineConfig get(Context context) {
+        SunshineConfig config = sConfig;
+        if (config != null) {
+            return config;
+        }
+
+        synchronized (sLock) {
+            if (sConfig == null) {
+                final Context appContext = context.getApplicationContext();
+                SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(appContext);
+                sListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                    @Override
+                    public void onSharedPreferenceChanged(SharedPreferences sp, String key) {
+                        refresh(appContext);
+                    }
+                };
+                sp.registerOnSharedPreferenceChangeListener(sListener);
+                sConfig = new SunshineConfig(appContext, sp);
+            }
+            return sConfig;
+        }
+    }
+
+    /**
+     * Reads the preferences into a new snapshot right away. The change listener does this too,
+     * but SharedPreferences calls it on the main thread some time after a background thread
+     * applied its edit, so code that edits preferences off the main thread and reads them back
+     * calls this in between.
+     *
+     * @param context Used to get the SharedPreferences
+     */
+    static void refresh(Context context) {
+        Context appContext = context.getApplicationContext();
+        synchronized (sLock) {
+            if (sConfig == null) {
+                get(appContext);
+                return;
+            }
+            sConfig = new SunshineConfig(appContext,
+                    PreferenceManager.getDefaultSharedPreferences(appContext));
+        }
+    }
+
+    /**
+     * @return true if metric display should be used, false if imperial display should be used
+     */
+    public boolean isMetric() {
+        return mMetric;
+    }
+
+    /**
+     * @return The location the user has set, "94043,USA" if they haven't
+     */
+    public String getPreferredWeatherLocation() {
+        return mLocation;
+    }
+
+    /**
+     * @return true if the user prefers to see notifications, false otherwise
+     */
+    public boolean areNotificationsEnabled() {
+        return mNotificationsEnabled;
+    }
+
+    /**
+     * @return true if both the latitude and longitude of the location are known
+     */
+    public boolean isLocationLatLonAvailable() {
+        return mLocationLatLonAvailable;
+    }
+
+    /**
+     * @return A new array with the latitude and longitude of the location, (0,0) if unknown
+     */
+    public double[] getLocationCoordinates() {
+        return new double[]{mLatitude, mLongitude};
+    }
+
+    @Override
+    public String toString() {
+        return "SunshineConfig{metric=" + mMetric
+                + ", location=" + mLocation
+                + ", notifications=" + mNotificationsEnabled
+                + ", latLon=" + (mLocationLatLonAvailable ? mLatitude + "," + mLongitude : "none")
+                + "}";
+    }
+}
@@ -21,6 +21,10 @@ import android.preference.PreferenceManager;
 
 import com.example.android.sunshine.R;
 
+/**
+ * Reads and writes the user's preferences. The preferences the app reads all the time are read
+ * from the current {@link SunshineConfig} snapshot rather than from SharedPreferences.
+ */
 public final class SunshinePreferences {
 
     /*
@@ -48,6 +52,9 @@ public final class SunshinePreferences {
         editor.putLong(PREF_COORD_LAT, Double.doubleToRawLongBits(lat));
         editor.putLong(PREF_COORD_LONG, Double.doubleToRawLongBits(lon));
         editor.apply();
+
+        /* Don't leave a sync reading the coordinates back to wait for the change listener */
+        SunshineConfig.refresh(context);
     }
 
     /**
@@ -62,6 +69,9 @@ public final class SunshinePreferences {
         editor.remove(PREF_COORD_LAT);
         editor.remove(PREF_COORD_LONG);
         editor.apply();
+
+        /* Don't leave a sync reading the coordinates back to wait for the change listener */
+        SunshineConfig.refresh(context);
     }
 
     /**
@@ -74,12 +84,7 @@ public final class SunshinePreferences {
      * "94043,USA" if SharedPreferences have not been implemented yet.
      */
     public static String getPreferredWeatherLocation(Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        String keyForLocation = context.getString(R.string.pref_location_key);
-        String defaultLocation = context.getString(R.string.pref_location_default);
-
-        return sp.getString(keyForLocation, defaultLocation);
+        return SunshineConfig.get(context).getPreferredWeatherLocation();
     }
 
     /**
@@ -89,19 +94,7 @@ public final class SunshinePreferences {
      * @return true if metric display should be used, false if imperial display should be used
      */
     public static boolean isMetric(Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        String keyForUnits = context.getString(R.string.pref_units_key);
-        String defaultUnits = context.getString(R.string.pref_units_metric);
-        String preferredUnits = sp.getString(keyForUnits, defaultUnits);
-        String metric = context.getString(R.string.pref_units_metric);
-
-        boolean userPrefersMetric = false;
-        if (metric.equals(preferredUnits)) {
-            userPrefersMetric = true;
-        }
-
-        return userPrefersMetric;
+        return SunshineConfig.get(context).isMetric();
     }
 
     /**
@@ -113,25 +106,7 @@ public final class SunshinePreferences {
      * @return an array containing the two coordinate values for the user's preferred location
      */
     public static double[] getLocationCoordinates(Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        double[] preferredCoordinates = new double[2];
-
-        /*
-         * This is a hack we have to resort to since you can't store doubles in SharedPreferences.
-         *
-         * Double.doubleToLongBits returns an integer corresponding to the bits of the given
-         * IEEE 754 double precision value.
-         *
-         * Double.longBitsToDouble does the opposite, converting a long (that represents a double)
-         * into the double itself.
-         */
-        preferredCoordinates[0] = Double
-                 .longBitsToDouble(sp.getLong(PREF_COORD_LAT, Double.doubleToRawLongBits(0.0)));
-        preferredCoordinates[1] = Double
-                .longBitsToDouble(sp.getLong(PREF_COORD_LONG, Double.doubleToRawLongBits(0.0)));
-
-        return preferredCoordinates;
+        return SunshineConfig.get(context).getLocationCoordinates();
     }
 
     /**
@@ -142,17 +117,7 @@ public final class SunshinePreferences {
      * @return true if lat/long are saved in SharedPreferences
      */
     public static boolean isLocationLatLonAvailable(Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        boolean spContainLatitude = sp.contains(PREF_COORD_LAT);
-        boolean spContainLongitude = sp.contains(PREF_COORD_LONG);
-
-        boolean spContainBothLatitudeAndLongitude = false;
-        if (spContainLatitude && spContainLongitude) {
-            spContainBothLatitudeAndLongitude = true;
-        }
-
-        return spContainBothLatitudeAndLongitude;
+        return SunshineConfig.get(context).isLocationLatLonAvailable();
     }
 
     /**
@@ -163,26 +128,7 @@ public final class SunshinePreferences {
      * @return true if the user prefers to see notifications, false otherwise
      */
     public static boolean areNotificationsEnabled(Context context) {
-        /* Key for accessing the preference for showing notifications */
-        String displayNotificationsKey = context.getString(R.string.pref_enable_notifications_key);
-
-        /*
-         * In Sunshine, the user has the ability to say whether she would like notifications
-         * enabled or not. If no preference has been chosen, we want to be able to determine
-         * whether or not to show them. To do this, we reference a bool stored in bools.xml.
-         */
-        boolean shouldDisplayNotificationsByDefault = context
-                .getResources()
-                .getBoolean(R.bool.show_notifications_by_default);
-
-        /* As usual, we use the default SharedPreferences to access the user's preferences */
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        /* If a value is stored with the key, we extract it here. If not, use a default. */
-        boolean shouldDisplayNotifications = sp
-                .getBoolean(displayNotificationsKey, shouldDisplayNotificationsByDefault);
-
-        return shouldDisplayNotifications;
+        return SunshineConfig.get(context).areNotificationsEnabled();
     }
 
     /**
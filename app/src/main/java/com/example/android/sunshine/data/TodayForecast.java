@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.data;
+
+/**
+ * The part of a forecast that the notification shows: the weather and the high and low
+ * temperatures, in celsius, of the first day of the forecast from today onwards.
+ * <p>
+ * A sync builds one from the rows it writes, so nothing has to query the ContentProvider again
+ * afterwards just to find out what today looks like.
+ */
+public final class TodayForecast {
+
+    public final long date;
+    public final int weatherId;
+    public final double high;
+    public final double low;
+
+    public TodayForecast(long date, int weatherId, double high, double low) {
+        this.date = date;
+        this.weatherId = weatherId;
+        this.high = high;
+        this.low = low;
+    }
+
+    @Override
+    public String toString() {
+        return "TodayForecast{date=" + date
+                + ", weatherId=" + weatherId
+                + ", high=" + high
+                + ", low=" + low + "}";
+    }
+}
@@ -56,6 +56,51 @@ public class WeatherContract {
      */
     public static final String PATH_WEATHER = "weather";
 
+    /*
+     * Appended to PATH_WEATHER for bulk inserts that replace the whole forecast in a single
+     * transaction, so readers never see the table empty in between. For instance,
+     *
+     *     content://com.example.android.sunshine/weather/replace
+     */
+    public static final String PATH_REPLACE = "replace";
+
+    /*
+     * Methods that WeatherProvider handles in its call method. These let us hand the provider a
+     * whole ForecastBatch in primitive arrays, rather than an array of boxed ContentValues.
+     * The rows are passed in as ForecastBatch#toBundle and the number of rows written is
+     * returned in the result Bundle under KEY_ROW_COUNT.
+     */
+    public static final String METHOD_BULK_INSERT_BATCH = "bulkInsertBatch";
+    public static final String KEY_ROW_COUNT = "rowCount";
+
+    /*
+     * Differential sync methods. METHOD_SYNC_BATCH compares each row of a ForecastBatch to the
+     * stored row with the same date, updating it only if a value differs and inserting it if
+     * there is none. The result Bundle holds KEY_ROWS_UNCHANGED, KEY_ROWS_UPDATED and
+     * KEY_ROWS_INSERTED. METHOD_PRUNE deletes every row dated before EXTRA_FIRST_DATE or after
+     * EXTRA_LAST_DATE and returns the number of rows deleted under KEY_ROWS_DELETED.
+     *
+     * Both only notify observers if something actually changed, and not at all if
+     * EXTRA_DEFER_NOTIFY is set, in which case the caller notifies once it is done.
+     */
+    public static final String METHOD_SYNC_BATCH = "syncBatch";
+    public static final String METHOD_PRUNE = "prune";
+    public static final String EXTRA_FIRST_DATE = "firstDate";
+    public static final String EXTRA_LAST_DATE = "lastDate";
+    public static final String EXTRA_DEFER_NOTIFY = "deferNotify";
+    public static final String KEY_ROWS_UNCHANGED = "rowsUnchanged";
+    public static final String KEY_ROWS_UPDATED = "rowsUpdated";
+    public static final String KEY_ROWS_INSERTED = "rowsInserted";
+    public static final String KEY_ROWS_DELETED = "rowsDeleted";
+
+    /*
+     * Returns how many queries WeatherProvider answered from its in-memory forecast snapshot
+     * (KEY_SNAPSHOT_HITS) and how many it had to run against SQLite (KEY_SNAPSHOT_MISSES).
+     */
+    public static final String METHOD_GET_SNAPSHOT_STATS = "getSnapshotStats";
+    public static final String KEY_SNAPSHOT_HITS = "snapshotHits";
+    public static final String KEY_SNAPSHOT_MISSES = "snapshotMisses";
+
     /* Inner class that defines the table contents of the weather table */
     public static final class WeatherEntry implements BaseColumns {
 
@@ -64,6 +109,14 @@ public class WeatherContract {
                 .appendPath(PATH_WEATHER)
                 .build();
 
+        /*
+         * Bulk inserting into this URI deletes the current forecast and inserts the new rows
+         * in one transaction. Observers of CONTENT_URI are notified once, after the commit.
+         */
+        public static final Uri CONTENT_URI_REPLACE = CONTENT_URI.buildUpon()
+                .appendPath(PATH_REPLACE)
+                .build();
+
         /* Used internally as the name of our weather table. */
         public static final String TABLE_NAME = "weather";
 
@@ -15,9 +15,11 @@
  */
 package com.example.android.sunshine.data;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
 import com.example.android.sunshine.data.WeatherContract.WeatherEntry;
 
@@ -45,8 +47,61 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
      */
     private static final int DATABASE_VERSION = 3;
 
+    /*
+     * Whether the database uses write-ahead logging. With the default rollback journal, every
+     * query from the UI, notifications or the job service has to wait until a sync's insert
+     * transaction commits. In WAL mode, SQLiteDatabase keeps a pool of read connections that
+     * keep reading the last committed data while the sync writes.
+     */
+    private final boolean mWriteAheadLogging;
+
     public WeatherDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME, true);
+    }
+
+    /**
+     * Only meant for tests and benchmarks that need a separate database or want to compare the
+     * two journal modes. Everything else should use {@link #WeatherDbHelper(Context)}.
+     */
+    WeatherDbHelper(Context context, String databaseName, boolean writeAheadLogging) {
+        super(context, databaseName, null, DATABASE_VERSION);
+        mWriteAheadLogging = writeAheadLogging
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(mWriteAheadLogging);
+        }
+    }
+
+    /**
+     * Before Jelly Bean, SQLiteOpenHelper has no way to request write-ahead logging up front,
+     * so we switch the journal mode as soon as the database has been opened.
+     *
+     * @param db The database.
+     */
+    @Override
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (mWriteAheadLogging
+                && Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN
+                && !db.isReadOnly()) {
+            db.enableWriteAheadLogging();
+        }
+    }
+
+    /**
+     * Starts a transaction that, in WAL mode, doesn't keep readers out while it is open. Use this
+     * instead of {@link SQLiteDatabase#beginTransaction()} for writes to the weather table.
+     *
+     * @param db The database to start the transaction on
+     */
+    static void beginWriteTransaction(SQLiteDatabase db) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            db.beginTransactionNonExclusive();
+        } else {
+            db.beginTransaction();
+        }
     }
 
     /**
@@ -20,12 +20,23 @@ import android.content.ContentProvider;
 import android.content.ContentValues;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
 import android.support.annotation.NonNull;
+import android.util.Log;
 
 import com.example.android.sunshine.utilities.SunshineDateUtils;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 /**
  * This class serves as the ContentProvider for all of Sunshine's data. This class allows us to
  * bulkInsert data, query data, and delete data.
@@ -38,6 +49,8 @@ import com.example.android.sunshine.utilities.SunshineDateUtils;
  */
 public class WeatherProvider extends ContentProvider {
 
+    private static final String TAG = WeatherProvider.class.getSimpleName();
+
     /*
      * These constant will be used to match URIs with the data they are looking for. We will take
      * advantage of the UriMatcher class to make that matching MUCH easier than doing something
@@ -45,6 +58,7 @@ public class WeatherProvider extends ContentProvider {
      */
     public static final int CODE_WEATHER = 100;
     public static final int CODE_WEATHER_WITH_DATE = 101;
+    public static final int CODE_WEATHER_REPLACE = 102;
 
     /*
      * The URI Matcher used by this content provider. The leading "s" in this variable name
@@ -52,8 +66,74 @@ public class WeatherProvider extends ContentProvider {
      * common convention in Android programming.
      */
     private static final UriMatcher sUriMatcher = buildUriMatcher();
+
+    /*
+     * The INSERT used for ForecastBatch rows. The column order here matches the bind indexes
+     * used in bulkInsert(ForecastBatch). The weather table replaces rows on a date conflict, so
+     * a plain INSERT is enough to overwrite an existing day.
+     */
+    private static final String SQL_INSERT_WEATHER =
+            "INSERT INTO " + WeatherContract.WeatherEntry.TABLE_NAME + " ("
+                    + WeatherContract.WeatherEntry.COLUMN_DATE + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_MIN_TEMP + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_HUMIDITY + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_PRESSURE + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_WIND_SPEED + ", "
+                    + WeatherContract.WeatherEntry.COLUMN_DEGREES
+                    + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    /* The UPDATE used by the differential sync, the date is bound last */
+    private static final String SQL_UPDATE_WEATHER_BY_DATE =
+            "UPDATE " + WeatherContract.WeatherEntry.TABLE_NAME + " SET "
+                    + WeatherContract.WeatherEntry.COLUMN_WEATHER_ID + " = ?, "
+                    + WeatherContract.WeatherEntry.COLUMN_MIN_TEMP + " = ?, "
+                    + WeatherContract.WeatherEntry.COLUMN_MAX_TEMP + " = ?, "
+                    + WeatherContract.WeatherEntry.COLUMN_HUMIDITY + " = ?, "
+                    + WeatherContract.WeatherEntry.COLUMN_PRESSURE + " = ?, "
+                    + WeatherContract.WeatherEntry.COLUMN_WIND_SPEED + " = ?, "
+                    + WeatherContract.WeatherEntry.COLUMN_DEGREES + " = ? WHERE "
+                    + WeatherContract.WeatherEntry.COLUMN_DATE + " = ?";
+
+    /*
+     * Every column of a weather row, in the order of SQL_INSERT_WEATHER and ForecastBatch#add.
+     * Used to read rows back for the differential sync and to bind ContentValues by index.
+     */
+    private static final String[] WEATHER_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES,
+    };
+
+    /* Matches WeatherEntry#getSqlSelectForTodayOnwards, or the same selection with a "?" */
+    private static final Pattern SELECT_DATE_ONWARDS = Pattern.compile("\\s*"
+            + WeatherContract.WeatherEntry.COLUMN_DATE + "\\s*>=\\s*(\\?|-?\\d+)\\s*");
+
+    /* Matches a sort by date alone, the only order ForecastSnapshot can produce */
+    private static final Pattern SORT_BY_DATE = Pattern.compile("\\s*"
+            + WeatherContract.WeatherEntry.COLUMN_DATE + "(?:\\s+(ASC|DESC))?\\s*",
+            Pattern.CASE_INSENSITIVE);
+
     private WeatherDbHelper mOpenHelper;
 
+    /*
+     * The forecast as of the last write, published atomically through the volatile field. It
+     * is null until the first query that needs it, and after invalidateSnapshot. Snapshots are
+     * only ever loaded while holding mSnapshotLock, so an older one can't overwrite a newer one.
+     */
+    private final Object mSnapshotLock = new Object();
+    private volatile ForecastSnapshot mSnapshot;
+    private volatile boolean mSnapshotEnabled = true;
+
+    private final AtomicInteger mSnapshotHits = new AtomicInteger();
+    private final AtomicInteger mSnapshotMisses = new AtomicInteger();
+
     /**
      * Creates the UriMatcher that will match each URI to the CODE_WEATHER and
      * CODE_WEATHER_WITH_DATE constants defined above.
@@ -96,6 +176,14 @@ public class WeatherProvider extends ContentProvider {
          */
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/#", CODE_WEATHER_WITH_DATE);
 
+        /*
+         * This URI is content://com.example.android.sunshine/weather/replace and is only used to
+         * bulkInsert a forecast that replaces everything currently in the table.
+         */
+        matcher.addURI(authority,
+                WeatherContract.PATH_WEATHER + "/" + WeatherContract.PATH_REPLACE,
+                CODE_WEATHER_REPLACE);
+
         return matcher;
     }
 
@@ -144,38 +232,398 @@ public class WeatherProvider extends ContentProvider {
 
         switch (sUriMatcher.match(uri)) {
 
-            case CODE_WEATHER:
-                db.beginTransaction();
-                int rowsInserted = 0;
-                try {
-                    for (ContentValues value : values) {
-                        long weatherDate =
-                                value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
-                        if (!SunshineDateUtils.isDateNormalized(weatherDate)) {
-                            throw new IllegalArgumentException("Date must be normalized to insert");
-                        }
+            case CODE_WEATHER: {
+                long[] dates = getNormalizedDates(values);
 
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
-                            rowsInserted++;
-                        }
-                    }
+                int rowsInserted;
+                WeatherDbHelper.beginWriteTransaction(db);
+                try {
+                    rowsInserted = insertWeatherValues(db, values, dates);
                     db.setTransactionSuccessful();
                 } finally {
                     db.endTransaction();
                 }
 
                 if (rowsInserted > 0) {
+                    refreshSnapshot();
                     getContext().getContentResolver().notifyChange(uri, null);
                 }
 
                 return rowsInserted;
+            }
+
+            /*
+             * Deleting the old forecast and inserting the new one happen in the same
+             * transaction. A query running concurrently either sees the complete old forecast or
+             * the complete new one, but never an empty table, and observers only hear about the
+             * change once it has been committed.
+             */
+            case CODE_WEATHER_REPLACE: {
+                long[] dates = getNormalizedDates(values);
+
+                int rowsDeleted;
+                int rowsReplaced;
+                WeatherDbHelper.beginWriteTransaction(db);
+                try {
+                    rowsDeleted = db.delete(WeatherContract.WeatherEntry.TABLE_NAME, "1", null);
+                    rowsReplaced = insertWeatherValues(db, values, dates);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+
+                if (rowsDeleted > 0 || rowsReplaced > 0) {
+                    refreshSnapshot();
+                    getContext().getContentResolver()
+                            .notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+                }
+
+                return rowsReplaced;
+            }
 
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /**
+     * Reads the date of every row and checks that it is normalized, before any transaction is
+     * opened, so an invalid row doesn't leave half of the values written.
+     *
+     * @param values The rows about to be inserted
+     * @return The date of each row, in the same order as values
+     * @throws IllegalArgumentException if a row has no date or its date isn't normalized
+     */
+    static long[] getNormalizedDates(ContentValues[] values) {
+        long[] dates = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            Long weatherDate = values[i].getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+            if (weatherDate == null || !SunshineDateUtils.isDateNormalized(weatherDate)) {
+                throw new IllegalArgumentException("Date must be normalized to insert");
+            }
+            dates[i] = weatherDate;
+        }
+        return dates;
+    }
+
+    /**
+     * Inserts the rows using the transaction the caller already opened.
+     * <p>
+     * SQLiteDatabase#insert builds and compiles a new INSERT from each ContentValues' key set.
+     * When every row holds exactly the columns of a weather row, which is always the case for
+     * the forecasts we parse, we instead compile SQL_INSERT_WEATHER once and bind each row's
+     * values by index. Rows with any other set of columns go through SQLiteDatabase#insert so
+     * its behaviour, including which columns it leaves to the table's defaults, is unchanged.
+     *
+     * @param db     The database, with a transaction open
+     * @param values The rows to insert
+     * @param dates  The dates returned by {@link #getNormalizedDates(ContentValues[])}
+     * @return The number of rows that were inserted
+     */
+    static int insertWeatherValues(SQLiteDatabase db, ContentValues[] values, long[] dates) {
+        if (!hasOnlyWeatherColumns(values)) {
+            int rowsInserted = 0;
+            for (ContentValues value : values) {
+                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+                if (_id != -1) {
+                    rowsInserted++;
+                }
+            }
+            return rowsInserted;
+        }
+
+        int rowsInserted = 0;
+        SQLiteStatement insert = db.compileStatement(SQL_INSERT_WEATHER);
+        try {
+            for (int i = 0; i < values.length; i++) {
+                ContentValues value = values[i];
+                insert.bindLong(1, dates[i]);
+                for (int column = 1; column < WEATHER_COLUMNS.length; column++) {
+                    DatabaseUtils.bindObjectToProgram(insert, column + 1,
+                            value.get(WEATHER_COLUMNS[column]));
+                }
+
+                /* Like SQLiteDatabase#insert, a row that can't be inserted doesn't stop the rest */
+                try {
+                    if (insert.executeInsert() != -1) {
+                        rowsInserted++;
+                    }
+                } catch (SQLException e) {
+                    Log.e(TAG, "Error inserting " + value, e);
+                }
+            }
+        } finally {
+            insert.close();
+        }
+        return rowsInserted;
+    }
+
+    private static boolean hasOnlyWeatherColumns(ContentValues[] values) {
+        for (ContentValues value : values) {
+            if (value.size() != WEATHER_COLUMNS.length) {
+                return false;
+            }
+            for (String column : WEATHER_COLUMNS) {
+                if (!value.containsKey(column)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Handles the provider specific methods declared in {@link WeatherContract}:
+     * {@link WeatherContract#METHOD_BULK_INSERT_BATCH}, which inserts a {@link ForecastBatch}
+     * without ever boxing its values into ContentValues, and the differential sync methods
+     * {@link WeatherContract#METHOD_SYNC_BATCH} and {@link WeatherContract#METHOD_PRUNE}.
+     *
+     * @param method The method to call
+     * @param arg    Unused
+     * @param extras A Bundle created by ForecastBatch#toBundle, or the dates to prune around
+     * @return A Bundle holding the row counts described in WeatherContract
+     */
+    @Override
+    @TargetApi(11)
+    public Bundle call(@NonNull String method, String arg, Bundle extras) {
+        if (WeatherContract.METHOD_BULK_INSERT_BATCH.equals(method)) {
+            int rowsInserted = bulkInsert(ForecastBatch.fromBundle(extras));
+
+            if (rowsInserted > 0) {
+                refreshSnapshot();
+                getContext().getContentResolver()
+                        .notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            }
+
+            Bundle result = new Bundle();
+            result.putInt(WeatherContract.KEY_ROW_COUNT, rowsInserted);
+            return result;
+        }
+
+        if (WeatherContract.METHOD_SYNC_BATCH.equals(method)) {
+            Bundle result = syncBatch(ForecastBatch.fromBundle(extras));
+
+            boolean changed = result.getInt(WeatherContract.KEY_ROWS_UPDATED) > 0
+                    || result.getInt(WeatherContract.KEY_ROWS_INSERTED) > 0;
+            if (changed) {
+                refreshSnapshot();
+                if (!extras.getBoolean(WeatherContract.EXTRA_DEFER_NOTIFY)) {
+                    getContext().getContentResolver()
+                            .notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+                }
+            }
+
+            return result;
+        }
+
+        if (WeatherContract.METHOD_PRUNE.equals(method)) {
+            if (extras == null
+                    || !extras.containsKey(WeatherContract.EXTRA_FIRST_DATE)
+                    || !extras.containsKey(WeatherContract.EXTRA_LAST_DATE)) {
+                throw new IllegalArgumentException("Prune requires a first and last date");
+            }
+
+            int rowsDeleted = mOpenHelper.getWritableDatabase().delete(
+                    WeatherContract.WeatherEntry.TABLE_NAME,
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " < ? OR "
+                            + WeatherContract.WeatherEntry.COLUMN_DATE + " > ?",
+                    new String[]{
+                            Long.toString(extras.getLong(WeatherContract.EXTRA_FIRST_DATE)),
+                            Long.toString(extras.getLong(WeatherContract.EXTRA_LAST_DATE))
+                    });
+
+            if (rowsDeleted > 0) {
+                refreshSnapshot();
+                if (!extras.getBoolean(WeatherContract.EXTRA_DEFER_NOTIFY)) {
+                    getContext().getContentResolver()
+                            .notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+                }
+            }
+
+            Bundle result = new Bundle();
+            result.putInt(WeatherContract.KEY_ROWS_DELETED, rowsDeleted);
+            return result;
+        }
+
+        if (WeatherContract.METHOD_GET_SNAPSHOT_STATS.equals(method)) {
+            Bundle result = new Bundle();
+            result.putInt(WeatherContract.KEY_SNAPSHOT_HITS, mSnapshotHits.get());
+            result.putInt(WeatherContract.KEY_SNAPSHOT_MISSES, mSnapshotMisses.get());
+            return result;
+        }
+
+        return super.call(method, arg, extras);
+    }
+
+    /**
+     * Inserts every row of the batch in a single transaction using one compiled INSERT
+     * statement, binding each column straight from the batch's primitive arrays. All dates are
+     * checked before the transaction is opened, so an invalid batch doesn't write anything.
+     *
+     * @param batch The rows to insert
+     * @return The number of rows that were inserted
+     */
+    private int bulkInsert(ForecastBatch batch) {
+        final int size = batch.size();
+        for (int i = 0; i < size; i++) {
+            if (!SunshineDateUtils.isDateNormalized(batch.date[i])) {
+                throw new IllegalArgumentException("Date must be normalized to insert");
+            }
+        }
+
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        int rowsInserted = 0;
+
+        WeatherDbHelper.beginWriteTransaction(db);
+        SQLiteStatement insert = db.compileStatement(SQL_INSERT_WEATHER);
+        try {
+            for (int i = 0; i < size; i++) {
+                insert.bindLong(1, batch.date[i]);
+                insert.bindLong(2, batch.weatherId[i]);
+                insert.bindDouble(3, batch.min[i]);
+                insert.bindDouble(4, batch.max[i]);
+                insert.bindDouble(5, batch.humidity[i]);
+                insert.bindDouble(6, batch.pressure[i]);
+                insert.bindDouble(7, batch.wind[i]);
+                insert.bindDouble(8, batch.degrees[i]);
+
+                if (insert.executeInsert() != -1) {
+                    rowsInserted++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            insert.close();
+            db.endTransaction();
+        }
+
+        return rowsInserted;
+    }
+
+    /**
+     * Compares every row of the batch to the stored row with the same date, all in one
+     * transaction. Rows that are identical are left alone, rows that differ are updated in place
+     * and dates we don't have yet are inserted. Like bulkInsert, the dates are checked before the
+     * transaction is opened.
+     *
+     * @param batch The incoming rows
+     * @return A Bundle with the number of unchanged, updated and inserted rows
+     */
+    @TargetApi(11)
+    private Bundle syncBatch(ForecastBatch batch) {
+        final int size = batch.size();
+        long firstDate = Long.MAX_VALUE;
+        long lastDate = Long.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            long date = batch.date[i];
+            if (!SunshineDateUtils.isDateNormalized(date)) {
+                throw new IllegalArgumentException("Date must be normalized to insert");
+            }
+            firstDate = Math.min(firstDate, date);
+            lastDate = Math.max(lastDate, date);
+        }
+
+        int rowsUnchanged = 0;
+        int rowsUpdated = 0;
+        int rowsInserted = 0;
+
+        if (size > 0) {
+            final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+
+            WeatherDbHelper.beginWriteTransaction(db);
+            SQLiteStatement insert = null;
+            SQLiteStatement update = null;
+            try {
+                ForecastBatch stored = queryStoredRows(db, firstDate, lastDate);
+
+                for (int i = 0; i < size; i++) {
+                    int storedIndex = Arrays.binarySearch(stored.date, 0, stored.size(),
+                            batch.date[i]);
+
+                    if (storedIndex < 0) {
+                        if (insert == null) {
+                            insert = db.compileStatement(SQL_INSERT_WEATHER);
+                        }
+                        insert.bindLong(1, batch.date[i]);
+                        insert.bindLong(2, batch.weatherId[i]);
+                        insert.bindDouble(3, batch.min[i]);
+                        insert.bindDouble(4, batch.max[i]);
+                        insert.bindDouble(5, batch.humidity[i]);
+                        insert.bindDouble(6, batch.pressure[i]);
+                        insert.bindDouble(7, batch.wind[i]);
+                        insert.bindDouble(8, batch.degrees[i]);
+                        if (insert.executeInsert() != -1) {
+                            rowsInserted++;
+                        }
+                    } else if (isSameRow(batch, i, stored, storedIndex)) {
+                        rowsUnchanged++;
+                    } else {
+                        if (update == null) {
+                            update = db.compileStatement(SQL_UPDATE_WEATHER_BY_DATE);
+                        }
+                        update.bindLong(1, batch.weatherId[i]);
+                        update.bindDouble(2, batch.min[i]);
+                        update.bindDouble(3, batch.max[i]);
+                        update.bindDouble(4, batch.humidity[i]);
+                        update.bindDouble(5, batch.pressure[i]);
+                        update.bindDouble(6, batch.wind[i]);
+                        update.bindDouble(7, batch.degrees[i]);
+                        update.bindLong(8, batch.date[i]);
+                        rowsUpdated += update.executeUpdateDelete();
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                if (insert != null) {
+                    insert.close();
+                }
+                if (update != null) {
+                    update.close();
+                }
+                db.endTransaction();
+            }
+        }
+
+        Bundle result = new Bundle();
+        result.putInt(WeatherContract.KEY_ROWS_UNCHANGED, rowsUnchanged);
+        result.putInt(WeatherContract.KEY_ROWS_UPDATED, rowsUpdated);
+        result.putInt(WeatherContract.KEY_ROWS_INSERTED, rowsInserted);
+        return result;
+    }
+
+    /* Reads the stored rows dated from firstDate to lastDate, sorted by date */
+    private static ForecastBatch queryStoredRows(SQLiteDatabase db, long firstDate, long lastDate) {
+        Cursor cursor = db.query(
+                WeatherContract.WeatherEntry.TABLE_NAME,
+                WEATHER_COLUMNS,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " BETWEEN ? AND ?",
+                new String[]{Long.toString(firstDate), Long.toString(lastDate)},
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        try {
+            ForecastBatch stored = new ForecastBatch(cursor.getCount());
+            while (cursor.moveToNext()) {
+                stored.add(cursor.getLong(0), cursor.getInt(1), cursor.getDouble(2),
+                        cursor.getDouble(3), cursor.getDouble(4), cursor.getDouble(5),
+                        cursor.getDouble(6), cursor.getDouble(7));
+            }
+            return stored;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static boolean isSameRow(ForecastBatch a, int i, ForecastBatch b, int j) {
+        return a.weatherId[i] == b.weatherId[j]
+                && a.min[i] == b.min[j]
+                && a.max[i] == b.max[j]
+                && a.humidity[i] == b.humidity[j]
+                && a.pressure[i] == b.pressure[j]
+                && a.wind[i] == b.wind[j]
+                && a.degrees[i] == b.degrees[j];
+    }
+
     /**
      * Handles query requests from clients. We will use this method in Sunshine to query for all
      * of our weather data as well as to query for the weather on a particular day.
@@ -195,13 +643,20 @@ public class WeatherProvider extends ContentProvider {
     public Cursor query(@NonNull Uri uri, String[] projection, String selection,
                         String[] selectionArgs, String sortOrder) {
 
-        Cursor cursor;
+        int match = sUriMatcher.match(uri);
+
+        /* Most of the app's queries can be answered from memory without opening a cursor */
+        Cursor cursor = querySnapshot(match, uri, projection, selection, selectionArgs, sortOrder);
+        if (cursor != null) {
+            cursor.setNotificationUri(getContext().getContentResolver(), uri);
+            return cursor;
+        }
 
         /*
          * Here's the switch statement that, given a URI, will determine what kind of request is
          * being made and query the database accordingly.
          */
-        switch (sUriMatcher.match(uri)) {
+        switch (match) {
 
             /*
              * When sUriMatcher's match method is called with a URI that looks something like this
@@ -293,6 +748,127 @@ public class WeatherProvider extends ContentProvider {
         return cursor;
     }
 
+    /**
+     * Answers a weather query from the in-memory {@link ForecastSnapshot} if it can. That is
+     * the case when every projected column is a column of the weather table, the query is
+     * sorted by date or not at all, and it asks either for a single date or for every date from
+     * a given one onwards, as in {@link WeatherContract.WeatherEntry#getSqlSelectForTodayOnwards}.
+     * Every query for one of the weather URIs is counted as either a snapshot hit or a miss.
+     *
+     * @return A cursor over the matching rows, or null if the query has to go to SQLite
+     */
+    private Cursor querySnapshot(int match, Uri uri, String[] projection, String selection,
+                                 String[] selectionArgs, String sortOrder) {
+        if (match != CODE_WEATHER && match != CODE_WEATHER_WITH_DATE) {
+            return null;
+        }
+
+        Cursor cursor = null;
+        if (mSnapshotEnabled) {
+            cursor = queryFromSnapshot(match, uri, projection, selection, selectionArgs,
+                    sortOrder);
+        }
+
+        if (cursor != null) {
+            mSnapshotHits.incrementAndGet();
+        } else {
+            mSnapshotMisses.incrementAndGet();
+        }
+        return cursor;
+    }
+
+    private Cursor queryFromSnapshot(int match, Uri uri, String[] projection, String selection,
+                                     String[] selectionArgs, String sortOrder) {
+        boolean descending = false;
+        if (sortOrder != null) {
+            Matcher sortMatcher = SORT_BY_DATE.matcher(sortOrder);
+            if (!sortMatcher.matches()) {
+                return null;
+            }
+            descending = "DESC".equalsIgnoreCase(sortMatcher.group(1));
+        }
+
+        long firstDate;
+        long lastDate;
+        try {
+            if (match == CODE_WEATHER_WITH_DATE) {
+                /* Like the SQLite query below, this ignores the selection for a single date */
+                firstDate = Long.parseLong(uri.getLastPathSegment());
+                lastDate = firstDate;
+            } else if (selection == null) {
+                if (selectionArgs != null && selectionArgs.length > 0) {
+                    return null;
+                }
+                firstDate = Long.MIN_VALUE;
+                lastDate = Long.MAX_VALUE;
+            } else {
+                Matcher selectionMatcher = SELECT_DATE_ONWARDS.matcher(selection);
+                if (!selectionMatcher.matches()) {
+                    return null;
+                }
+                String date = selectionMatcher.group(1);
+                int argCount = selectionArgs == null ? 0 : selectionArgs.length;
+                if ("?".equals(date)) {
+                    if (argCount != 1) {
+                        return null;
+                    }
+                    date = selectionArgs[0];
+                } else if (argCount != 0) {
+                    return null;
+                }
+                firstDate = Long.parseLong(date);
+                lastDate = Long.MAX_VALUE;
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        ForecastSnapshot snapshot = mSnapshot;
+        if (snapshot == null) {
+            snapshot = refreshSnapshot();
+            if (snapshot == null) {
+                return null;
+            }
+        }
+        return snapshot.query(projection, firstDate, lastDate, descending);
+    }
+
+    /**
+     * Loads a new snapshot of the weather table and publishes it. Writes call this after their
+     * transaction has committed and before they notify observers, so an observer that queries
+     * again straight away already gets the new rows.
+     *
+     * @return The new snapshot, or null if it couldn't be loaded
+     */
+    private ForecastSnapshot refreshSnapshot() {
+        synchronized (mSnapshotLock) {
+            ForecastSnapshot snapshot;
+            try {
+                snapshot = ForecastSnapshot.load(mOpenHelper.getReadableDatabase());
+            } catch (SQLiteException e) {
+                Log.w(TAG, "Could not load the forecast snapshot", e);
+                snapshot = null;
+            }
+            mSnapshot = snapshot;
+            return snapshot;
+        }
+    }
+
+    /**
+     * Drops the snapshot so the next query reloads it. Only needed when the weather table has
+     * been written to without going through this provider, as some of our tests do.
+     */
+    void invalidateSnapshot() {
+        synchronized (mSnapshotLock) {
+            mSnapshot = null;
+        }
+    }
+
+    /* Lets tests compare the snapshot with plain SQLite queries */
+    void setSnapshotEnabled(boolean enabled) {
+        mSnapshotEnabled = enabled;
+    }
+
     /**
      * Deletes data at a given URI with optional arguments for more fine tuned deletions.
      *
@@ -332,6 +908,7 @@ public class WeatherProvider extends ContentProvider {
 
         /* If we actually deleted any rows, notify that a change has occurred to this URI */
         if (numRowsDeleted != 0) {
+            refreshSnapshot();
             getContext().getContentResolver().notifyChange(uri, null);
         }
 
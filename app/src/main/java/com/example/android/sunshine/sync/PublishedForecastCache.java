@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.android.sunshine.BuildConfig;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the encoded {@link WearableForecast} last sent to the wearable, so a sync that comes
+ * up with the same forecast doesn't connect to the wearable API and put the same data item
+ * again. It is kept in memory and in a small file in the app's cache directory, so it survives
+ * the process being killed between jobs, which is how most jobs start.
+ * <p>
+ * The file records the version code of the app that wrote it and is ignored by any other
+ * version, as an update may change what the wearable expects even if the forecast is the same.
+ */
+final class PublishedForecastCache {
+
+    private static final String TAG = PublishedForecastCache.class.getSimpleName();
+
+    static final String CACHE_FILE_NAME = "published_wearable_forecast";
+
+    private static PublishedForecastCache sInstance;
+
+    private final File mCacheFile;
+    private final int mVersionCode;
+
+    private boolean mLoaded;
+    private byte[] mPublished;
+
+    private int mSkippedCount;
+    private int mSentCount;
+    private long mSendNanos;
+
+    PublishedForecastCache(File cacheFile, int versionCode) {
+        mCacheFile = cacheFile;
+        mVersionCode = versionCode;
+    }
+
+    static synchronized PublishedForecastCache getInstance(Context context) {
+        if (sInstance == null) {
+            File cacheFile = new File(context.getApplicationContext().getCacheDir(),
+                    CACHE_FILE_NAME);
+            sInstance = new PublishedForecastCache(cacheFile, BuildConfig.VERSION_CODE);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Checks whether a forecast is the one last sent, counting it as a skipped send if it is.
+     *
+     * @param forecast An encoded forecast
+     * @return true if the wearable already has exactly this forecast
+     */
+    synchronized boolean isPublished(byte[] forecast) {
+        ensureLoaded();
+        if (Arrays.equals(forecast, mPublished)) {
+            mSkippedCount++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records a forecast that was just sent to the wearable.
+     *
+     * @param forecast  The encoded forecast
+     * @param sendNanos How long connecting and sending it took
+     */
+    synchronized void setPublished(byte[] forecast, long sendNanos) {
+        ensureLoaded();
+        mSentCount++;
+        mSendNanos += sendNanos;
+        if (!Arrays.equals(forecast, mPublished)) {
+            mPublished = forecast;
+            save();
+        }
+    }
+
+    /**
+     * @return The encoded forecast last sent, or null if there is none
+     */
+    synchronized byte[] getPublished() {
+        ensureLoaded();
+        return mPublished;
+    }
+
+    synchronized int getSkippedCount() {
+        return mSkippedCount;
+    }
+
+    synchronized int getSentCount() {
+        return mSentCount;
+    }
+
+    /**
+     * @return Roughly how much time skipping sends saved, taking each skipped send to cost as
+     * much as the average one we did make
+     */
+    synchronized long getTimeSavedMillis() {
+        if (mSentCount == 0) {
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(mSendNanos / mSentCount * mSkippedCount);
+    }
+
+    /* Forgets the forecast, both in memory and on disk. Counters are left alone. */
+    synchronized void clear() {
+        mPublished = null;
+        mLoaded = true;
+        if (mCacheFile.exists() && !mCacheFile.delete()) {
+            Log.w(TAG, "Could not delete " + mCacheFile);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "PublishedForecastCache[sent=" + mSentCount + ",skipped=" + mSkippedCount
+                + ",saved=" + getTimeSavedMillis() + "ms]";
+    }
+
+    private void ensureLoaded() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(mCacheFile));
+            if (in.readInt() != mVersionCode) {
+                /* Written by another version of the app, send the forecast again */
+                return;
+            }
+            int length = in.readInt();
+            if (length < 0 || length > mCacheFile.length()) {
+                throw new IOException("Bad forecast length: " + length);
+            }
+            byte[] forecast = new byte[length];
+            in.readFully(forecast);
+            mPublished = forecast;
+        } catch (FileNotFoundException e) {
+            /* Nothing has been sent yet */
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read the published forecast, it will be sent again", e);
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void save() {
+        /* Write to a temporary file first so a crash never leaves a half written file behind */
+        File tmpFile = new File(mCacheFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new FileOutputStream(tmpFile));
+            out.writeInt(mVersionCode);
+            out.writeInt(mPublished.length);
+            out.write(mPublished);
+            out.close();
+            out = null;
+
+            if (!tmpFile.renameTo(mCacheFile)) {
+                Log.w(TAG, "Could not save the published forecast");
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not save the published forecast", e);
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.support.v4.os.CancellationSignal;
+import android.util.Log;
+
+import com.example.android.sunshine.data.SunshinePreferences;
+
+/**
+ * Makes sure at most one weather sync runs at a time, without making every caller wait for a
+ * fetch of its own.
+ * <p>
+ * Syncs are started from {@link SunshineSyncIntentService}, {@link SunshineFirebaseJobService}
+ * and, through the former, whenever the user changes their location. A sync requested while one
+ * for the same location is already running doesn't fetch anything: the caller simply waits for
+ * the running sync and gets its result. A sync for a different location cancels the running one,
+ * since its forecast is obsolete, waits for it to stop and then runs. Callers that were waiting
+ * on the cancelled sync get the result of the newer one.
+ * <p>
+ * Executed, coalesced and cancelled syncs are counted, see {@link #getExecutedCount()},
+ * {@link #getCoalescedCount()} and {@link #getCancelledCount()}.
+ */
+public final class SunshineSyncCoordinator {
+
+    private static final String TAG = SunshineSyncCoordinator.class.getSimpleName();
+
+    private static final SunshineSyncCoordinator sInstance =
+            new SunshineSyncCoordinator(new SyncRunner() {
+                @Override
+                public WeatherSyncResult performSync(Context context,
+                                                     CancellationSignal cancellationSignal) {
+                    return SunshineSyncTask.performSync(context, cancellationSignal);
+                }
+            });
+
+    /**
+     * Runs a single sync. {@link SunshineSyncTask#performSync} outside of tests.
+     */
+    interface SyncRunner {
+        WeatherSyncResult performSync(Context context, CancellationSignal cancellationSignal);
+    }
+
+    private final SyncRunner mSyncRunner;
+
+    private final Object mLock = new Object();
+
+    /* The sync that is currently running, or null. Guarded by mLock, like everything below. */
+    private Flight mInFlight;
+
+    /* Set when a sync was cancelled because the location changed, see #runFlight */
+    private boolean mLocationChangedDuringSync;
+
+    private int mExecutedCount;
+    private int mCoalescedCount;
+    private int mCancelledCount;
+
+    /**
+     * A single run of {@link SunshineSyncTask#performSync}, shared by every caller that asked
+     * for the same location while it was running.
+     */
+    private static final class Flight {
+        final String location;
+        final CancellationSignal cancellationSignal = new CancellationSignal();
+
+        boolean done;
+        WeatherSyncResult result;
+
+        /* The sync that replaced this one after it was cancelled, if any */
+        Flight successor;
+
+        Flight(String location) {
+            this.location = location;
+        }
+    }
+
+    SunshineSyncCoordinator(SyncRunner syncRunner) {
+        mSyncRunner = syncRunner;
+    }
+
+    public static SunshineSyncCoordinator getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Syncs the weather for the user's current location, or joins a sync for that location that
+     * is already running. This blocks until the sync is done, so never call it on the main thread.
+     *
+     * @param context Used to read the location and run the sync
+     * @return The result of the sync this call ran or joined
+     */
+    public WeatherSyncResult sync(Context context) {
+        Context appContext = context.getApplicationContext();
+        String location = SunshinePreferences.getPreferredWeatherLocation(appContext);
+
+        Flight flight;
+        Flight predecessor = null;
+        synchronized (mLock) {
+            if (mInFlight != null
+                    && mInFlight.location.equals(location)
+                    && !mInFlight.cancellationSignal.isCanceled()) {
+                mCoalescedCount++;
+                return await(mInFlight);
+            }
+
+            flight = new Flight(location);
+            if (mInFlight != null) {
+                predecessor = mInFlight;
+                if (!predecessor.cancellationSignal.isCanceled()) {
+                    cancel(predecessor);
+                }
+                predecessor.successor = flight;
+            }
+            mInFlight = flight;
+        }
+
+        return runFlight(appContext, flight, predecessor);
+    }
+
+    /**
+     * Cancels the running sync if it is for a location other than the one the user has now
+     * selected. Called as soon as the location preference changes, so the old forecast stops
+     * downloading before the sync for the new location is even requested.
+     *
+     * @param context Used to read the location preference
+     */
+    public void cancelObsoleteSync(Context context) {
+        String location = SunshinePreferences.getPreferredWeatherLocation(context);
+
+        synchronized (mLock) {
+            if (mInFlight != null
+                    && !mInFlight.location.equals(location)
+                    && !mInFlight.cancellationSignal.isCanceled()) {
+                cancel(mInFlight);
+            }
+        }
+    }
+
+    public int getExecutedCount() {
+        synchronized (mLock) {
+            return mExecutedCount;
+        }
+    }
+
+    public int getCoalescedCount() {
+        synchronized (mLock) {
+            return mCoalescedCount;
+        }
+    }
+
+    public int getCancelledCount() {
+        synchronized (mLock) {
+            return mCancelledCount;
+        }
+    }
+
+    /* Must be called while holding mLock */
+    private void cancel(Flight flight) {
+        mCancelledCount++;
+        mLocationChangedDuringSync = true;
+        Log.d(TAG, "Cancelling the obsolete sync for " + flight.location);
+
+        /*
+         * The sync checks the signal between each step, and the request for the forecast listens
+         * to it and disconnects, so a sync blocked on the network stops right away too
+         */
+        flight.cancellationSignal.cancel();
+    }
+
+    private WeatherSyncResult runFlight(Context context, Flight flight, Flight predecessor) {
+        synchronized (mLock) {
+            /* Two syncs must never write at the same time, so let the cancelled one stop first */
+            while (predecessor != null && !predecessor.done) {
+                try {
+                    mLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    finish(flight, WeatherSyncResult.CANCELLED);
+                    return WeatherSyncResult.CANCELLED;
+                }
+            }
+
+            /*
+             * A cancelled sync may have stored the coordinates of the old location after the
+             * user picked a new one. Those have to go before we build our request URL.
+             */
+            if (mLocationChangedDuringSync) {
+                mLocationChangedDuringSync = false;
+                SunshinePreferences.resetLocationCoordinates(context);
+            }
+
+            mExecutedCount++;
+        }
+
+        WeatherSyncResult result = WeatherSyncResult.FAILED;
+        try {
+            result = mSyncRunner.performSync(context, flight.cancellationSignal);
+        } finally {
+            synchronized (mLock) {
+                finish(flight, result);
+            }
+        }
+
+        synchronized (mLock) {
+            return await(flight);
+        }
+    }
+
+    /* Must be called while holding mLock */
+    private void finish(Flight flight, WeatherSyncResult result) {
+        flight.result = result;
+        flight.done = true;
+        if (mInFlight == flight) {
+            mInFlight = null;
+        }
+        mLock.notifyAll();
+    }
+
+    /**
+     * Waits for a sync to finish, following it to the sync that replaced it if it was
+     * cancelled. Must be called while holding mLock.
+     */
+    private WeatherSyncResult await(Flight flight) {
+        while (true) {
+            while (!flight.done) {
+                try {
+                    mLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return WeatherSyncResult.CANCELLED;
+                }
+            }
+
+            if (flight.cancellationSignal.isCanceled() && flight.successor != null) {
+                flight = flight.successor;
+            } else {
+                return flight.result;
+            }
+        }
+    }
+}
@@ -30,6 +30,22 @@ public class SunshineSyncIntentService extends IntentService {
 
     @Override
     protected void onHandleIntent(Intent intent) {
-        SunshineSyncTask.syncWeather(this);
+        WeatherSyncResult result = SunshineSyncCoordinator.getInstance().sync(this);
+
+        /*
+         * These syncs come in bursts when the user edits their location, the publisher only
+         * sends the wearable the last forecast of the burst. Nothing here waits for it.
+         */
+        if (WatchFaceNodes.getInstance(this).isKnownAbsent()) {
+            return;
+        }
+
+        /* If the sync wrote nothing, what is stored is still the best we have */
+        WearableForecast forecast = result.forecast != null
+                ? WeatherSyncPipeline.toWearableForecast(this, result.forecast)
+                : WeatherSyncPipeline.queryWearableForecast(this);
+        if (forecast != null && forecast.size() > 0) {
+            WearableForecastPublisher.getInstance(this).publish(forecast, null);
+        }
     }
 }
\ No newline at end of file
@@ -15,33 +15,56 @@
  */
 package com.example.android.sunshine.sync;
 
+import android.annotation.TargetApi;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
+import android.os.Build;
 import android.os.Bundle;
-import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
+import android.support.v4.os.CancellationSignal;
+import android.support.v4.os.OperationCanceledException;
 import android.text.format.DateUtils;
+import android.util.Log;
 
+import com.example.android.sunshine.data.ForecastBatch;
 import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.data.TodayForecast;
 import com.example.android.sunshine.data.WeatherContract;
 import com.example.android.sunshine.utilities.NetworkUtils;
 import com.example.android.sunshine.utilities.NotificationUtils;
 import com.example.android.sunshine.utilities.OpenWeatherJsonUtils;
+import com.example.android.sunshine.utilities.SunshineDateUtils;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 
 public class SunshineSyncTask{
 
+    private static final String TAG = SunshineSyncTask.class.getSimpleName();
+
+    /*
+     * Number of rows buffered by the streaming parser before they are written to the
+     * ContentProvider. A full two week forecast fits into a single chunk.
+     */
+    private static final int WEATHER_INSERT_CHUNK_SIZE = 64;
+
     /**
      * Performs the network request for updated weather, parses the JSON from that request, and
      * inserts the new weather information into our ContentProvider. Will notify the user that new
      * weather has been loaded if the user hasn't been notified of the weather within the last day
      * AND they haven't disabled notifications in the preferences screen.
+     * <p>
+     * Only {@link SunshineSyncCoordinator} calls this, so two syncs never run at the same time.
      *
-     * @param context Used to access utility methods and the ContentResolver
+     * @param context            Used to access utility methods and the ContentResolver
+     * @param cancellationSignal Checked between each step, stops the sync once it is cancelled.
+     *                           Cancelling it also aborts a running request for the forecast.
+     * @return How many rows the sync left unchanged, updated, inserted and deleted
      */
-    synchronized public static void syncWeather(Context context) {
+    static WeatherSyncResult performSync(final Context context,
+                                         CancellationSignal cancellationSignal) {
 
         try {
             /*
@@ -51,34 +74,112 @@ public class SunshineSyncTask{
              */
             URL weatherRequestUrl = NetworkUtils.getUrl(context);
 
-            /* Use the URL to retrieve the JSON */
-            String jsonWeatherResponse = NetworkUtils.getResponseFromHttpUrl(weatherRequestUrl);
+            cancellationSignal.throwIfCanceled();
 
-            /* Parse the JSON into a list of weather values */
-            ContentValues[] weatherValues = OpenWeatherJsonUtils
-                    .getWeatherContentValuesFromJson(context, jsonWeatherResponse);
+            /* Get a handle on the ContentResolver to delete and insert data */
+            final ContentResolver sunshineContentResolver = context.getContentResolver();
 
-            /*
-             * In cases where our JSON contained an error code, getWeatherContentValuesFromJson
-             * would have returned null. We need to check for those cases here to prevent any
-             * NullPointerExceptions being thrown. We also have no reason to insert fresh data if
-             * there isn't any to insert.
-             */
-            if (weatherValues != null && weatherValues.length != 0) {
-                /* Get a handle on the ContentResolver to delete and insert data */
-                ContentResolver sunshineContentResolver = context.getContentResolver();
+            WeatherSyncResult result;
 
-                /* Delete old weather data because we don't need to keep multiple days' data */
-                sunshineContentResolver.delete(
-                        WeatherContract.WeatherEntry.CONTENT_URI,
-                        null,
-                        null);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                /*
+                 * Stream the response straight into the ContentProvider. Rows are parsed into a
+                 * ForecastBatch of WEATHER_INSERT_CHUNK_SIZE rows that is written and reused each
+                 * time it fills up, so neither the response body nor the whole forecast ever has
+                 * to be held in memory, and no row is boxed into ContentValues on the way.
+                 *
+                 * Each batch is merged into the stored forecast by date, so rows that haven't
+                 * changed aren't touched and readers never see an empty table.
+                 */
+                final ForecastBatch batch = new ForecastBatch(WEATHER_INSERT_CHUNK_SIZE);
+                final DiffWeatherWriter writer =
+                        new DiffWeatherWriter(sunshineContentResolver, cancellationSignal);
 
-                /* Insert our new weather data into Sunshine's ContentProvider */
-                sunshineContentResolver.bulkInsert(
-                        WeatherContract.WeatherEntry.CONTENT_URI,
-                        weatherValues);
+                /*
+                 * If we still have a forecast from a previous sync, we let the server tell us
+                 * that nothing has changed since then. In that case there is nothing to parse,
+                 * delete or insert, and the sync is done.
+                 */
+                boolean allowNotModified = hasWeatherData(sunshineContentResolver);
 
+                /*
+                 * Batches merged before a failure or a cancel stay committed, so however we leave
+                 * without finishing, observers still have to hear about them
+                 */
+                boolean finished = false;
+                try {
+                    Integer entriesParsed = NetworkUtils.readResponseFromHttpUrl(context,
+                            weatherRequestUrl, allowNotModified,
+                            new NetworkUtils.ResponseStreamHandler<Integer>() {
+                                @Override
+                                public Integer onResponse(InputStream in) throws IOException {
+                                    int entries = OpenWeatherJsonUtils
+                                            .parseWeatherStream(context, in, batch, writer);
+                                    /* Throwing keeps the error response out of the cache */
+                                    if (entries == OpenWeatherJsonUtils.PARSE_ERROR) {
+                                        throw new IOException("Weather server returned an error");
+                                    }
+                                    return entries;
+                                }
+                            }, cancellationSignal);
+
+                    if (entriesParsed == null) {
+                        Log.d(TAG, "Forecast not modified since the last sync");
+                        return WeatherSyncResult.NOT_MODIFIED;
+                    }
+
+                    result = writer.finish();
+                    finished = true;
+                } finally {
+                    if (!finished) {
+                        writer.abort();
+                    }
+                }
+            } else {
+                /* Use the URL to retrieve the JSON */
+                String jsonWeatherResponse = NetworkUtils.getResponseFromHttpUrl(weatherRequestUrl);
+
+                /* Parse the JSON into a list of weather values */
+                ContentValues[] weatherValues = OpenWeatherJsonUtils
+                        .getWeatherContentValuesFromJson(context, jsonWeatherResponse);
+
+                /*
+                 * In cases where our JSON contained an error code, getWeatherContentValuesFromJson
+                 * would have returned null. We need to check for those cases here to prevent any
+                 * NullPointerExceptions being thrown. We also have no reason to insert fresh data
+                 * if there isn't any to insert.
+                 */
+                if (weatherValues == null) {
+                    return WeatherSyncResult.FAILED;
+                }
+
+                cancellationSignal.throwIfCanceled();
+
+                int rowsInserted = 0;
+                int rowsDeleted = 0;
+                if (weatherValues.length != 0) {
+                    /*
+                     * ContentResolver#call only exists from Honeycomb on, and bulkInsert can only
+                     * return one count, so we count the rows the replace is about to delete
+                     * first. No other sync can write in between.
+                     */
+                    rowsDeleted = countWeatherRows(sunshineContentResolver);
+
+                    /*
+                     * Replace the old weather data with the new data in one go. We don't need to
+                     * keep multiple days' data, and readers never see the table empty this way.
+                     */
+                    rowsInserted = sunshineContentResolver.bulkInsert(
+                            WeatherContract.WeatherEntry.CONTENT_URI_REPLACE,
+                            weatherValues);
+                }
+                result = WeatherSyncResult.success(0, 0, rowsInserted, rowsDeleted,
+                        findTodayForecast(weatherValues), collectForecast(weatherValues));
+            }
+
+            Log.d(TAG, "Sync finished: " + result);
+
+            if (result.hasChanges()) {
                 /*
                  * Finally, after we insert data into the ContentProvider, determine whether or not
                  * we should notify the user that the weather has been refreshed.
@@ -103,17 +204,271 @@ public class SunshineSyncTask{
                  * We only want to show the notification if the user wants them shown and we
                  * haven't shown a notification in the past day.
                  */
-                if (notificationsEnabled && oneDayPassedSinceLastNotification) {
-                    NotificationUtils.notifyUserOfNewWeather(context);
+                if (notificationsEnabled && oneDayPassedSinceLastNotification
+                        && result.today != null) {
+                    NotificationUtils.notifyUserOfNewWeather(context, result.today);
                 }
 
             /* If the code reaches this point, we have successfully performed our sync */
 
             }
 
+            return result;
+
+        } catch (OperationCanceledException e) {
+            Log.d(TAG, "Sync cancelled");
+            return WeatherSyncResult.CANCELLED;
         } catch (Exception e) {
+            /* Cancelling disconnects a running request, which fails the read that was blocked */
+            if (cancellationSignal.isCanceled()) {
+                Log.d(TAG, "Sync cancelled while fetching the forecast");
+                return WeatherSyncResult.CANCELLED;
+            }
             /* Server probably invalid */
             e.printStackTrace();
+            return WeatherSyncResult.FAILED;
+        }
+    }
+
+    /**
+     * Picks today's forecast out of the parsed rows, so it doesn't have to be queried back from
+     * the ContentProvider once they have been written.
+     *
+     * @param weatherValues The rows of the new forecast
+     * @return The first day from today onwards, or null if the forecast has none
+     */
+    private static TodayForecast findTodayForecast(ContentValues[] weatherValues) {
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+
+        ContentValues todayValues = null;
+        long todayDate = Long.MAX_VALUE;
+        for (ContentValues values : weatherValues) {
+            long date = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+            if (date >= today && date < todayDate) {
+                todayDate = date;
+                todayValues = values;
+            }
+        }
+
+        if (todayValues == null) {
+            return null;
+        }
+        return new TodayForecast(todayDate,
+                todayValues.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID),
+                todayValues.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP),
+                todayValues.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP));
+    }
+
+    /**
+     * Copies the rows of the new forecast from today onwards, so they can be handed on without
+     * querying them back from the ContentProvider.
+     *
+     * @param weatherValues The rows of the new forecast, in date order
+     * @return Up to {@link WearableForecast#MAX_DAYS} rows from today onwards
+     */
+    private static ForecastBatch collectForecast(ContentValues[] weatherValues) {
+        long today = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+
+        ForecastBatch forecast = new ForecastBatch(WearableForecast.MAX_DAYS);
+        for (ContentValues values : weatherValues) {
+            long date = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+            if (date < today) {
+                continue;
+            }
+            if (forecast.isFull()) {
+                break;
+            }
+            forecast.add(date,
+                    values.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID),
+                    values.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP),
+                    values.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP),
+                    values.getAsDouble(WeatherContract.WeatherEntry.COLUMN_HUMIDITY),
+                    values.getAsDouble(WeatherContract.WeatherEntry.COLUMN_PRESSURE),
+                    values.getAsDouble(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED),
+                    values.getAsDouble(WeatherContract.WeatherEntry.COLUMN_DEGREES));
+        }
+        return forecast;
+    }
+
+    /**
+     * Checks whether our ContentProvider holds any weather for today onwards.
+     *
+     * @param contentResolver Used to query the ContentProvider
+     * @return true if there is at least one row of current weather data
+     */
+    private static boolean hasWeatherData(ContentResolver contentResolver) {
+        Cursor cursor = contentResolver.query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                new String[]{WeatherContract.WeatherEntry._ID},
+                WeatherContract.WeatherEntry.getSqlSelectForTodayOnwards(),
+                null,
+                null);
+
+        if (cursor == null) {
+            return false;
+        }
+
+        try {
+            return cursor.getCount() > 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Counts every row in our ContentProvider, past days included.
+     *
+     * @param contentResolver Used to query the ContentProvider
+     * @return The number of rows, 0 if the ContentProvider couldn't be queried
+     */
+    private static int countWeatherRows(ContentResolver contentResolver) {
+        Cursor cursor = contentResolver.query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                new String[]{WeatherContract.WeatherEntry._ID},
+                null,
+                null,
+                null);
+
+        if (cursor == null) {
+            return 0;
+        }
+
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Merges each batch produced by the streaming parser into the stored forecast as soon as the
+     * parser hands it over, then prunes every stored day outside of the new forecast once the
+     * whole response has been read. Observers are notified once at the very end, and only if
+     * a row was actually updated, inserted or deleted.
+     * <p>
+     * If the sync is cancelled, the writer stops before the next batch and doesn't prune, since
+     * a newer sync is about to write its own forecast. Batches already merged stay committed,
+     * and {@link #abort} tells observers about them if the sync ends without finishing.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static class DiffWeatherWriter implements OpenWeatherJsonUtils.ForecastBatchSink {
+
+        private final ContentResolver mContentResolver;
+        private final CancellationSignal mCancellationSignal;
+        private final long mToday = SunshineDateUtils.normalizeDate(System.currentTimeMillis());
+        private long mFirstDate = Long.MAX_VALUE;
+        private long mLastDate = Long.MIN_VALUE;
+        private int mRowsUnchanged;
+        private int mRowsUpdated;
+        private int mRowsInserted;
+
+        /* The first day from today onwards seen so far, in the same units as the table */
+        private long mTodayDate = Long.MAX_VALUE;
+        private int mTodayWeatherId;
+        private double mTodayHigh;
+        private double mTodayLow;
+
+        /* The merged rows from today onwards, handed on in the result */
+        private final ForecastBatch mForecast = new ForecastBatch(WearableForecast.MAX_DAYS);
+
+        DiffWeatherWriter(ContentResolver contentResolver,
+                          CancellationSignal cancellationSignal) {
+            mContentResolver = contentResolver;
+            mCancellationSignal = cancellationSignal;
+        }
+
+        @Override
+        public void onForecastBatch(ForecastBatch batch) {
+            throwIfCanceled();
+
+            for (int i = 0; i < batch.size(); i++) {
+                long date = batch.date[i];
+                mFirstDate = Math.min(mFirstDate, date);
+                mLastDate = Math.max(mLastDate, date);
+
+                if (date >= mToday && date < mTodayDate) {
+                    mTodayDate = date;
+                    mTodayWeatherId = batch.weatherId[i];
+                    mTodayHigh = batch.max[i];
+                    mTodayLow = batch.min[i];
+                }
+            }
+
+            Bundle extras = batch.toBundle();
+            extras.putBoolean(WeatherContract.EXTRA_DEFER_NOTIFY, true);
+
+            Bundle result = mContentResolver.call(WeatherContract.WeatherEntry.CONTENT_URI,
+                    WeatherContract.METHOD_SYNC_BATCH, null, extras);
+            if (result != null) {
+                mRowsUnchanged += result.getInt(WeatherContract.KEY_ROWS_UNCHANGED);
+                mRowsUpdated += result.getInt(WeatherContract.KEY_ROWS_UPDATED);
+                mRowsInserted += result.getInt(WeatherContract.KEY_ROWS_INSERTED);
+            }
+
+            /* The parser dates the rows in order, so they are appended in order too */
+            for (int i = 0; i < batch.size() && !mForecast.isFull(); i++) {
+                if (batch.date[i] >= mToday) {
+                    mForecast.add(batch.date[i], batch.weatherId[i], batch.min[i], batch.max[i],
+                            batch.humidity[i], batch.pressure[i], batch.wind[i],
+                            batch.degrees[i]);
+                }
+            }
+        }
+
+        /**
+         * Prunes the days that aren't part of the new forecast and notifies observers if the
+         * sync changed anything.
+         *
+         * @return The combined counts of the whole sync
+         */
+        WeatherSyncResult finish() {
+            throwIfCanceled();
+
+            int rowsDeleted = 0;
+
+            /* An empty forecast prunes nothing, we'd rather keep showing the old one */
+            if (mFirstDate <= mLastDate) {
+                Bundle extras = new Bundle();
+                extras.putLong(WeatherContract.EXTRA_FIRST_DATE, mFirstDate);
+                extras.putLong(WeatherContract.EXTRA_LAST_DATE, mLastDate);
+                extras.putBoolean(WeatherContract.EXTRA_DEFER_NOTIFY, true);
+
+                Bundle result = mContentResolver.call(WeatherContract.WeatherEntry.CONTENT_URI,
+                        WeatherContract.METHOD_PRUNE, null, extras);
+                if (result != null) {
+                    rowsDeleted = result.getInt(WeatherContract.KEY_ROWS_DELETED);
+                }
+            }
+
+            TodayForecast today = null;
+            if (mTodayDate != Long.MAX_VALUE) {
+                today = new TodayForecast(mTodayDate, mTodayWeatherId, mTodayHigh, mTodayLow);
+            }
+
+            WeatherSyncResult syncResult = WeatherSyncResult.success(
+                    mRowsUnchanged, mRowsUpdated, mRowsInserted, rowsDeleted, today, mForecast);
+
+            if (syncResult.hasChanges()) {
+                mContentResolver.notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            }
+
+            return syncResult;
+        }
+
+        /**
+         * Notifies observers if the batches merged so far changed anything. Called instead of
+         * {@link #finish} when the sync fails or is cancelled part way through.
+         */
+        void abort() {
+            if (mRowsUpdated > 0 || mRowsInserted > 0) {
+                mContentResolver.notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            }
+        }
+
+        private void throwIfCanceled() {
+            if (mCancellationSignal.isCanceled()) {
+                throw new OperationCanceledException();
+            }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.util.Log;
+
+import com.google.android.gms.wearable.CapabilityInfo;
+import com.google.android.gms.wearable.WearableListenerService;
+
+/**
+ * Told by Google Play services whenever a node running our watch face connects or disconnects,
+ * which keeps {@link WatchFaceNodes} current without any polling. When a watch face becomes
+ * reachable where there was none, it is sent the stored forecast right away rather than at the
+ * next sync, as syncs skipped the wearable while there was nobody to send it to.
+ */
+public class WatchFaceCapabilityListenerService extends WearableListenerService {
+
+    private static final String TAG = WatchFaceCapabilityListenerService.class.getSimpleName();
+
+    @Override
+    public void onCapabilityChanged(CapabilityInfo capabilityInfo) {
+        if (!SunshineFirebaseJobService.CAPABILITY_WATCH_FACE.equals(capabilityInfo.getName())) {
+            return;
+        }
+
+        if (WatchFaceNodes.getInstance(this).update(capabilityInfo)) {
+            Log.d(TAG, "A watch face became reachable, sending it the forecast");
+            WearableForecast forecast = WeatherSyncPipeline.queryWearableForecast(this);
+            if (forecast != null && forecast.size() > 0) {
+                WearableForecastPublisher.getInstance(this).publish(forecast, null);
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.google.android.gms.wearable.CapabilityInfo;
+import com.google.android.gms.wearable.Node;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Remembers which reachable wearable nodes run our watch face, as advertised by their
+ * {@link SunshineFirebaseJobService#CAPABILITY_WATCH_FACE} capability, so syncs on a phone
+ * without one don't query the forecast for it, connect to the wearable API or write data items.
+ * <p>
+ * The node ids are kept in a small SharedPreferences file and survive process restarts. Until
+ * they have been discovered once, which the first publish does, nothing is known and wearable
+ * work goes ahead. After that, {@link WatchFaceCapabilityListenerService} keeps them up to date
+ * as watches connect and disconnect.
+ */
+final class WatchFaceNodes {
+
+    private static final String TAG = WatchFaceNodes.class.getSimpleName();
+
+    private static final String PREFS_NAME = "watch_face_nodes";
+    private static final String KEY_NODE_IDS = "node_ids";
+
+    private static final String SEPARATOR = ",";
+
+    private static WatchFaceNodes sInstance;
+
+    private final SharedPreferences mPreferences;
+
+    /* The node ids, or null if we haven't discovered them yet. Guarded by this. */
+    private Set<String> mNodeIds;
+
+    WatchFaceNodes(SharedPreferences preferences) {
+        mPreferences = preferences;
+        String nodeIds = preferences.getString(KEY_NODE_IDS, null);
+        if (nodeIds != null) {
+            mNodeIds = toSet(nodeIds);
+        }
+    }
+
+    static synchronized WatchFaceNodes getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WatchFaceNodes(context.getApplicationContext()
+                    .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE));
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return Whether the nodes running the watch face have been discovered at all
+     */
+    synchronized boolean isKnown() {
+        return mNodeIds != null;
+    }
+
+    /**
+     * @return true only if we know that no reachable node runs the watch face, in which case
+     * there is no point in sending it anything
+     */
+    synchronized boolean isKnownAbsent() {
+        return mNodeIds != null && mNodeIds.isEmpty();
+    }
+
+    /**
+     * Stores the nodes that currently have the capability.
+     *
+     * @return Whether a watch face became reachable where none was before
+     */
+    boolean update(CapabilityInfo capability) {
+        Set<String> nodeIds = new TreeSet<String>();
+        for (Node node : capability.getNodes()) {
+            nodeIds.add(node.getId());
+        }
+        return update(nodeIds);
+    }
+
+    synchronized boolean update(Set<String> nodeIds) {
+        boolean becameReachable = (mNodeIds == null || mNodeIds.isEmpty()) && !nodeIds.isEmpty();
+        if (nodeIds.equals(mNodeIds)) {
+            return false;
+        }
+
+        mNodeIds = Collections.unmodifiableSet(new TreeSet<String>(nodeIds));
+        mPreferences.edit()
+                .putString(KEY_NODE_IDS, TextUtils.join(SEPARATOR, mNodeIds))
+                .apply();
+        Log.d(TAG, "Nodes running the watch face: " + mNodeIds);
+        return becameReachable;
+    }
+
+    private static Set<String> toSet(String nodeIds) {
+        if (nodeIds.length() == 0) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(
+                new TreeSet<String>(Arrays.asList(TextUtils.split(nodeIds, SEPARATOR))));
+    }
+}
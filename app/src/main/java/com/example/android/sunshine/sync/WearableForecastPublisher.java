@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.android.sunshine.utilities.SunshineDateUtils;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.CapabilityApi;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the forecast to the wearable, writing at most one data item per window however many
+ * syncs finish within it.
+ * <p>
+ * The first forecast published starts a window of {@link #DEFAULT_WINDOW_MILLIS}. Forecasts
+ * published before it ends replace the pending one, and only the latest is written when it does.
+ * A forecast identical to the last one the wearable got isn't written at all, see
+ * {@link PublishedForecastCache}. The data item is only marked urgent, which wakes the
+ * wearable's radio right away, if today's weather changed: later days can wait for the next
+ * regular sync between the devices.
+ * <p>
+ * Sent, coalesced and skipped writes are counted, see {@link #getSentCount()},
+ * {@link #getCoalescedCount()} and {@link #getSkippedCount()}.
+ */
+final class WearableForecastPublisher {
+
+    private static final String TAG = WearableForecastPublisher.class.getSimpleName();
+
+    /* Long enough to cover a few location edits in a row, short enough to go unnoticed */
+    static final long DEFAULT_WINDOW_MILLIS = 3000;
+
+    /* How long a write waits for the wearable connection and the data item */
+    private static final long WEARABLE_TIMEOUT_SECONDS = 30;
+
+    private static WearableForecastPublisher sInstance;
+
+    /**
+     * Writes an encoded forecast to the wearable. Called on the publisher's thread.
+     */
+    interface Sender {
+        /**
+         * @param urgent Whether the data item should be sent right away
+         * @return Whether the forecast was written
+         */
+        boolean send(byte[] forecast, boolean urgent);
+    }
+
+    private final PublishedForecastCache mPublishedCache;
+    private final Sender mSender;
+    private final long mWindowMillis;
+
+    private final ScheduledThreadPoolExecutor mExecutor;
+
+    private final Object mLock = new Object();
+
+    /* The forecast waiting for the window to end, or null. Guarded by mLock, like the below. */
+    private WearableForecast mPending;
+    private final List<Runnable> mPendingCallbacks = new ArrayList<Runnable>();
+
+    private int mSentCount;
+    private int mCoalescedCount;
+    private int mSkippedCount;
+
+    WearableForecastPublisher(PublishedForecastCache publishedCache, Sender sender,
+                              long windowMillis) {
+        mPublishedCache = publishedCache;
+        mSender = sender;
+        mWindowMillis = windowMillis;
+
+        mExecutor = new ScheduledThreadPoolExecutor(1);
+        mExecutor.setKeepAliveTime(30, TimeUnit.SECONDS);
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    static synchronized WearableForecastPublisher getInstance(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            sInstance = new WearableForecastPublisher(
+                    PublishedForecastCache.getInstance(appContext),
+                    new WearableSender(appContext, WatchFaceNodes.getInstance(appContext)),
+                    DEFAULT_WINDOW_MILLIS);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Queues a forecast to be sent to the wearable at the end of the current window. Doesn't
+     * block.
+     *
+     * @param forecast The forecast, replacing any that is still waiting to be sent
+     * @param onDone   Run on the publisher's thread once the forecast, or one that replaced it,
+     *                 was sent or skipped. May be null.
+     */
+    void publish(WearableForecast forecast, Runnable onDone) {
+        synchronized (mLock) {
+            if (onDone != null) {
+                mPendingCallbacks.add(onDone);
+            }
+            if (mPending != null) {
+                mCoalescedCount++;
+                mPending = forecast;
+                return;
+            }
+            mPending = forecast;
+        }
+
+        mExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, mWindowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    int getSentCount() {
+        synchronized (mLock) {
+            return mSentCount;
+        }
+    }
+
+    int getCoalescedCount() {
+        synchronized (mLock) {
+            return mCoalescedCount;
+        }
+    }
+
+    int getSkippedCount() {
+        synchronized (mLock) {
+            return mSkippedCount;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (mLock) {
+            return "WearableForecastPublisher[sent=" + mSentCount + ",coalesced="
+                    + mCoalescedCount + ",skipped=" + mSkippedCount + "]";
+        }
+    }
+
+    /* Runs on the publisher's thread when a window ends */
+    private void flush() {
+        WearableForecast forecast;
+        List<Runnable> callbacks;
+        synchronized (mLock) {
+            forecast = mPending;
+            callbacks = new ArrayList<Runnable>(mPendingCallbacks);
+            mPending = null;
+            mPendingCallbacks.clear();
+        }
+
+        try {
+            write(forecast);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Could not publish the forecast", e);
+        } finally {
+            for (Runnable callback : callbacks) {
+                callback.run();
+            }
+        }
+    }
+
+    private void write(WearableForecast forecast) {
+        byte[] encoded = forecast.encode();
+        if (mPublishedCache.isPublished(encoded)) {
+            synchronized (mLock) {
+                mSkippedCount++;
+            }
+            Log.d(TAG, "Wearable already has this forecast: " + this);
+            return;
+        }
+
+        boolean urgent = isTodayChanged(forecast, mPublishedCache.getPublished());
+        long start = System.nanoTime();
+        if (mSender.send(encoded, urgent)) {
+            mPublishedCache.setPublished(encoded, System.nanoTime() - start);
+            synchronized (mLock) {
+                mSentCount++;
+            }
+            Log.d(TAG, "Published the forecast" + (urgent ? " urgently: " : ": ") + this);
+        }
+    }
+
+    /**
+     * @param published The encoded forecast the wearable has, or null
+     * @return Whether today's weather in the forecast differs from what the wearable has
+     */
+    static boolean isTodayChanged(WearableForecast forecast, byte[] published) {
+        if (published == null) {
+            return true;
+        }
+        WearableForecast old;
+        try {
+            old = WearableForecast.decode(published);
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+        if (old.metric != forecast.metric) {
+            return true;
+        }
+
+        long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+        int index = forecast.indexOfDayFrom(today);
+        int oldIndex = old.indexOfDayFrom(today);
+        if (index == -1 || oldIndex == -1) {
+            return index != oldIndex;
+        }
+        return forecast.dates[index] != old.dates[oldIndex]
+                || forecast.weatherIds[index] != old.weatherIds[oldIndex]
+                || forecast.minTemps[index] != old.minTemps[oldIndex]
+                || forecast.maxTemps[index] != old.maxTemps[oldIndex];
+    }
+
+    /**
+     * Puts the forecast in the data item on {@link SunshineFirebaseJobService#PATH_FORECAST},
+     * over a connection of its own that is only held for the write. Doesn't connect at all if no
+     * node is known to run the watch face, and discovers the nodes the first time it does.
+     */
+    private static final class WearableSender implements Sender {
+
+        private final GoogleApiClient mGoogleApiClient;
+        private final WatchFaceNodes mWatchFaceNodes;
+
+        WearableSender(Context context, WatchFaceNodes watchFaceNodes) {
+            mGoogleApiClient = new GoogleApiClient.Builder(context)
+                    .addApi(Wearable.API)
+                    .build();
+            mWatchFaceNodes = watchFaceNodes;
+        }
+
+        @Override
+        public boolean send(byte[] forecast, boolean urgent) {
+            if (mWatchFaceNodes.isKnownAbsent()) {
+                Log.d(TAG, "No watch runs the watch face, not connecting");
+                return false;
+            }
+
+            if (!mGoogleApiClient.blockingConnect(WEARABLE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                    .isSuccess()) {
+                Log.d(TAG, "Could not connect to the wearable API");
+                return false;
+            }
+
+            try {
+                if (!mWatchFaceNodes.isKnown() && !discoverWatchFaceNodes()) {
+                    return false;
+                }
+
+                PutDataRequest request =
+                        PutDataRequest.create(SunshineFirebaseJobService.PATH_FORECAST);
+                request.setData(forecast);
+                if (urgent) {
+                    request.setUrgent();
+                }
+
+                DataApi.DataItemResult result =
+                        Wearable.DataApi.putDataItem(mGoogleApiClient, request)
+                                .await(WEARABLE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                if (!result.getStatus().isSuccess()) {
+                    Log.d(TAG, "Could not send the forecast (" + forecast.length + " bytes)");
+                    return false;
+                }
+                return true;
+            } finally {
+                mGoogleApiClient.disconnect();
+            }
+        }
+
+        /* Must be connected. Returns whether a node runs the watch face. */
+        private boolean discoverWatchFaceNodes() {
+            CapabilityApi.GetCapabilityResult result = Wearable.CapabilityApi.getCapability(
+                    mGoogleApiClient, SunshineFirebaseJobService.CAPABILITY_WATCH_FACE,
+                    CapabilityApi.FILTER_REACHABLE)
+                    .await(WEARABLE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (!result.getStatus().isSuccess()) {
+                /* Try again next time, in the meantime behave as if there was a watch */
+                Log.d(TAG, "Could not discover the nodes running the watch face");
+                return true;
+            }
+
+            mWatchFaceNodes.update(result.getCapability());
+            return !mWatchFaceNodes.isKnownAbsent();
+        }
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.data.WeatherContract;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The work {@link SunshineFirebaseJobService} does for each job, split into stages:
+ * <ol>
+ * <li>sync: fetch, parse and persist the forecast. These three are streamed into each other by
+ * {@link SunshineSyncTask#performSync} (through {@link SunshineSyncCoordinator}), which also
+ * notifies the user of new weather, so they run as a single stage. It hands on the rows it
+ * wrote from today onwards.</li>
+ * <li>summary: pack those rows into a {@link WearableForecast}.</li>
+ * <li>publish: hand the forecast to the {@link WearableForecastPublisher} and wait until it
+ * has been sent to the wearable, or skipped because the wearable already has it.</li>
+ * </ol>
+ * Each stage runs as its own task on a small, bounded executor and hands its output to the next
+ * one in memory. {@link #cancel()} stops the pipeline at the next stage boundary. The time each
+ * stage took is logged once the pipeline is done. The summary and publish stages are skipped
+ * when {@link WatchFaceNodes} knows no watch runs our watch face, or when the sync wrote
+ * nothing: a failed, cancelled or unmodified sync leaves the wearable with what it has.
+ */
+final class WeatherSyncPipeline {
+
+    private static final String TAG = WeatherSyncPipeline.class.getSimpleName();
+
+    static final int STAGE_SYNC = 0;
+    static final int STAGE_SUMMARY = 1;
+    static final int STAGE_PUBLISH = 2;
+    private static final int STAGE_COUNT = 3;
+
+    private static final String[] STAGE_NAMES = {"sync", "summary", "publish"};
+
+    /*
+     * Shared by every pipeline in the process. A single thread is plenty, as the stages of a
+     * pipeline run one after the other and jobs rarely overlap, and the queue is bounded so a
+     * burst of jobs can't pile up work without limit.
+     */
+    private static final ThreadPoolExecutor sExecutor;
+
+    static {
+        sExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(8));
+        sExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /* The columns of the forecast the wearable gets */
+    private static final String[] WEARABLE_FORECAST_PROJECTION = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+    };
+
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_MIN_TEMP = 2;
+    private static final int INDEX_MAX_TEMP = 3;
+
+    /**
+     * Told once when the pipeline has run all of its stages, or gave up on the rest of them.
+     * Not called if it was cancelled.
+     */
+    interface Listener {
+        void onPipelineFinished(WeatherSyncPipeline pipeline);
+    }
+
+    private final Context mContext;
+    private final Listener mListener;
+    private final ThreadPoolExecutor mExecutor;
+    private final SunshineSyncCoordinator mCoordinator;
+
+    /*
+     * Looked up by the stages rather than on the main thread, as the first lookup reads from
+     * disk. The stages run one after the other, so they need no lock.
+     */
+    private WatchFaceNodes mWatchFaceNodes;
+    private WearableForecastPublisher mPublisher;
+
+    private final long[] mStageNanos = new long[STAGE_COUNT];
+    private volatile boolean mCancelled;
+    private final AtomicBoolean mFinished = new AtomicBoolean();
+
+    WeatherSyncPipeline(Context context, Listener listener) {
+        this(context, listener, sExecutor, SunshineSyncCoordinator.getInstance(), null, null);
+    }
+
+    /**
+     * @param watchFaceNodes The singleton is used if null
+     * @param publisher      The singleton is used if null
+     */
+    WeatherSyncPipeline(Context context, Listener listener, ThreadPoolExecutor executor,
+                        SunshineSyncCoordinator coordinator, WatchFaceNodes watchFaceNodes,
+                        WearableForecastPublisher publisher) {
+        mContext = context.getApplicationContext();
+        mListener = listener;
+        mExecutor = executor;
+        mCoordinator = coordinator;
+        mWatchFaceNodes = watchFaceNodes;
+        mPublisher = publisher;
+    }
+
+    void start() {
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                runSync();
+            }
+        });
+    }
+
+    /**
+     * Stops the pipeline before its next stage. A stage that is already running is allowed to
+     * finish, the sync in particular may be shared with other callers.
+     */
+    void cancel() {
+        mCancelled = true;
+    }
+
+    /**
+     * @param stage One of the STAGE_ constants
+     * @return How long the stage took in milliseconds, 0 if it hasn't run
+     */
+    long getStageTimeMillis(int stage) {
+        return TimeUnit.NANOSECONDS.toMillis(mStageNanos[stage]);
+    }
+
+    private void runSync() {
+        if (stopAtBoundary(STAGE_SYNC)) {
+            return;
+        }
+        long start = System.nanoTime();
+
+        final WeatherSyncResult result = mCoordinator.sync(mContext);
+
+        mStageNanos[STAGE_SYNC] = System.nanoTime() - start;
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                runSummary(result);
+            }
+        });
+    }
+
+    private void runSummary(WeatherSyncResult result) {
+        if (stopAtBoundary(STAGE_SUMMARY)) {
+            return;
+        }
+        if (mWatchFaceNodes == null) {
+            mWatchFaceNodes = WatchFaceNodes.getInstance(mContext);
+        }
+        if (mWatchFaceNodes.isKnownAbsent()) {
+            /* Nobody to send a forecast to */
+            Log.d(TAG, "No watch runs the watch face, skipping the wearable stages");
+            finish();
+            return;
+        }
+        if (result.forecast == null) {
+            /* The wearable already has the stored forecast, or will get it once it connects */
+            Log.d(TAG, "Sync wrote no forecast, skipping the wearable stages: " + result);
+            finish();
+            return;
+        }
+        long start = System.nanoTime();
+
+        final WearableForecast forecast = toWearableForecast(mContext, result.forecast);
+
+        mStageNanos[STAGE_SUMMARY] = System.nanoTime() - start;
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                runPublish(forecast);
+            }
+        });
+    }
+
+    private void runPublish(WearableForecast forecast) {
+        if (stopAtBoundary(STAGE_PUBLISH)) {
+            return;
+        }
+        if (forecast == null || forecast.size() == 0) {
+            finish();
+            return;
+        }
+        if (mPublisher == null) {
+            mPublisher = WearableForecastPublisher.getInstance(mContext);
+        }
+        final long start = System.nanoTime();
+
+        /* The publisher may wait for more forecasts before it writes, this thread doesn't */
+        mPublisher.publish(forecast, new Runnable() {
+            @Override
+            public void run() {
+                mStageNanos[STAGE_PUBLISH] = System.nanoTime() - start;
+                finish();
+            }
+        });
+    }
+
+    private boolean stopAtBoundary(int stage) {
+        if (mCancelled) {
+            Log.d(TAG, "Cancelled before the " + STAGE_NAMES[stage] + " stage");
+            return true;
+        }
+        return false;
+    }
+
+    private void finish() {
+        /* A listener or log call failing inside a stage would otherwise finish us twice */
+        if (!mFinished.compareAndSet(false, true)) {
+            return;
+        }
+
+        StringBuilder timings = new StringBuilder("Pipeline finished:");
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            timings.append(' ')
+                    .append(STAGE_NAMES[stage])
+                    .append('=')
+                    .append(getStageTimeMillis(stage))
+                    .append("ms");
+        }
+        Log.d(TAG, timings.toString());
+
+        /* A cancelled job must not call jobFinished any more */
+        if (!mCancelled) {
+            mListener.onPipelineFinished(this);
+        }
+    }
+
+    private void submit(final Runnable stage) {
+        try {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        stage.run();
+                    } catch (RuntimeException e) {
+                        /* Don't leave the job hanging, jobFinished must still be called */
+                        Log.e(TAG, "Sync pipeline stage failed", e);
+                        finish();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            /* Too many jobs at once, this one gives up and the next scheduled sync catches up */
+            Log.w(TAG, "Sync pipeline queue is full, dropping the rest of this pipeline", e);
+            finish();
+        }
+    }
+
+    /**
+     * Packs the rows a sync wrote into the forecast the wearable gets. The rows are copied, as
+     * the sync's result is shared with whoever else asked for the same sync.
+     *
+     * @param rows The rows from today onwards, in date order
+     */
+    static WearableForecast toWearableForecast(Context context, ForecastBatch rows) {
+        int size = Math.min(rows.size(), WearableForecast.MAX_DAYS);
+        return new WearableForecast(SunshinePreferences.isMetric(context),
+                Arrays.copyOf(rows.date, size),
+                Arrays.copyOf(rows.weatherId, size),
+                Arrays.copyOf(rows.min, size),
+                Arrays.copyOf(rows.max, size));
+    }
+
+    /**
+     * Reads the stored forecast from today onwards. Only for the callers outside of the
+     * pipeline, which send the wearable what is stored rather than what a sync just wrote.
+     *
+     * @return The forecast, or null if the ContentProvider couldn't be queried
+     */
+    static WearableForecast queryWearableForecast(Context context) {
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                WEARABLE_FORECAST_PROJECTION,
+                WeatherContract.WeatherEntry.getSqlSelectForTodayOnwards(),
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+
+        if (cursor == null) {
+            return null;
+        }
+
+        try {
+            int size = Math.min(cursor.getCount(), WearableForecast.MAX_DAYS);
+            long[] dates = new long[size];
+            int[] weatherIds = new int[size];
+            double[] minTemps = new double[size];
+            double[] maxTemps = new double[size];
+            for (int i = 0; i < size && cursor.moveToNext(); i++) {
+                dates[i] = cursor.getLong(INDEX_DATE);
+                weatherIds[i] = cursor.getInt(INDEX_WEATHER_ID);
+                minTemps[i] = cursor.getDouble(INDEX_MIN_TEMP);
+                maxTemps[i] = cursor.getDouble(INDEX_MAX_TEMP);
+            }
+            return new WearableForecast(SunshinePreferences.isMetric(context),
+                    dates, weatherIds, minTemps, maxTemps);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import com.example.android.sunshine.data.ForecastBatch;
+import com.example.android.sunshine.data.TodayForecast;
+
+/**
+ * The outcome of a single {@link SunshineSyncTask#performSync} run: whether it succeeded, how
+ * many rows of the weather table it left unchanged, updated, inserted and deleted, and the
+ * forecast from today onwards as it was written.
+ */
+public final class WeatherSyncResult {
+
+    /* The server told us the forecast hasn't changed since the last sync */
+    public static final WeatherSyncResult NOT_MODIFIED =
+            new WeatherSyncResult(true, true, false, 0, 0, 0, 0, null, null);
+
+    /* The forecast could not be fetched or parsed, nothing was written */
+    public static final WeatherSyncResult FAILED =
+            new WeatherSyncResult(false, false, false, 0, 0, 0, 0, null, null);
+
+    /* A sync for a newer location replaced this one before it was done */
+    public static final WeatherSyncResult CANCELLED =
+            new WeatherSyncResult(false, false, true, 0, 0, 0, 0, null, null);
+
+    public final boolean successful;
+    public final boolean notModified;
+    public final boolean cancelled;
+    public final int rowsUnchanged;
+    public final int rowsUpdated;
+    public final int rowsInserted;
+    public final int rowsDeleted;
+
+    /* The first day from today onwards of the forecast the sync wrote, or null */
+    public final TodayForecast today;
+
+    /*
+     * The rows the sync wrote from today onwards, in date order, so nothing has to query them
+     * back. Null unless the sync wrote a forecast. Shared by every caller of a coalesced sync,
+     * so it must not be changed.
+     */
+    public final ForecastBatch forecast;
+
+    private WeatherSyncResult(boolean successful, boolean notModified, boolean cancelled,
+                              int rowsUnchanged, int rowsUpdated, int rowsInserted,
+                              int rowsDeleted, TodayForecast today, ForecastBatch forecast) {
+        this.successful = successful;
+        this.notModified = notModified;
+        this.cancelled = cancelled;
+        this.rowsUnchanged = rowsUnchanged;
+        this.rowsUpdated = rowsUpdated;
+        this.rowsInserted = rowsInserted;
+        this.rowsDeleted = rowsDeleted;
+        this.today = today;
+        this.forecast = forecast;
+    }
+
+    static WeatherSyncResult success(int rowsUnchanged, int rowsUpdated, int rowsInserted,
+                                     int rowsDeleted, TodayForecast today,
+                                     ForecastBatch forecast) {
+        return new WeatherSyncResult(true, false, false, rowsUnchanged, rowsUpdated,
+                rowsInserted, rowsDeleted, today, forecast);
+    }
+
+    /* Whether the sync wrote anything, and therefore whether observers have been notified */
+    public boolean hasChanges() {
+        return rowsUpdated > 0 || rowsInserted > 0 || rowsDeleted > 0;
+    }
+
+    @Override
+    public String toString() {
+        if (cancelled) {
+            return "WeatherSyncResult{cancelled}";
+        }
+        if (!successful) {
+            return "WeatherSyncResult{failed}";
+        }
+        if (notModified) {
+            return "WeatherSyncResult{not modified}";
+        }
+        return "WeatherSyncResult{unchanged=" + rowsUnchanged
+                + ", updated=" + rowsUpdated
+                + ", inserted=" + rowsInserted
+                + ", deleted=" + rowsDeleted + "}";
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.utilities;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the validators (ETag and Last-Modified) the weather server sent along with the last
+ * successfully processed response for each forecast URL. {@link NetworkUtils} sends them back
+ * with the next request so the server can answer with a 304 when the forecast hasn't changed.
+ * <p>
+ * The forecast doesn't carry its own dates: the parser dates the first day of the body as the
+ * day it is parsed on. So each entry also remembers that day, and the validators are only good
+ * for the same day. On a later day the body has to be parsed again to move the dates along,
+ * even if the server would call it unchanged.
+ * <p>
+ * Only the validators are kept: the body of a response lives on in our ContentProvider once it
+ * has been parsed, so there is no need to store it a second time. The cache holds at most
+ * {@link #MAX_ENTRIES} URLs, evicting the least recently used one, and is persisted to a small
+ * file in the app's cache directory so it survives process restarts.
+ */
+public final class ForecastResponseCache {
+
+    private static final String TAG = ForecastResponseCache.class.getSimpleName();
+
+    private static final String CACHE_FILE_NAME = "forecast_response_cache";
+
+    /* A handful of locations is plenty, the user can only have one selected at a time */
+    private static final int MAX_ENTRIES = 8;
+
+    private static final char FIELD_SEPARATOR = '\t';
+
+    private static ForecastResponseCache sInstance;
+
+    private final File mCacheFile;
+
+    /* Access ordered, so the eldest entry is always the least recently used one */
+    private final LinkedHashMap<String, Validators> mEntries =
+            new LinkedHashMap<String, Validators>(MAX_ENTRIES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Validators> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+
+    private boolean mLoaded;
+    private int mHitCount;
+    private int mMissCount;
+
+    /**
+     * The validators of a cached response. Either of them may be null, but not both.
+     */
+    public static final class Validators {
+        public final String eTag;
+        public final String lastModified;
+
+        /* The normalized UTC day the response was parsed on, which became its first day */
+        public final long startDay;
+
+        Validators(String eTag, String lastModified, long startDay) {
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.startDay = startDay;
+        }
+    }
+
+    private ForecastResponseCache(File cacheFile) {
+        mCacheFile = cacheFile;
+    }
+
+    public static synchronized ForecastResponseCache getInstance(Context context) {
+        if (sInstance == null) {
+            File cacheFile = new File(context.getApplicationContext().getCacheDir(),
+                    CACHE_FILE_NAME);
+            sInstance = new ForecastResponseCache(cacheFile);
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param url The URL the response was fetched from
+     * @return The validators stored for the URL, or null if we have none
+     */
+    public synchronized Validators get(String url) {
+        ensureLoaded();
+        return mEntries.get(url);
+    }
+
+    /**
+     * Stores the validators of a response that has been processed successfully. If the server
+     * sent neither an ETag nor a Last-Modified header, any old entry for the URL is dropped.
+     *
+     * @param startDay The normalized UTC day the response was parsed on
+     */
+    public synchronized void put(String url, String eTag, String lastModified, long startDay) {
+        ensureLoaded();
+
+        eTag = sanitize(eTag);
+        lastModified = sanitize(lastModified);
+
+        if (eTag == null && lastModified == null) {
+            if (mEntries.remove(url) != null) {
+                save();
+            }
+            return;
+        }
+
+        mEntries.put(url, new Validators(eTag, lastModified, startDay));
+        save();
+    }
+
+    /* Called when the server answered a conditional request with 304 Not Modified */
+    synchronized void recordHit() {
+        mHitCount++;
+    }
+
+    /* Called when the server sent a full response */
+    synchronized void recordMiss() {
+        mMissCount++;
+    }
+
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /* Drops every entry, both in memory and on disk. Counters are left alone. */
+    public synchronized void clear() {
+        mEntries.clear();
+        mLoaded = true;
+        if (mCacheFile.exists() && !mCacheFile.delete()) {
+            Log.w(TAG, "Could not delete " + mCacheFile);
+        }
+    }
+
+    private static String sanitize(String headerValue) {
+        if (headerValue == null) {
+            return null;
+        }
+        headerValue = headerValue.trim();
+        if (headerValue.length() == 0
+                || headerValue.indexOf(FIELD_SEPARATOR) != -1
+                || headerValue.indexOf('\n') != -1) {
+            return null;
+        }
+        return headerValue;
+    }
+
+    private void ensureLoaded() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(mCacheFile), "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(String.valueOf(FIELD_SEPARATOR), -1);
+                /* Entries written before the start day was stored are dropped too */
+                if (fields.length != 4) {
+                    continue;
+                }
+                String eTag = fields[1].length() == 0 ? null : fields[1];
+                String lastModified = fields[2].length() == 0 ? null : fields[2];
+                long startDay;
+                try {
+                    startDay = Long.parseLong(fields[3]);
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                mEntries.put(fields[0], new Validators(eTag, lastModified, startDay));
+            }
+        } catch (FileNotFoundException e) {
+            /* Nothing has been cached yet */
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read the response cache, starting empty", e);
+            mEntries.clear();
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    private void save() {
+        /* Write to a temporary file first so a crash never leaves a half written cache behind */
+        File tmpFile = new File(mCacheFile.getPath() + ".tmp");
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(tmpFile), "UTF-8");
+            for (Map.Entry<String, Validators> entry : mEntries.entrySet()) {
+                Validators validators = entry.getValue();
+                writer.write(entry.getKey());
+                writer.write(FIELD_SEPARATOR);
+                writer.write(validators.eTag == null ? "" : validators.eTag);
+                writer.write(FIELD_SEPARATOR);
+                writer.write(validators.lastModified == null ? "" : validators.lastModified);
+                writer.write(FIELD_SEPARATOR);
+                writer.write(Long.toString(validators.startDay));
+                writer.write('\n');
+            }
+            writer.close();
+            writer = null;
+
+            if (!tmpFile.renameTo(mCacheFile)) {
+                Log.w(TAG, "Could not save the response cache");
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not save the response cache", e);
+        } finally {
+            closeQuietly(writer);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -17,10 +17,12 @@ package com.example.android.sunshine.utilities;
 
 import android.content.Context;
 import android.net.Uri;
+import android.support.v4.os.CancellationSignal;
 import android.util.Log;
 
 import com.example.android.sunshine.data.SunshinePreferences;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
@@ -187,4 +189,131 @@ public final class NetworkUtils {
             urlConnection.disconnect();
         }
     }
+
+    /**
+     * Callback used by {@link #readResponseFromHttpUrl(Context, URL, boolean,
+     * ResponseStreamHandler)} to consume the body of an HTTP response directly from the
+     * connection's InputStream.
+     *
+     * @param <T> The type of result produced from the response body
+     */
+    public interface ResponseStreamHandler<T> {
+        T onResponse(InputStream in) throws IOException;
+    }
+
+    /**
+     * Hands the body of the HTTP response to the given handler as a stream, rather than reading
+     * the entire response into memory first. The connection is closed once the handler returns.
+     * <p>
+     * The request is conditional when {@link ForecastResponseCache} holds validators for the
+     * URL. If the server answers with 304 Not Modified, the handler is never called and null is
+     * returned.
+     * <p>
+     * The validators of a full response are only stored once the handler has returned without
+     * throwing, so a response that failed to be processed is fetched again in full next time.
+     * They are stored with the day the response was handled on, and the request is only made
+     * conditional on that same day, since the rows parsed from the body are dated from it.
+     *
+     * @param context          Used to access the ForecastResponseCache
+     * @param url              The URL to fetch the HTTP response from.
+     * @param allowNotModified Whether the caller can do without the body when the response
+     *                         hasn't changed. Pass false if the previous response is gone, for
+     *                         example because there is no data in the database anymore.
+     * @param handler          Consumes the response body
+     * @return Whatever the handler returned, or null if the response has not been modified
+     * @throws IOException Related to network and stream reading
+     */
+    public static <T> T readResponseFromHttpUrl(Context context, URL url, boolean allowNotModified,
+                                                ResponseStreamHandler<T> handler)
+            throws IOException {
+        return readResponseFromHttpUrl(context, url, allowNotModified, handler, null);
+    }
+
+    /**
+     * Like {@link #readResponseFromHttpUrl(Context, URL, boolean, ResponseStreamHandler)}, but
+     * cancelling the signal disconnects the connection, so a request or a read of the body that
+     * is blocked on the network fails with an IOException right away rather than finishing.
+     *
+     * @param cancellationSignal Aborts the request when cancelled, may be null
+     * @throws android.support.v4.os.OperationCanceledException If the signal was cancelled
+     *                                                          before the request was made
+     */
+    public static <T> T readResponseFromHttpUrl(Context context, URL url, boolean allowNotModified,
+                                                ResponseStreamHandler<T> handler,
+                                                CancellationSignal cancellationSignal)
+            throws IOException {
+        ForecastResponseCache cache = ForecastResponseCache.getInstance(context);
+        String cacheKey = url.toString();
+
+        /* Taken before the handler runs, so midnight can only make us fetch in full once more */
+        long today = SunshineDateUtils.getNormalizedUtcDateForToday();
+
+        ForecastResponseCache.Validators validators =
+                allowNotModified ? cache.get(cacheKey) : null;
+        if (validators != null && validators.startDay != today) {
+            /* The stored rows are dated from an earlier day, a 304 would keep them that way */
+            Log.v(TAG, "Cached response is from an earlier day: " + url);
+            validators = null;
+        }
+
+        final HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        if (cancellationSignal != null) {
+            cancellationSignal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+                @Override
+                public void onCancel() {
+                    /*
+                     * Called on the thread that cancels, which may be the main thread. Closing
+                     * the socket may touch the network, so do it on a thread of its own.
+                     */
+                    new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            urlConnection.disconnect();
+                        }
+                    }).start();
+                }
+            });
+        }
+        try {
+            if (cancellationSignal != null) {
+                cancellationSignal.throwIfCanceled();
+            }
+
+            if (validators != null) {
+                if (validators.eTag != null) {
+                    urlConnection.setRequestProperty("If-None-Match", validators.eTag);
+                }
+                if (validators.lastModified != null) {
+                    urlConnection.setRequestProperty("If-Modified-Since", validators.lastModified);
+                }
+            }
+
+            if (validators != null
+                    && urlConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                cache.recordHit();
+                Log.v(TAG, "Not modified: " + url);
+                return null;
+            }
+            cache.recordMiss();
+
+            InputStream in = new BufferedInputStream(urlConnection.getInputStream());
+            T result;
+            try {
+                result = handler.onResponse(in);
+            } finally {
+                in.close();
+            }
+
+            cache.put(cacheKey,
+                    urlConnection.getHeaderField("ETag"),
+                    urlConnection.getHeaderField("Last-Modified"),
+                    today);
+            return result;
+        } finally {
+            if (cancellationSignal != null) {
+                cancellationSignal.setOnCancelListener(null);
+            }
+            urlConnection.disconnect();
+        }
+    }
 }
\ No newline at end of file
@@ -5,7 +5,6 @@ import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.content.res.Resources;
-import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
@@ -16,29 +15,11 @@ import android.support.v4.content.ContextCompat;
 import com.example.android.sunshine.DetailActivity;
 import com.example.android.sunshine.R;
 import com.example.android.sunshine.data.SunshinePreferences;
+import com.example.android.sunshine.data.TodayForecast;
 import com.example.android.sunshine.data.WeatherContract;
 
 public class NotificationUtils {
 
-    /*
-     * The columns of data that we are interested in displaying within our notification to let
-     * the user know there is new weather data available.
-     */
-    public static final String[] WEATHER_NOTIFICATION_PROJECTION = {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-    };
-
-    /*
-     * We store the indices of the values in the array of Strings above to more quickly be able
-     * to access the data from our query. If the order of the Strings above changes, these
-     * indices must be adjusted to match the order of the Strings.
-     */
-    public static final int INDEX_WEATHER_ID = 0;
-    public static final int INDEX_MAX_TEMP = 1;
-    public static final int INDEX_MIN_TEMP = 2;
-
     /*
      * This notification ID can be used to access our notification after we've displayed it. This
      * can be handy when we need to cancel the notification, or perhaps update it. This number is
@@ -49,96 +30,75 @@ public class NotificationUtils {
     /**
      * Constructs and displays a notification for the newly updated weather for today.
      *
-     * @param context Context used to query our ContentProvider and use various Utility methods
+     * @param context Context used to use various Utility methods
+     * @param today   Today's forecast, as written by the sync that just finished
      */
-    public static void notifyUserOfNewWeather(Context context) {
+    public static void notifyUserOfNewWeather(Context context, TodayForecast today) {
+
+        /* Build the URI for today's weather so the notification opens the matching detail screen */
+        Uri todaysWeatherUri = WeatherContract.WeatherEntry.buildWeatherUriWithDate(today.date);
+
+        /* Weather ID as returned by API, used to identify the icon to be used */
+        int weatherId = today.weatherId;
+        double high = today.high;
+        double low = today.low;
+
+        Resources resources = context.getResources();
+        int largeArtResourceId = SunshineWeatherUtils
+                .getLargeArtResourceIdForWeatherCondition(weatherId);
+
+        Bitmap largeIcon = BitmapFactory.decodeResource(
+                resources,
+                largeArtResourceId);
 
-        /* Build the URI for today's weather in order to show up to date data in notification */
-        Uri todaysWeatherUri = WeatherContract.WeatherEntry
-                .buildWeatherUriWithDate(SunshineDateUtils.normalizeDate(System.currentTimeMillis()));
+        String notificationTitle = context.getString(R.string.app_name);
+
+        String notificationText = getNotificationText(context, weatherId, high, low);
+
+        /* getSmallArtResourceIdForWeatherCondition returns the proper art to show given an ID */
+        int smallArtResourceId = SunshineWeatherUtils
+                .getSmallArtResourceIdForWeatherCondition(weatherId);
+
+        /*
+         * NotificationCompat Builder is a very convenient way to build backward-compatible
+         * notifications. In order to use it, we provide a context and specify a color for the
+         * notification, a couple of different icons, the title for the notification, and
+         * finally the text of the notification, which in our case in a summary of today's
+         * forecast.
+         */
+        NotificationCompat.Builder notificationBuilder = new NotificationCompat.Builder(context)
+                .setColor(ContextCompat.getColor(context,R.color.colorPrimary))
+                .setSmallIcon(smallArtResourceId)
+                .setLargeIcon(largeIcon)
+                .setContentTitle(notificationTitle)
+                .setContentText(notificationText)
+                .setAutoCancel(true);
 
         /*
-         * The MAIN_FORECAST_PROJECTION array passed in as the second parameter is defined in our WeatherContract
-         * class and is used to limit the columns returned in our cursor.
+         * This Intent will be triggered when the user clicks the notification. In our case,
+         * we want to open Sunshine to the DetailActivity to display the newly updated weather.
          */
-        Cursor todayWeatherCursor = context.getContentResolver().query(
-                todaysWeatherUri,
-                WEATHER_NOTIFICATION_PROJECTION,
-                null,
-                null,
-                null);
+        Intent detailIntentForToday = new Intent(context, DetailActivity.class);
+        detailIntentForToday.setData(todaysWeatherUri);
+
+        TaskStackBuilder taskStackBuilder = TaskStackBuilder.create(context);
+        taskStackBuilder.addNextIntentWithParentStack(detailIntentForToday);
+        PendingIntent resultPendingIntent = taskStackBuilder
+                .getPendingIntent(0, PendingIntent.FLAG_UPDATE_CURRENT);
+
+        notificationBuilder.setContentIntent(resultPendingIntent);
+
+        NotificationManager notificationManager = (NotificationManager)
+                context.getSystemService(Context.NOTIFICATION_SERVICE);
+
+        /* WEATHER_NOTIFICATION_ID allows you to update or cancel the notification later on */
+        notificationManager.notify(WEATHER_NOTIFICATION_ID, notificationBuilder.build());
 
         /*
-         * If todayWeatherCursor is empty, moveToFirst will return false. If our cursor is not
-         * empty, we want to show the notification.
+         * Since we just showed a notification, save the current time. That way, we can check
+         * next time the weather is refreshed if we should show another notification.
          */
-        if (todayWeatherCursor.moveToFirst()) {
-
-            /* Weather ID as returned by API, used to identify the icon to be used */
-            int weatherId = todayWeatherCursor.getInt(INDEX_WEATHER_ID);
-            double high = todayWeatherCursor.getDouble(INDEX_MAX_TEMP);
-            double low = todayWeatherCursor.getDouble(INDEX_MIN_TEMP);
-
-            Resources resources = context.getResources();
-            int largeArtResourceId = SunshineWeatherUtils
-                    .getLargeArtResourceIdForWeatherCondition(weatherId);
-
-            Bitmap largeIcon = BitmapFactory.decodeResource(
-                    resources,
-                    largeArtResourceId);
-
-            String notificationTitle = context.getString(R.string.app_name);
-
-            String notificationText = getNotificationText(context, weatherId, high, low);
-
-            /* getSmallArtResourceIdForWeatherCondition returns the proper art to show given an ID */
-            int smallArtResourceId = SunshineWeatherUtils
-                    .getSmallArtResourceIdForWeatherCondition(weatherId);
-
-            /*
-             * NotificationCompat Builder is a very convenient way to build backward-compatible
-             * notifications. In order to use it, we provide a context and specify a color for the
-             * notification, a couple of different icons, the title for the notification, and
-             * finally the text of the notification, which in our case in a summary of today's
-             * forecast.
-             */
-            NotificationCompat.Builder notificationBuilder = new NotificationCompat.Builder(context)
-                    .setColor(ContextCompat.getColor(context,R.color.colorPrimary))
-                    .setSmallIcon(smallArtResourceId)
-                    .setLargeIcon(largeIcon)
-                    .setContentTitle(notificationTitle)
-                    .setContentText(notificationText)
-                    .setAutoCancel(true);
-
-            /*
-             * This Intent will be triggered when the user clicks the notification. In our case,
-             * we want to open Sunshine to the DetailActivity to display the newly updated weather.
-             */
-            Intent detailIntentForToday = new Intent(context, DetailActivity.class);
-            detailIntentForToday.setData(todaysWeatherUri);
-
-            TaskStackBuilder taskStackBuilder = TaskStackBuilder.create(context);
-            taskStackBuilder.addNextIntentWithParentStack(detailIntentForToday);
-            PendingIntent resultPendingIntent = taskStackBuilder
-                    .getPendingIntent(0, PendingIntent.FLAG_UPDATE_CURRENT);
-
-            notificationBuilder.setContentIntent(resultPendingIntent);
-
-            NotificationManager notificationManager = (NotificationManager)
-                    context.getSystemService(Context.NOTIFICATION_SERVICE);
-
-            /* WEATHER_NOTIFICATION_ID allows you to update or cancel the notification later on */
-            notificationManager.notify(WEATHER_NOTIFICATION_ID, notificationBuilder.build());
-
-            /*
-             * Since we just showed a notification, save the current time. That way, we can check
-             * next time the weather is refreshed if we should show another notification.
-             */
-            SunshinePreferences.saveLastNotificationTime(context, System.currentTimeMillis());
-        }
-
-        /* Always close your cursor when you're done with it to avoid wasting resources. */
-        todayWeatherCursor.close();
+        SunshinePreferences.saveLastNotificationTime(context, System.currentTimeMillis());
     }
 
     /**
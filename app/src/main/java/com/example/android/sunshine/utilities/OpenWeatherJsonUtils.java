@@ -15,9 +15,14 @@
  */
 package com.example.android.sunshine.utilities;
 
+import android.annotation.TargetApi;
 import android.content.ContentValues;
 import android.content.Context;
+import android.os.Build;
+import android.util.JsonReader;
+import android.util.JsonToken;
 
+import com.example.android.sunshine.data.ForecastBatch;
 import com.example.android.sunshine.data.SunshinePreferences;
 import com.example.android.sunshine.data.WeatherContract;
 
@@ -25,6 +30,9 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 
 /**
@@ -60,6 +68,32 @@ public final class OpenWeatherJsonUtils {
 
     private static final String OWM_MESSAGE_CODE = "cod";
 
+    /* Returned by parseWeatherStream when the response carried an error code */
+    public static final int PARSE_ERROR = -1;
+
+    /*
+     * The fields of a day's forecast the streaming parser has seen, as bits. Like the
+     * JSONObject parser, it rejects an entry that lacks any of them rather than storing a
+     * made up 0.
+     */
+    private static final int FIELD_PRESSURE = 1;
+    private static final int FIELD_HUMIDITY = 1 << 1;
+    private static final int FIELD_WIND_SPEED = 1 << 2;
+    private static final int FIELD_WIND_DIRECTION = 1 << 3;
+    private static final int FIELD_MAX = 1 << 4;
+    private static final int FIELD_MIN = 1 << 5;
+    private static final int FIELD_WEATHER_ID = 1 << 6;
+    private static final int ALL_DAY_FIELDS = (1 << 7) - 1;
+
+    /**
+     * Receives the batch filled by the streaming parser each time it is full, and once more for
+     * the remaining rows when the parser reaches the end of the "list" array. The batch is
+     * cleared and refilled afterwards, so it must not be held on to.
+     */
+    public interface ForecastBatchSink {
+        void onForecastBatch(ForecastBatch batch) throws IOException;
+    }
+
     /**
      * This method parses JSON from a web response and returns an array of Strings
      * describing the weather over various days from the forecast.
@@ -181,4 +215,197 @@ public final class OpenWeatherJsonUtils {
 
         return weatherContentValues;
     }
-}
\ No newline at end of file
+
+    /**
+     * Parses the forecast JSON directly from the response stream. Unlike
+     * {@link #getWeatherContentValuesFromJson(Context, String)}, neither the response String nor
+     * a JSON tree is ever built: each element of the "list" array is written into the batch as
+     * soon as it has been read, and the batch is handed to the sink whenever it fills up. Memory
+     * use therefore only depends on the capacity of the batch, not on the number of entries.
+     *
+     * @param context  Used to save the location coordinates to SharedPreferences
+     * @param in       The body of the HTTP response
+     * @param batch    Reused to hold the parsed rows until they are handed to the sink
+     * @param sink     Receives the batch of weather values, in order
+     *
+     * @return The number of entries passed to the sink, or {@link #PARSE_ERROR} if the server
+     * returned an error code
+     *
+     * @throws IOException If the stream cannot be read, does not contain valid JSON, or a day's
+     * forecast or the city's coordinates lack a value
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public static int parseWeatherStream(Context context, InputStream in, ForecastBatch batch,
+                                         ForecastBatchSink sink) throws IOException {
+
+        JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+
+        /* See getWeatherContentValuesFromJson for why only today's date is used */
+        long normalizedUtcStartDay = SunshineDateUtils.getNormalizedUtcDateForToday();
+
+        int entryCount = 0;
+
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+
+                if (OWM_MESSAGE_CODE.equals(name)) {
+                    /* OWM sends this code as a String, nextInt converts it for us */
+                    if (reader.nextInt() != HttpURLConnection.HTTP_OK) {
+                        return PARSE_ERROR;
+                    }
+                } else if (OWM_CITY.equals(name)) {
+                    readCity(context, reader);
+                } else if (OWM_LIST.equals(name)) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        long dateTimeMillis = normalizedUtcStartDay
+                                + SunshineDateUtils.DAY_IN_MILLIS * entryCount;
+                        readDayForecast(reader, dateTimeMillis, batch);
+                        entryCount++;
+
+                        if (batch.isFull()) {
+                            sink.onForecastBatch(batch);
+                            batch.clear();
+                        }
+                    }
+                    reader.endArray();
+
+                    if (batch.size() > 0) {
+                        sink.onForecastBatch(batch);
+                        batch.clear();
+                    }
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | NumberFormatException e) {
+            /* JsonReader reports unexpected tokens this way, treat them like malformed JSON */
+            throw new IOException("Unexpected forecast JSON: " + e.getMessage());
+        } finally {
+            reader.close();
+        }
+
+        return entryCount;
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void readCity(Context context, JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (OWM_COORD.equals(reader.nextName())) {
+                Double cityLatitude = null;
+                Double cityLongitude = null;
+
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if (OWM_LATITUDE.equals(name)) {
+                        cityLatitude = reader.nextDouble();
+                    } else if (OWM_LONGITUDE.equals(name)) {
+                        cityLongitude = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+
+                /* Saving 0,0 would point every later request at a made up location */
+                if (cityLatitude == null || cityLongitude == null) {
+                    throw new IOException("Forecast city has no coordinates");
+                }
+
+                SunshinePreferences.setLocationDetails(context, cityLatitude, cityLongitude);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void readDayForecast(JsonReader reader, long dateTimeMillis,
+                                        ForecastBatch batch) throws IOException {
+
+        double pressure = 0;
+        int humidity = 0;
+        double windSpeed = 0;
+        double windDirection = 0;
+
+        double high = 0;
+        double low = 0;
+
+        int weatherId = 0;
+
+        int seen = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+
+            if (OWM_PRESSURE.equals(name)) {
+                pressure = reader.nextDouble();
+                seen |= FIELD_PRESSURE;
+            } else if (OWM_HUMIDITY.equals(name)) {
+                humidity = reader.nextInt();
+                seen |= FIELD_HUMIDITY;
+            } else if (OWM_WINDSPEED.equals(name)) {
+                windSpeed = reader.nextDouble();
+                seen |= FIELD_WIND_SPEED;
+            } else if (OWM_WIND_DIRECTION.equals(name)) {
+                windDirection = reader.nextDouble();
+                seen |= FIELD_WIND_DIRECTION;
+            } else if (OWM_TEMPERATURE.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String temperatureName = reader.nextName();
+                    if (OWM_MAX.equals(temperatureName)) {
+                        high = reader.nextDouble();
+                        seen |= FIELD_MAX;
+                    } else if (OWM_MIN.equals(temperatureName)) {
+                        low = reader.nextDouble();
+                        seen |= FIELD_MIN;
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (OWM_WEATHER.equals(name)) {
+                /* Like the DOM parser, we only care about the first element's weather code */
+                reader.beginArray();
+                boolean first = true;
+                while (reader.hasNext()) {
+                    if (first && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            if (OWM_WEATHER_ID.equals(reader.nextName())) {
+                                weatherId = reader.nextInt();
+                                seen |= FIELD_WEATHER_ID;
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                    } else {
+                        reader.skipValue();
+                    }
+                    first = false;
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (seen != ALL_DAY_FIELDS) {
+            throw new IOException("Forecast entry is missing values, found fields 0x"
+                    + Integer.toHexString(seen));
+        }
+
+        batch.add(dateTimeMillis, weatherId, low, high, humidity, pressure, windSpeed,
+                windDirection);
+    }
+}
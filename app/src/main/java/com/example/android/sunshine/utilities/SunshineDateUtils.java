@@ -21,6 +21,9 @@ import android.text.format.DateUtils;
 import com.example.android.sunshine.R;
 
 import java.text.SimpleDateFormat;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
@@ -32,6 +35,17 @@ public final class SunshineDateUtils {
     /* Milliseconds in a day */
     public static final long DAY_IN_MILLIS = TimeUnit.DAYS.toMillis(1);
 
+    /*
+     * Friendly date strings already formatted, keyed by date and showFullDate. They only hold for
+     * the day, time zone and locales they were formatted in, so the cache is emptied as soon as
+     * any of those changes.
+     */
+    private static final Map<Long, String> sFriendlyDates = new HashMap<Long, String>();
+    private static long sFriendlyDatesToday = -1;
+    private static String sFriendlyDatesTimeZoneId;
+    private static Locale sFriendlyDatesLocale;
+    private static Locale sFriendlyDatesDefaultLocale;
+
     /**
      * This method returns the number of milliseconds (UTC time) for today's date at midnight in
      * the local time zone. For example, if you live in California and the day is September 20th,
@@ -188,6 +202,9 @@ public final class SunshineDateUtils {
      * For tomorrow:  "Tomorrow
      * For the next 5 days: "Wednesday" (just the day name)
      * For all days after that: "Mon, Jun 8" (Mon, 8 Jun in UK, for example)
+     * <p/>
+     * Every row of the forecast list asks for one of these, so each string is only formatted
+     * once a day, or again after the time zone or locale changes.
      *
      * @param context               Context to use for resource localization
      * @param normalizedUtcMidnight The date in milliseconds (UTC midnight)
@@ -199,6 +216,46 @@ public final class SunshineDateUtils {
      * or "Friday"
      */
     public static String getFriendlyDateString(Context context, long normalizedUtcMidnight, boolean showFullDate) {
+        /*
+         * What the string depends on besides the date: today's date, the time zone, the locale
+         * of the resources DateUtils formats with and the default one SimpleDateFormat uses.
+         */
+        long daysFromEpochToToday = elapsedDaysSinceEpoch(System.currentTimeMillis());
+        String timeZoneId = TimeZone.getDefault().getID();
+        Locale locale = context.getResources().getConfiguration().locale;
+        Locale defaultLocale = Locale.getDefault();
+
+        /* Doubling the date leaves its lowest bit free for the flag */
+        Long key = normalizedUtcMidnight * 2 + (showFullDate ? 1 : 0);
+
+        synchronized (sFriendlyDates) {
+            if (daysFromEpochToToday != sFriendlyDatesToday
+                    || !timeZoneId.equals(sFriendlyDatesTimeZoneId)
+                    || !locale.equals(sFriendlyDatesLocale)
+                    || !defaultLocale.equals(sFriendlyDatesDefaultLocale)) {
+                sFriendlyDates.clear();
+                sFriendlyDatesToday = daysFromEpochToToday;
+                sFriendlyDatesTimeZoneId = timeZoneId;
+                sFriendlyDatesLocale = locale;
+                sFriendlyDatesDefaultLocale = defaultLocale;
+            }
+
+            String friendlyDate = sFriendlyDates.get(key);
+            if (friendlyDate == null) {
+                friendlyDate = formatFriendlyDateString(context, normalizedUtcMidnight,
+                        showFullDate);
+                sFriendlyDates.put(key, friendlyDate);
+            }
+            return friendlyDate;
+        }
+    }
+
+    /**
+     * Formats what {@link #getFriendlyDateString} returns, without looking in or filling its
+     * cache.
+     */
+    static String formatFriendlyDateString(Context context, long normalizedUtcMidnight,
+                                           boolean showFullDate) {
 
         /*
          * NOTE: localDate should be localDateMidnightMillis and should be straight from the
@@ -30,6 +30,122 @@ public final class SunshineWeatherUtils {
 
     private static final String LOG_TAG = SunshineWeatherUtils.class.getSimpleName();
 
+    /*
+     * OpenWeatherMap condition ids run from 200 to 962. Rather than walk through a ladder of
+     * comparisons for every row, notification and wearable push, we look each id up in tables
+     * covering that whole range, built once from the lists below. A 0 in a table means the id
+     * is unknown.
+     */
+    private static final int MIN_CONDITION_ID = 200;
+    private static final int MAX_CONDITION_ID = 962;
+
+    private static final int[] sStringIds = new int[MAX_CONDITION_ID - MIN_CONDITION_ID + 1];
+    private static final int[] sSmallArtIds = new int[sStringIds.length];
+    private static final int[] sLargeArtIds = new int[sStringIds.length];
+
+    /* What we show for ids we don't know */
+    private static final int UNKNOWN_SMALL_ART = R.drawable.ic_storm;
+    private static final int UNKNOWN_LARGE_ART = R.drawable.art_storm;
+
+    /* Ranges of ids that share a description: first id, last id, description */
+    private static final int[][] CONDITION_STRING_RANGES = {
+            {200, 232, R.string.condition_2xx},
+            {300, 321, R.string.condition_3xx},
+    };
+
+    /* Ids with a description of their own */
+    private static final int[][] CONDITION_STRINGS = {
+            {500, R.string.condition_500},
+            {501, R.string.condition_501},
+            {502, R.string.condition_502},
+            {503, R.string.condition_503},
+            {504, R.string.condition_504},
+            {511, R.string.condition_511},
+            {520, R.string.condition_520},
+            {531, R.string.condition_531},
+            {600, R.string.condition_600},
+            {601, R.string.condition_601},
+            {602, R.string.condition_602},
+            {611, R.string.condition_611},
+            {612, R.string.condition_612},
+            {615, R.string.condition_615},
+            {616, R.string.condition_616},
+            {620, R.string.condition_620},
+            {621, R.string.condition_621},
+            {622, R.string.condition_622},
+            {701, R.string.condition_701},
+            {711, R.string.condition_711},
+            {721, R.string.condition_721},
+            {731, R.string.condition_731},
+            {741, R.string.condition_741},
+            {751, R.string.condition_751},
+            {761, R.string.condition_761},
+            {762, R.string.condition_762},
+            {771, R.string.condition_771},
+            {781, R.string.condition_781},
+            {800, R.string.condition_800},
+            {801, R.string.condition_801},
+            {802, R.string.condition_802},
+            {803, R.string.condition_803},
+            {804, R.string.condition_804},
+            {900, R.string.condition_900},
+            {901, R.string.condition_901},
+            {902, R.string.condition_902},
+            {903, R.string.condition_903},
+            {904, R.string.condition_904},
+            {905, R.string.condition_905},
+            {906, R.string.condition_906},
+            {951, R.string.condition_951},
+            {952, R.string.condition_952},
+            {953, R.string.condition_953},
+            {954, R.string.condition_954},
+            {955, R.string.condition_955},
+            {956, R.string.condition_956},
+            {957, R.string.condition_957},
+            {958, R.string.condition_958},
+            {959, R.string.condition_959},
+            {960, R.string.condition_960},
+            {961, R.string.condition_961},
+            {962, R.string.condition_962},
+    };
+
+    /* Ranges of ids that share art: first id, last id, small art, large art */
+    private static final int[][] CONDITION_ART_RANGES = {
+            {200, 232, R.drawable.ic_storm, R.drawable.art_storm},
+            {300, 321, R.drawable.ic_light_rain, R.drawable.art_light_rain},
+            {500, 504, R.drawable.ic_rain, R.drawable.art_rain},
+            {511, 511, R.drawable.ic_snow, R.drawable.art_snow},
+            {520, 531, R.drawable.ic_rain, R.drawable.art_rain},
+            {600, 622, R.drawable.ic_snow, R.drawable.art_snow},
+            /* Dust, 761, is drawn as fog like the rest of the atmosphere group */
+            {701, 761, R.drawable.ic_fog, R.drawable.art_fog},
+            {771, 771, R.drawable.ic_storm, R.drawable.art_storm},
+            {781, 781, R.drawable.ic_storm, R.drawable.art_storm},
+            {800, 800, R.drawable.ic_clear, R.drawable.art_clear},
+            {801, 801, R.drawable.ic_light_clouds, R.drawable.art_light_clouds},
+            {802, 804, R.drawable.ic_cloudy, R.drawable.art_clouds},
+            {900, 906, R.drawable.ic_storm, R.drawable.art_storm},
+            {951, 957, R.drawable.ic_clear, R.drawable.art_clear},
+            {958, 962, R.drawable.ic_storm, R.drawable.art_storm},
+    };
+
+    static {
+        for (int[] range : CONDITION_STRING_RANGES) {
+            for (int id = range[0]; id <= range[1]; id++) {
+                sStringIds[id - MIN_CONDITION_ID] = range[2];
+            }
+        }
+        for (int[] condition : CONDITION_STRINGS) {
+            sStringIds[condition[0] - MIN_CONDITION_ID] = condition[1];
+        }
+        for (int[] range : CONDITION_ART_RANGES) {
+            for (int id = range[0]; id <= range[1]; id++) {
+                sSmallArtIds[id - MIN_CONDITION_ID] = range[2];
+                sLargeArtIds[id - MIN_CONDITION_ID] = range[3];
+            }
+        }
+    }
+
     /**
      * This method will convert a temperature from Celsius to Fahrenheit.
      *
@@ -142,170 +258,9 @@ public final class SunshineWeatherUtils {
      * @return String for the weather condition, null if no relation is found.
      */
     public static String getStringForWeatherCondition(Context context, int weatherId) {
-        int stringId;
-        if (weatherId >= 200 && weatherId <= 232) {
-            stringId = R.string.condition_2xx;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            stringId = R.string.condition_3xx;
-        } else switch (weatherId) {
-            case 500:
-                stringId = R.string.condition_500;
-                break;
-            case 501:
-                stringId = R.string.condition_501;
-                break;
-            case 502:
-                stringId = R.string.condition_502;
-                break;
-            case 503:
-                stringId = R.string.condition_503;
-                break;
-            case 504:
-                stringId = R.string.condition_504;
-                break;
-            case 511:
-                stringId = R.string.condition_511;
-                break;
-            case 520:
-                stringId = R.string.condition_520;
-                break;
-            case 531:
-                stringId = R.string.condition_531;
-                break;
-            case 600:
-                stringId = R.string.condition_600;
-                break;
-            case 601:
-                stringId = R.string.condition_601;
-                break;
-            case 602:
-                stringId = R.string.condition_602;
-                break;
-            case 611:
-                stringId = R.string.condition_611;
-                break;
-            case 612:
-                stringId = R.string.condition_612;
-                break;
-            case 615:
-                stringId = R.string.condition_615;
-                break;
-            case 616:
-                stringId = R.string.condition_616;
-                break;
-            case 620:
-                stringId = R.string.condition_620;
-                break;
-            case 621:
-                stringId = R.string.condition_621;
-                break;
-            case 622:
-                stringId = R.string.condition_622;
-                break;
-            case 701:
-                stringId = R.string.condition_701;
-                break;
-            case 711:
-                stringId = R.string.condition_711;
-                break;
-            case 721:
-                stringId = R.string.condition_721;
-                break;
-            case 731:
-                stringId = R.string.condition_731;
-                break;
-            case 741:
-                stringId = R.string.condition_741;
-                break;
-            case 751:
-                stringId = R.string.condition_751;
-                break;
-            case 761:
-                stringId = R.string.condition_761;
-                break;
-            case 762:
-                stringId = R.string.condition_762;
-                break;
-            case 771:
-                stringId = R.string.condition_771;
-                break;
-            case 781:
-                stringId = R.string.condition_781;
-                break;
-            case 800:
-                stringId = R.string.condition_800;
-                break;
-            case 801:
-                stringId = R.string.condition_801;
-                break;
-            case 802:
-                stringId = R.string.condition_802;
-                break;
-            case 803:
-                stringId = R.string.condition_803;
-                break;
-            case 804:
-                stringId = R.string.condition_804;
-                break;
-            case 900:
-                stringId = R.string.condition_900;
-                break;
-            case 901:
-                stringId = R.string.condition_901;
-                break;
-            case 902:
-                stringId = R.string.condition_902;
-                break;
-            case 903:
-                stringId = R.string.condition_903;
-                break;
-            case 904:
-                stringId = R.string.condition_904;
-                break;
-            case 905:
-                stringId = R.string.condition_905;
-                break;
-            case 906:
-                stringId = R.string.condition_906;
-                break;
-            case 951:
-                stringId = R.string.condition_951;
-                break;
-            case 952:
-                stringId = R.string.condition_952;
-                break;
-            case 953:
-                stringId = R.string.condition_953;
-                break;
-            case 954:
-                stringId = R.string.condition_954;
-                break;
-            case 955:
-                stringId = R.string.condition_955;
-                break;
-            case 956:
-                stringId = R.string.condition_956;
-                break;
-            case 957:
-                stringId = R.string.condition_957;
-                break;
-            case 958:
-                stringId = R.string.condition_958;
-                break;
-            case 959:
-                stringId = R.string.condition_959;
-                break;
-            case 960:
-                stringId = R.string.condition_960;
-                break;
-            case 961:
-                stringId = R.string.condition_961;
-                break;
-            case 962:
-                stringId = R.string.condition_962;
-                break;
-            default:
-                return context.getString(R.string.condition_unknown, weatherId);
+        int stringId = lookUp(sStringIds, weatherId);
+        if (stringId == 0) {
+            return context.getString(R.string.condition_unknown, weatherId);
         }
 
         return context.getString(stringId);
@@ -326,42 +281,13 @@ public final class SunshineWeatherUtils {
      * @return resource id for the corresponding icon. -1 if no relation is found.
      */
     public static int getSmallArtResourceIdForWeatherCondition(int weatherId) {
-
-        /*
-         * Based on weather code data for Open Weather Map.
-         */
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.ic_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.ic_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.ic_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.ic_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.ic_fog;
-        } else if (weatherId == 761 || weatherId == 771 || weatherId == 781) {
-            return R.drawable.ic_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.ic_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.ic_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.ic_cloudy;
-        } else if (weatherId >= 900 && weatherId <= 906) {
-            return R.drawable.ic_storm;
-        } else if (weatherId >= 958 && weatherId <= 962) {
-            return R.drawable.ic_storm;
-        } else if (weatherId >= 951 && weatherId <= 957) {
-            return R.drawable.ic_clear;
+        int artId = lookUp(sSmallArtIds, weatherId);
+        if (artId == 0) {
+            Log.e(LOG_TAG, "Unknown Weather: " + weatherId);
+            return UNKNOWN_SMALL_ART;
         }
 
-        Log.e(LOG_TAG, "Unknown Weather: " + weatherId);
-        return R.drawable.ic_storm;
+        return artId;
     }
 
     /**
@@ -379,41 +305,22 @@ public final class SunshineWeatherUtils {
      * @return resource ID for the corresponding icon. -1 if no relation is found.
      */
     public static int getLargeArtResourceIdForWeatherCondition(int weatherId) {
-
-        /*
-         * Based on weather code data for Open Weather Map.
-         */
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.art_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.art_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.art_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.art_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.art_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.art_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.art_fog;
-        } else if (weatherId == 761 || weatherId == 771 || weatherId == 781) {
-            return R.drawable.art_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.art_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.art_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.art_clouds;
-        } else if (weatherId >= 900 && weatherId <= 906) {
-            return R.drawable.art_storm;
-        } else if (weatherId >= 958 && weatherId <= 962) {
-            return R.drawable.art_storm;
-        } else if (weatherId >= 951 && weatherId <= 957) {
-            return R.drawable.art_clear;
+        int artId = lookUp(sLargeArtIds, weatherId);
+        if (artId == 0) {
+            Log.e(LOG_TAG, "Unknown Weather: " + weatherId);
+            return UNKNOWN_LARGE_ART;
         }
 
-        Log.e(LOG_TAG, "Unknown Weather: " + weatherId);
-        return R.drawable.art_storm;
+        return artId;
+    }
+
+    /**
+     * @return What the table holds for the condition id, 0 if the id is outside of it
+     */
+    private static int lookUp(int[] table, int weatherId) {
+        if (weatherId < MIN_CONDITION_ID || weatherId > MAX_CONDITION_ID) {
+            return 0;
+        }
+        return table[weatherId - MIN_CONDITION_ID];
     }
 }
\ No newline at end of file
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.sync;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+/**
+ * Round-trips and fuzzes the {@link WearableForecast} codec. Runs on the JVM.
+ */
+public class TestWearableForecast {
+
+    private static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+
+    /* January 1st 2017 */
+    private static final long FIRST_DATE = 17167 * DAY_IN_MILLIS;
+
+    private static final int FUZZ_ITERATIONS = 20000;
+
+    /* Fixed so a failure can be reproduced */
+    private final Random mRandom = new Random(4242);
+
+    @Test
+    public void testRoundTrip() {
+        WearableForecast forecast = new WearableForecast(true,
+                new long[]{FIRST_DATE, FIRST_DATE + DAY_IN_MILLIS, FIRST_DATE + 5 * DAY_IN_MILLIS},
+                new int[]{211, 800, 962},
+                new double[]{-12.3, 0, 25.5},
+                new double[]{-4.0, 7.1, 38.9});
+
+        WearableForecast decoded = WearableForecast.decode(forecast.encode());
+
+        assertEquals(true, decoded.metric);
+        assertTrue(Arrays.equals(forecast.dates, decoded.dates));
+        assertTrue(Arrays.equals(forecast.weatherIds, decoded.weatherIds));
+        assertTrue(Arrays.equals(forecast.minTemps, decoded.minTemps));
+        assertTrue(Arrays.equals(forecast.maxTemps, decoded.maxTemps));
+    }
+
+    @Test
+    public void testEncodedSize() {
+        /* 7 bytes of header and 8 per day: two weeks of forecast fit in 119 bytes */
+        assertEquals(7, randomForecast(0).encode().length);
+        assertEquals(119, randomForecast(14).encode().length);
+    }
+
+    @Test
+    public void testTemperaturesKeepTenthsOfADegree() {
+        WearableForecast forecast = new WearableForecast(false,
+                new long[]{FIRST_DATE}, new int[]{800}, new double[]{12.345}, new double[]{12.36});
+
+        WearableForecast decoded = WearableForecast.decode(forecast.encode());
+
+        assertEquals(12.3, decoded.minTemps[0]);
+        assertEquals(12.4, decoded.maxTemps[0]);
+    }
+
+    @Test
+    public void testRandomForecastsRoundTrip() {
+        for (int i = 0; i < FUZZ_ITERATIONS; i++) {
+            WearableForecast forecast = randomForecast(mRandom.nextInt(WearableForecast.MAX_DAYS));
+            byte[] encoded = forecast.encode();
+            assertTrue(Arrays.equals(encoded, WearableForecast.decode(encoded).encode()));
+        }
+    }
+
+    @Test
+    public void testEncodeRejectsBadForecasts() {
+        assertEncodeFails(new WearableForecast(true,
+                new long[]{FIRST_DATE + 1}, new int[]{800}, new double[]{0}, new double[]{0}));
+        assertEncodeFails(new WearableForecast(true,
+                new long[]{FIRST_DATE, FIRST_DATE - DAY_IN_MILLIS},
+                new int[]{800, 800}, new double[]{0, 0}, new double[]{0, 0}));
+        assertEncodeFails(new WearableForecast(true,
+                new long[]{FIRST_DATE}, new int[]{0x10000}, new double[]{0}, new double[]{0}));
+        assertEncodeFails(new WearableForecast(true,
+                new long[]{FIRST_DATE}, new int[]{800}, new double[]{4000}, new double[]{0}));
+    }
+
+    @Test
+    public void testDecodeRejectsOtherVersions() {
+        byte[] encoded = randomForecast(3).encode();
+        encoded[0] = WearableForecast.VERSION + 1;
+        try {
+            WearableForecast.decode(encoded);
+            fail("Decoded a forecast of an unknown version");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    /**
+     * Feeds the decoder random bytes and damaged forecasts. It must either reject them with an
+     * IllegalArgumentException or decode something that encodes back to the same bytes.
+     */
+    @Test
+    public void testDecodeSurvivesGarbage() {
+        for (int i = 0; i < FUZZ_ITERATIONS; i++) {
+            byte[] random = new byte[mRandom.nextInt(64)];
+            mRandom.nextBytes(random);
+            assertDecodeFailsOrRoundTrips(random);
+
+            byte[] encoded = randomForecast(mRandom.nextInt(20)).encode();
+            switch (mRandom.nextInt(3)) {
+                case 0:
+                    encoded[mRandom.nextInt(encoded.length)] ^= 1 << mRandom.nextInt(8);
+                    break;
+                case 1:
+                    encoded = Arrays.copyOf(encoded, mRandom.nextInt(encoded.length));
+                    break;
+                default:
+                    encoded = Arrays.copyOf(encoded, encoded.length + 1 + mRandom.nextInt(16));
+                    break;
+            }
+            assertDecodeFailsOrRoundTrips(encoded);
+        }
+        assertDecodeFailsOrRoundTrips(null);
+    }
+
+    private WearableForecast randomForecast(int size) {
+        long[] dates = new long[size];
+        int[] weatherIds = new int[size];
+        double[] minTemps = new double[size];
+        double[] maxTemps = new double[size];
+        long date = FIRST_DATE + mRandom.nextInt(1000) * DAY_IN_MILLIS;
+        for (int i = 0; i < size; i++) {
+            date += mRandom.nextInt(3) * DAY_IN_MILLIS;
+            dates[i] = date;
+            weatherIds[i] = 200 + mRandom.nextInt(800);
+            minTemps[i] = (mRandom.nextInt(1200) - 600) / 10.0;
+            maxTemps[i] = (mRandom.nextInt(1200) - 600) / 10.0;
+        }
+        return new WearableForecast(mRandom.nextBoolean(), dates, weatherIds, minTemps, maxTemps);
+    }
+
+    private static void assertEncodeFails(WearableForecast forecast) {
+        try {
+            forecast.encode();
+            fail("Encoded a forecast that doesn't fit the format");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private static void assertDecodeFailsOrRoundTrips(byte[] data) {
+        WearableForecast decoded;
+        try {
+            decoded = WearableForecast.decode(data);
+        } catch (IllegalArgumentException expected) {
+            return;
+        }
+        assertTrue(Arrays.equals(data, decoded.encode()));
+    }
+}
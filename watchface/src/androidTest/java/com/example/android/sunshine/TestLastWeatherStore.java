@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Checks that {@link LastWeatherStore} reads back the forecast it saved, survives a damaged
+ * file, and logs how long reading it takes, which is what a restarted watch face waits for
+ * before its first frame.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestLastWeatherStore {
+
+    private static final String TAG = TestLastWeatherStore.class.getSimpleName();
+
+    private static final int THUNDERSTORM = 211;
+
+    /* January 2nd and 3rd 2017 */
+    private static final long FIRST_DATE = 17168L * 24 * 60 * 60 * 1000;
+    private static final long SECOND_DATE = 17169L * 24 * 60 * 60 * 1000;
+
+    private final Context mContext = InstrumentationRegistry.getTargetContext();
+
+    private HandlerThread mBackgroundThread;
+
+    @Before
+    public void setUp() {
+        deleteFile();
+        mBackgroundThread = new HandlerThread(TAG);
+        mBackgroundThread.start();
+    }
+
+    @After
+    public void tearDown() {
+        mBackgroundThread.quit();
+        deleteFile();
+    }
+
+    @Test
+    public void testNothingSaved() {
+        assertNull(createStore().load());
+    }
+
+    @Test
+    public void testLoadsWhatWasSaved() throws InterruptedException {
+        WearableForecast saved = new WearableForecast(false,
+                new long[]{FIRST_DATE, SECOND_DATE},
+                new int[]{THUNDERSTORM, 800},
+                new double[]{14.5, 12},
+                new double[]{21, 19.3});
+
+        LastWeatherStore store = createStore();
+        store.save(saved.encode());
+        waitForWrites();
+
+        long start = System.nanoTime();
+        WearableForecast loaded = createStore().load();
+        Log.i(TAG, "Loading the last forecast took "
+                + TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) + " us");
+
+        assertNotNull(loaded);
+        assertTrue(Arrays.equals(saved.encode(), loaded.encode()));
+        assertEquals(THUNDERSTORM, loaded.weatherIds[0]);
+        assertEquals(19.3, loaded.maxTemps[1]);
+    }
+
+    @Test
+    public void testDamagedFileIsIgnored() throws IOException {
+        FileOutputStream out = new FileOutputStream(getFile());
+        /* Version 1, claiming two days but holding none */
+        out.write(new byte[]{1, 1, 2, 0, 0, 0, 0});
+        out.close();
+
+        assertNull(createStore().load());
+    }
+
+    private LastWeatherStore createStore() {
+        return new LastWeatherStore(mContext, mBackgroundThread.getLooper());
+    }
+
+    /* Saves are written in order on the background thread, so wait until it gets to this */
+    private void waitForWrites() throws InterruptedException {
+        final CountDownLatch written = new CountDownLatch(1);
+        new Handler(mBackgroundThread.getLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                written.countDown();
+            }
+        });
+        assertTrue(written.await(10, TimeUnit.SECONDS));
+    }
+
+    private File getFile() {
+        return new File(mContext.getFilesDir(), LastWeatherStore.FILE_NAME);
+    }
+
+    private void deleteFile() {
+        getFile().delete();
+        new File(getFile().getPath() + ".bak").delete();
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+
+/**
+ * Checks that {@link WatchFaceRenderer} draws its steady-state frames without allocating and
+ * that it writes the time correctly, and logs how long a frame takes with and without its
+ * offscreen layers.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestWatchFaceRenderer {
+
+    private static final String TAG = TestWatchFaceRenderer.class.getSimpleName();
+
+    private static final int SURFACE_SIZE = 320;
+
+    private static final int WARM_UP_FRAMES = 5;
+    private static final int COUNTED_FRAMES = 120;
+    private static final int BENCHMARK_FRAMES = 1000;
+
+    /* 10:09:08 on January 1st 1970, UTC */
+    private static final long TEN_NINE_EIGHT = TimeUnit.HOURS.toMillis(10)
+            + TimeUnit.MINUTES.toMillis(9)
+            + TimeUnit.SECONDS.toMillis(8);
+
+    private WatchFaceRenderer mRenderer;
+    private Canvas mCanvas;
+
+    @Before
+    public void setUp() {
+        mRenderer = new WatchFaceRenderer(
+                InstrumentationRegistry.getTargetContext().getResources());
+        mRenderer.applyWindowInsets(true);
+        mRenderer.setSurfaceSize(SURFACE_SIZE, SURFACE_SIZE);
+        mRenderer.setTemperatures(21, 14, true);
+        mRenderer.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        mCanvas = new Canvas(
+                Bitmap.createBitmap(SURFACE_SIZE, SURFACE_SIZE, Bitmap.Config.ARGB_8888));
+    }
+
+    @Test
+    public void testInteractiveFramesDoNotAllocate() {
+        assertEquals("Interactive frames allocated", 0, countAllocations(false));
+    }
+
+    @Test
+    public void testAmbientFramesDoNotAllocate() {
+        assertEquals("Ambient frames allocated", 0, countAllocations(true));
+    }
+
+    @Test
+    public void benchmarkLayers() {
+        for (boolean ambient : new boolean[]{false, true}) {
+            mRenderer.setAmbient(ambient, false);
+
+            mRenderer.setLayersEnabled(false);
+            long[] directNanos = timeFrames();
+            mRenderer.setLayersEnabled(true);
+            long[] layerNanos = timeFrames();
+
+            String mode = ambient ? "ambient" : "interactive";
+            Log.i(TAG, "Without layers, " + mode + ": " + describe(directNanos));
+            Log.i(TAG, "With layers,    " + mode + ": " + describe(layerNanos));
+        }
+    }
+
+    @Test
+    public void testFormatTime() {
+        char[] out = new char[8];
+
+        int length = WatchFaceRenderer.formatTime(out, TEN_NINE_EIGHT, true);
+        assertEquals("10:09:08", new String(out, 0, length));
+
+        length = WatchFaceRenderer.formatTime(out, TEN_NINE_EIGHT, false);
+        assertEquals("10:09", new String(out, 0, length));
+
+        /* Like Calendar.HOUR, noon and midnight are hour 0 */
+        length = WatchFaceRenderer.formatTime(out,
+                TimeUnit.HOURS.toMillis(12) + TimeUnit.MINUTES.toMillis(5), true);
+        assertEquals("0:05:00", new String(out, 0, length));
+
+        /* Times before the epoch still wrap around to the right time of day */
+        length = WatchFaceRenderer.formatTime(out, -TimeUnit.MINUTES.toMillis(1), false);
+        assertEquals("11:59", new String(out, 0, length));
+    }
+
+    /**
+     * Draws a few frames to warm up any caches, then counts how many objects the next frames,
+     * one second apart like in interactive mode, allocate on this thread altogether.
+     */
+    @SuppressWarnings("deprecation")
+    private int countAllocations(boolean ambient) {
+        mRenderer.setAmbient(ambient, true);
+
+        long time = TEN_NINE_EIGHT;
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            mRenderer.draw(mCanvas, time);
+            time += TimeUnit.SECONDS.toMillis(1);
+        }
+
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        try {
+            for (int i = 0; i < COUNTED_FRAMES; i++) {
+                mRenderer.draw(mCanvas, time);
+                time += TimeUnit.SECONDS.toMillis(1);
+            }
+            return Debug.getThreadAllocCount();
+        } finally {
+            Debug.stopAllocCounting();
+        }
+    }
+
+    /* Draws a frame per second, after a first frame that builds the layer if there is one */
+    private long[] timeFrames() {
+        long time = TEN_NINE_EIGHT;
+        mRenderer.draw(mCanvas, time);
+
+        long[] nanos = new long[BENCHMARK_FRAMES];
+        for (int i = 0; i < BENCHMARK_FRAMES; i++) {
+            time += TimeUnit.SECONDS.toMillis(1);
+            long start = System.nanoTime();
+            mRenderer.draw(mCanvas, time);
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        return nanos;
+    }
+
+    private static String describe(long[] sortedNanos) {
+        long total = 0;
+        for (long nanos : sortedNanos) {
+            total += nanos;
+        }
+        return String.format("%d frames, mean %.1f us, p50 %.1f us, p99 %.1f us",
+                sortedNanos.length,
+                total / 1e3 / sortedNanos.length,
+                sortedNanos[sortedNanos.length / 2] / 1e3,
+                sortedNanos[sortedNanos.length * 99 / 100] / 1e3);
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Paint;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Checks that the prerendered ambient copies of every bundled weather art draw the same pixels
+ * the watch face drew when it filtered the colour art on every ambient frame, and logs what
+ * drawing the art costs either way.
+ * <p>
+ * The goldens are rendered on the spot the old way: the colour art drawn onto black through a
+ * saturation 0 colour filter, and for low-bit screens that same image with each pixel either
+ * lit or not, as such a screen shows it.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestWeatherArt {
+
+    private static final String TAG = TestWeatherArt.class.getSimpleName();
+
+    /* One condition for each art we bundle */
+    private static final int[] WEATHER_IDS = {211, 301, 501, 602, 741, 800, 801, 803};
+
+    private static final int BENCHMARK_DRAWS = 1000;
+
+    private final Resources mResources = InstrumentationRegistry.getTargetContext().getResources();
+
+    @Test
+    public void testAmbientArtMatchesFilteredArt() {
+        for (int weatherId : WEATHER_IDS) {
+            WeatherArt art = loadArt(weatherId);
+            Bitmap golden = drawFiltered(art.color);
+            Bitmap drawn = drawPlain(art.ambient);
+
+            /* The ambient copy is stored premultiplied, which may round a channel by one */
+            assertTrue("Ambient art differs for " + weatherId,
+                    maxChannelDifference(golden, drawn) <= 1);
+        }
+    }
+
+    @Test
+    public void testLowBitArtMatchesThresholdedFilteredArt() {
+        for (int weatherId : WEATHER_IDS) {
+            WeatherArt art = loadArt(weatherId);
+            Bitmap golden = drawFiltered(art.color);
+            Bitmap drawn = drawPlain(art.lowBit);
+
+            int lit = 0;
+            for (int y = 0; y < golden.getHeight(); y++) {
+                for (int x = 0; x < golden.getWidth(); x++) {
+                    int goldenPixel = golden.getPixel(x, y);
+                    if (Math.abs(Color.red(goldenPixel) - WeatherArt.LOW_BIT_THRESHOLD) <= 1) {
+                        /* Within the rounding of the ambient copy, either way is right */
+                        continue;
+                    }
+                    int expected = WeatherArt.isLitInLowBit(goldenPixel)
+                            ? Color.WHITE : Color.BLACK;
+                    assertEquals("Low-bit art differs for " + weatherId + " at " + x + "," + y,
+                            expected, drawn.getPixel(x, y));
+                    if (expected == Color.WHITE) {
+                        lit++;
+                    }
+                }
+            }
+            assertTrue("No pixel of " + weatherId + " is lit", lit > 0);
+        }
+    }
+
+    @Test
+    public void benchmarkAmbientArt() {
+        WeatherArt art = loadArt(800);
+        Canvas canvas = new Canvas(Bitmap.createBitmap(
+                art.getWidth(), art.getHeight(), Bitmap.Config.ARGB_8888));
+        Paint grayPaint = createGrayPaint();
+        Paint plainPaint = new Paint();
+
+        /* Warm up both */
+        canvas.drawBitmap(art.color, 0, 0, grayPaint);
+        canvas.drawBitmap(art.ambient, 0, 0, plainPaint);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_DRAWS; i++) {
+            canvas.drawBitmap(art.color, 0, 0, grayPaint);
+        }
+        long filteredNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_DRAWS; i++) {
+            canvas.drawBitmap(art.ambient, 0, 0, plainPaint);
+        }
+        long plainNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_DRAWS; i++) {
+            canvas.drawBitmap(art.lowBit, 0, 0, plainPaint);
+        }
+        long lowBitNanos = System.nanoTime() - start;
+
+        Log.i(TAG, String.format("Ambient art, mean per draw: filtered %.1f us, "
+                        + "prerendered %.1f us, prerendered low-bit %.1f us",
+                filteredNanos / 1e3 / BENCHMARK_DRAWS,
+                plainNanos / 1e3 / BENCHMARK_DRAWS,
+                lowBitNanos / 1e3 / BENCHMARK_DRAWS));
+    }
+
+    private WeatherArt loadArt(int weatherId) {
+        return WeatherArt.from(BitmapFactory.decodeResource(mResources,
+                WatchFaceUtility.getArtResourceIdForWeatherCondition(weatherId)));
+    }
+
+    /* How ambient mode used to draw the art */
+    private static Bitmap drawFiltered(Bitmap color) {
+        Bitmap bitmap = createBlack(color);
+        new Canvas(bitmap).drawBitmap(color, 0, 0, createGrayPaint());
+        return bitmap;
+    }
+
+    private static Bitmap drawPlain(Bitmap art) {
+        Bitmap bitmap = createBlack(art);
+        new Canvas(bitmap).drawBitmap(art, 0, 0, null);
+        return bitmap;
+    }
+
+    private static Bitmap createBlack(Bitmap art) {
+        Bitmap bitmap = Bitmap.createBitmap(
+                art.getWidth(), art.getHeight(), Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.BLACK);
+        return bitmap;
+    }
+
+    private static Paint createGrayPaint() {
+        ColorMatrix colorMatrix = new ColorMatrix();
+        colorMatrix.setSaturation(0);
+        Paint paint = new Paint();
+        paint.setColorFilter(new ColorMatrixColorFilter(colorMatrix));
+        return paint;
+    }
+
+    private static int maxChannelDifference(Bitmap a, Bitmap b) {
+        int max = 0;
+        for (int y = 0; y < a.getHeight(); y++) {
+            for (int x = 0; x < a.getWidth(); x++) {
+                int pa = a.getPixel(x, y);
+                int pb = b.getPixel(x, y);
+                max = Math.max(max, Math.abs(Color.red(pa) - Color.red(pb)));
+                max = Math.max(max, Math.abs(Color.green(pa) - Color.green(pb)));
+                max = Math.max(max, Math.abs(Color.blue(pa) - Color.blue(pb)));
+            }
+        }
+        return max;
+    }
+}
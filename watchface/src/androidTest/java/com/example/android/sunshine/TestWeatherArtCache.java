@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+
+/**
+ * Checks that {@link WeatherArtCache} is bounded by bytes, evicts the least recently used art
+ * and counts hits and misses.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TestWeatherArtCache {
+
+    private static final int ART_SIZE = 32;
+
+    /* Both bitmaps of one piece of art, ARGB_8888 */
+    private static final int ART_BYTES = 2 * ART_SIZE * ART_SIZE * 4;
+
+    private static final int RAIN = 500;
+    private static final int SNOW = 600;
+    private static final int CLEAR = 800;
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        WeatherArtCache cache = new WeatherArtCache(2 * ART_BYTES);
+        WeatherArt rain = createArt();
+        cache.put(RAIN, rain);
+        cache.put(SNOW, createArt());
+
+        /* Rain is now more recently used than snow */
+        assertSame(rain, cache.get(RAIN));
+        cache.put(CLEAR, createArt());
+
+        assertNull("Least recently used art was not evicted", cache.get(SNOW));
+        assertNotNull(cache.get(RAIN));
+        assertNotNull(cache.get(CLEAR));
+        assertEquals(2 * ART_BYTES, cache.getSizeBytes());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testCountsHitsAndMisses() {
+        WeatherArtCache cache = new WeatherArtCache(WeatherArtCache.DEFAULT_MAX_SIZE_BYTES);
+        assertNull(cache.get(RAIN));
+        cache.put(RAIN, createArt());
+        cache.get(RAIN);
+        cache.get(RAIN);
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(ART_BYTES, cache.getSizeBytes());
+    }
+
+    @Test
+    public void testAmbientArtIsGray() {
+        Bitmap red = Bitmap.createBitmap(ART_SIZE, ART_SIZE, Bitmap.Config.ARGB_8888);
+        red.eraseColor(Color.RED);
+
+        int pixel = WeatherArt.from(red).ambient.getPixel(0, 0);
+        assertEquals(Color.red(pixel), Color.green(pixel));
+        assertEquals(Color.green(pixel), Color.blue(pixel));
+    }
+
+    private static WeatherArt createArt() {
+        return WeatherArt.from(Bitmap.createBitmap(ART_SIZE, ART_SIZE, Bitmap.Config.ARGB_8888));
+    }
+}
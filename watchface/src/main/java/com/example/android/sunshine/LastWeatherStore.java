@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Keeps the last forecast the phone sent in a small file on the watch, so a watch face that was
+ * just (re)started can draw the real weather in its first frame instead of placeholders, long
+ * before the phone syncs again. The file holds the forecast exactly as the phone encoded it, see
+ * {@link WearableForecast}.
+ * <p>
+ * {@link #load()} reads the file synchronously and is meant for Engine.onCreate. Saves are
+ * written on a background thread, the watch face's main thread never waits for them.
+ */
+final class LastWeatherStore {
+
+    private static final String TAG = LastWeatherStore.class.getSimpleName();
+
+    static final String FILE_NAME = "last_forecast";
+
+    private final AtomicFile mFile;
+    private final Handler mBackgroundHandler;
+
+    /* What the file holds, or is about to once the pending write is done. Main thread only. */
+    private byte[] mLastForecast;
+
+    /**
+     * @param context          Used to find the app's files directory
+     * @param backgroundLooper The looper of the thread the file is written on
+     */
+    LastWeatherStore(Context context, Looper backgroundLooper) {
+        mFile = new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+        mBackgroundHandler = new Handler(backgroundLooper);
+    }
+
+    /**
+     * Reads the file. Blocks on disk I/O, but the file is small.
+     *
+     * @return The last saved forecast, or null if there is none or it can't be read
+     */
+    WearableForecast load() {
+        byte[] forecast;
+        try {
+            forecast = mFile.readFully();
+        } catch (IOException e) {
+            /* Nothing saved yet */
+            return null;
+        }
+
+        try {
+            WearableForecast decoded = WearableForecast.decode(forecast);
+            mLastForecast = forecast;
+            return decoded;
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Could not read the last forecast", e);
+            return null;
+        }
+    }
+
+    /**
+     * Saves an encoded forecast, unless it is the one already saved. Call on the main thread.
+     */
+    void save(final byte[] forecast) {
+        if (Arrays.equals(forecast, mLastForecast)) {
+            return;
+        }
+        mLastForecast = forecast;
+        mBackgroundHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                write(forecast);
+            }
+        });
+    }
+
+    /* Runs on the background thread */
+    private void write(byte[] forecast) {
+        FileOutputStream stream = null;
+        try {
+            stream = mFile.startWrite();
+            stream.write(forecast);
+            mFile.finishWrite(stream);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not save the last forecast", e);
+            if (stream != null) {
+                mFile.failWrite(stream);
+            }
+        }
+    }
+}
@@ -20,22 +20,14 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.res.Resources;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.ColorMatrix;
-import android.graphics.ColorMatrixColorFilter;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.Typeface;
-import android.graphics.drawable.BitmapDrawable;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Message;
+import android.os.Process;
 import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
 import android.util.Log;
@@ -45,16 +37,15 @@ import android.view.WindowInsets;
 
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.wearable.Asset;
+import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
-import com.google.android.gms.wearable.DataMap;
-import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemBuffer;
 import com.google.android.gms.wearable.Wearable;
 
 import java.lang.ref.WeakReference;
-import java.util.Calendar;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
@@ -63,9 +54,6 @@ import java.util.concurrent.TimeUnit;
  * low-bit ambient mode, the text is drawn without anti-aliasing in ambient mode.
  */
 public class SunshineDigitalWatchFaceService extends CanvasWatchFaceService {
-    private static final Typeface NORMAL_TYPEFACE =
-            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
-
     /**
      * Update rate in milliseconds for interactive mode. We update once a second since seconds are
      * displayed in interactive mode.
@@ -77,6 +65,10 @@ public class SunshineDigitalWatchFaceService extends CanvasWatchFaceService {
      */
     private static final int MSG_UPDATE_TIME = 0;
 
+    /* Outlives each Engine, so a new one still finds the art we've shown before */
+    private final WeatherArtCache mWeatherArtCache =
+            new WeatherArtCache(WeatherArtCache.DEFAULT_MAX_SIZE_BYTES);
+
     @Override
     public Engine onCreateEngine() {
         return new Engine();
@@ -104,20 +96,30 @@ public class SunshineDigitalWatchFaceService extends CanvasWatchFaceService {
 
     private class Engine extends CanvasWatchFaceService.Engine implements DataApi.DataListener,
             GoogleApiClient.ConnectionCallbacks,
-            GoogleApiClient.OnConnectionFailedListener {
+            GoogleApiClient.OnConnectionFailedListener,
+            WeatherArtLoader.Callback {
 
         private final String TAG = SunshineDigitalWatchFaceService.class.getSimpleName();
 
         final Handler mUpdateTimeHandler = new EngineHandler(this);
         boolean mRegisteredTimeZoneReceiver = false;
-        Paint mBackgroundPaint;
-        Paint mCenterLinePaint;
-        Paint mTextPaint;
-        Paint mWeatherPaint;
-        Paint mWeatherImagePaint;
-        Paint mGrayWeatherImagePaint;
         boolean mAmbient;
-        Calendar mCalendar;
+        WatchFaceRenderer mRenderer;
+        WeatherArtLoader mWeatherArtLoader;
+        LastWeatherStore mLastWeatherStore;
+
+        // The forecast from the phone, and the date we last picked today's weather from it for
+        WearableForecast mForecast;
+        long mShownDate;
+
+        /* Loads weather art and saves the last weather, so neither blocks a frame */
+        HandlerThread mBackgroundThread;
+
+        /* For logging how long it takes until the watch face shows the weather, see #onDraw */
+        long mCreatedAtNanos;
+        boolean mFirstFrameLogged;
+        boolean mReceivedWeather;
+        boolean mReceivedWeatherLogged;
 
         GoogleApiClient mGoogleApiClient = new GoogleApiClient.Builder(SunshineDigitalWatchFaceService.this)
                 .addConnectionCallbacks(this)
@@ -128,21 +130,11 @@ public class SunshineDigitalWatchFaceService extends CanvasWatchFaceService {
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mCalendar.setTimeZone(TimeZone.getDefault());
+                mRenderer.setTimeZone(TimeZone.getDefault());
                 invalidate();
             }
         };
 
-        // Data to be displayed on the watchface
-        Bitmap mWeatherArtBitmap;
-
-        String high = "75",
-               low = "70";
-
-        float mXOffset;
-        float mYOffset;
-        float mContentYOffset;
-
         /**
          * Whether the display supports fewer bits for each color in ambient mode. When true, we
          * disable anti-aliasing in ambient mode.
@@ -158,54 +150,63 @@ public class SunshineDigitalWatchFaceService extends CanvasWatchFaceService {
                     .setBackgroundVisibility(WatchFaceStyle.BACKGROUND_VISIBILITY_INTERRUPTIVE)
                     .setShowSystemUiTime(false)
                     .build());
-            Resources resources = SunshineDigitalWatchFaceService.this.getResources();
-            mYOffset = resources.getDimension(R.dimen.digital_y_offset);
-            mContentYOffset = resources.getDimension(R.dimen.digital_content_y_offset);
-
-            mBackgroundPaint = new Paint();
-            mBackgroundPaint.setColor(resources.getColor(R.color.background));
-
-            mCenterLinePaint = new Paint();
-            mCenterLinePaint.setColor(resources.getColor(R.color.white));
-
-            mTextPaint = new Paint();
-            mTextPaint = createTextPaint(resources.getColor(R.color.digital_text));
-
-            mWeatherPaint = new Paint();
-            mWeatherPaint.setTextAlign(Paint.Align.CENTER);
-            mWeatherPaint.setColor(resources.getColor(R.color.digital_text));
-            mWeatherPaint.setTypeface(NORMAL_TYPEFACE);
-            mWeatherPaint.setAntiAlias(true);
+            mCreatedAtNanos = System.nanoTime();
+            mRenderer = new WatchFaceRenderer(SunshineDigitalWatchFaceService.this.getResources());
+
+            mBackgroundThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+            mBackgroundThread.start();
+            mWeatherArtLoader = new WeatherArtLoader(
+                    SunshineDigitalWatchFaceService.this.getResources(), mWeatherArtCache,
+                    mBackgroundThread.getLooper(), this);
+            mLastWeatherStore = new LastWeatherStore(SunshineDigitalWatchFaceService.this,
+                    mBackgroundThread.getLooper());
+
+            // Show the weather we had before we were restarted until the phone sends news
+            showLastWeather();
+        }
 
+        private void showLastWeather() {
+            WearableForecast forecast = mLastWeatherStore.load();
+            if (forecast == null) {
+                return;
+            }
 
-            // Sent anti-alias to false to improve performace
-            // since it does not have any effet on bitmaps
-            mWeatherImagePaint = new Paint();
-            mWeatherImagePaint.setAntiAlias(false);
+            mForecast = forecast;
+            showTodaysForecast();
+            Log.d(TAG, "Loaded the last forecast in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mCreatedAtNanos) + "ms");
+        }
 
-            mCalendar = Calendar.getInstance();
+        /**
+         * Shows today's entry of {@link #mForecast}. The art for its condition follows once it is
+         * decoded, the renderer keeps drawing what it has until then.
+         */
+        private void showTodaysForecast() {
+            long today = WatchFaceUtility.getNormalizedUtcDateForToday();
+            int day = mForecast.indexOfDayFrom(today);
+            if (day == -1) {
+                // The whole forecast is in the past, keep showing its last day
+                return;
+            }
+            mShownDate = today;
 
-            // Default waether art image
-            mWeatherArtBitmap = BitmapFactory.decodeResource(resources, R.drawable.ic_clear);
-            // Gray paint for weather art image
-            initGrayWeatherImagePaint();
+            mRenderer.setTemperatures(
+                    mForecast.maxTemps[day], mForecast.minTemps[day], mForecast.metric);
+            // Even while the engine is created, decoding and building the ambient copies of the
+            // art would hold up the first frame, so it starts out with the default art
+            mWeatherArtLoader.load(mForecast.weatherIds[day]);
         }
 
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mWeatherArtLoader.stop();
+            // Let the last weather finish saving
+            mBackgroundThread.quitSafely();
+            mRenderer.release();
             super.onDestroy();
         }
 
-        private Paint createTextPaint(int textColor) {
-            Paint paint = new Paint();
-            paint.setColor(textColor);
-            paint.setTypeface(NORMAL_TYPEFACE);
-            paint.setAntiAlias(true);
-            paint.setTextAlign(Paint.Align.CENTER);
-            return paint;
-        }
-
         @Override
         public void onVisibilityChanged(boolean visible) {
             super.onVisibilityChanged(visible);
@@ -214,7 +215,7 @@ public class SunshineDigitalWatchFaceService extends CanvasWatchFaceService {
                 registerReceiver();
 
                 // Update time zone in case it changed while we weren't visible.
-                mCalendar.setTimeZone(TimeZone.getDefault());
+                mRenderer.setTimeZone(TimeZone.getDefault());
 
                 // Connect to Google Play services
                 mGoogleApiClient.connect();
@@ -257,17 +258,13 @@ public class SunshineDigitalWatchFaceService extends CanvasWatchFaceService {
             super.onApplyWindowInsets(insets);
 
             // Load resources that have alternate values for round watches.
-            Resources resources = SunshineDigitalWatchFaceService.this.getResources();
-            boolean isRound = insets.isRound();
-            mXOffset = resources.getDimension(isRound
-                    ? R.dimen.digital_x_offset_round : R.dimen.digital_x_offset);
-            float textSize = resources.getDimension(isRound
-                    ? R.dimen.digital_text_size_round : R.dimen.digital_text_size);
-            float weatherTextSize = resources.getDimension(isRound
-                    ? R.dimen.digital_text_size_round_weather : R.dimen.digital_text_size_weather);
-
-            mTextPaint.setTextSize(textSize);
-            mWeatherPaint.setTextSize(weatherTextSize);
+            mRenderer.applyWindowInsets(insets.isRound());
+        }
+
+        @Override
+        public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+            super.onSurfaceChanged(holder, format, width, height);
+            mRenderer.setSurfaceSize(width, height);
         }
 
         @Override
@@ -279,6 +276,11 @@ public class SunshineDigitalWatchFaceService extends CanvasWatchFaceService {
         @Override
         public void onTimeTick() {
             super.onTimeTick();
+            // Move on to the next day of the forecast after midnight
+            if (mForecast != null
+                    && WatchFaceUtility.getNormalizedUtcDateForToday() != mShownDate) {
+                showTodaysForecast();
+            }
             invalidate();
         }
 
@@ -287,12 +289,7 @@ public class SunshineDigitalWatchFaceService extends CanvasWatchFaceService {
             super.onAmbientModeChanged(inAmbientMode);
             if (mAmbient != inAmbientMode) {
                 mAmbient = inAmbientMode;
-                mTextPaint.setTextAlign(Paint.Align.CENTER);
-                if (mLowBitAmbient) {
-                    // Set anti-alias accordingly
-                    mTextPaint.setAntiAlias(!inAmbientMode);
-                    mWeatherPaint.setAntiAlias(!inAmbientMode);
-                }
+                mRenderer.setAmbient(inAmbientMode, mLowBitAmbient);
                 invalidate();
             }
 
@@ -302,67 +299,24 @@ public class SunshineDigitalWatchFaceService extends CanvasWatchFaceService {
         }
 
 
-
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            // These are the coordiantes for drawing a line under the weather
-            // art image between the high and low temperature values
-            float lineStartX = bounds.centerX();
-            float lineStartY = mContentYOffset + mWeatherArtBitmap.getHeight() + 5f;
-            float lineStopY = lineStartY + 35f;
-
-            // Start x-coordinate for weather art bitmap
-            float weatherArtStartX = lineStartX - mWeatherArtBitmap.getWidth()/2;
-
-            // The x and y offsets for drawing the high and low temp
-            float weatherTextSize = mWeatherPaint.getTextSize();
-            float highOffsetX = lineStartX - weatherTextSize;
-            float highOffsetY = lineStartY + 30f;
-            float lowOffsetX = lineStartX + weatherTextSize;
-            float lowOffsetY = lineStartY + 30f;
-
-            // The formatted temperature values to draw on either side of the center line
-            String highText = String.format(getString(R.string.format_temperature), Float.valueOf(high));
-            String lowText = String.format(getString(R.string.format_temperature), Float.valueOf(low));
-
-            // Draw H:MM in ambient mode or H:MM:SS in interactive mode.
-            long now = System.currentTimeMillis();
-            mCalendar.setTimeInMillis(now);
-
-            String text = mAmbient
-                    ? String.format("%d:%02d", mCalendar.get(Calendar.HOUR),
-                    mCalendar.get(Calendar.MINUTE))
-                    : String.format("%d:%02d:%02d", mCalendar.get(Calendar.HOUR),
-                    mCalendar.get(Calendar.MINUTE), mCalendar.get(Calendar.SECOND));
-
-            // Draw the background.
-            if (isInAmbientMode()) {
-                canvas.drawColor(Color.BLACK);
-                canvas.drawBitmap(mWeatherArtBitmap, weatherArtStartX, mContentYOffset, mGrayWeatherImagePaint);
-            } else {
-                canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
-                canvas.drawBitmap(mWeatherArtBitmap, weatherArtStartX, mContentYOffset, mWeatherImagePaint);
-            }
-
-            // Draw the time
-            canvas.drawText(text, bounds.centerX(), mYOffset, mTextPaint);
-
-            // Draw the center line
-            canvas.drawLine(lineStartX, lineStartY, lineStartX, lineStopY, mCenterLinePaint);
-
-            // Draw the high temp to the left of the center line
-            canvas.drawText(highText, highOffsetX, highOffsetY, mWeatherPaint);
+            mRenderer.draw(canvas, System.currentTimeMillis());
 
-            // Draw the low temp to the right of the center line
-            canvas.drawText(lowText, lowOffsetX, lowOffsetY, mWeatherPaint);
+            if (!mFirstFrameLogged) {
+                mFirstFrameLogged = true;
+                logSinceCreated("First frame");
+            }
+            if (mReceivedWeather && !mReceivedWeatherLogged) {
+                mReceivedWeatherLogged = true;
+                logSinceCreated("First frame with weather from the phone");
+            }
         }
 
-        private void initGrayWeatherImagePaint() {
-            mGrayWeatherImagePaint = new Paint();
-            ColorMatrix colorMatrix = new ColorMatrix();
-            colorMatrix.setSaturation(0);
-            ColorMatrixColorFilter filter = new ColorMatrixColorFilter(colorMatrix);
-            mGrayWeatherImagePaint.setColorFilter(filter);
+        private void logSinceCreated(String event) {
+            Log.d(TAG, event + " drawn "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mCreatedAtNanos)
+                    + "ms after the engine was created");
         }
 
         /**
@@ -401,27 +355,68 @@ public class SunshineDigitalWatchFaceService extends CanvasWatchFaceService {
         public void onDataChanged(DataEventBuffer dataEventBuffer) {
             for(DataEvent dataEvent : dataEventBuffer) {
                 if(dataEvent.getType() == DataEvent.TYPE_CHANGED) {
-                    DataMap dataMap = DataMapItem.fromDataItem(dataEvent.getDataItem()).getDataMap();
-                    String path = dataEvent.getDataItem().getUri().getPath();
-                    if(path.equals(WatchFaceUtility.PATH_WEATHER_INFO)) {
-                        high = dataMap.getString(WatchFaceUtility.KEY_HIGH);
-                        low = dataMap.getString(WatchFaceUtility.KEY_LOW);
-                    } else if(path.equals(WatchFaceUtility.PATH_WEATHER_IMAGE)) {
-                        Asset imageAsset = dataMap.getAsset(WatchFaceUtility.KEY_IMAGE);
-                        mWeatherArtBitmap = WatchFaceUtility.loadBitmapFromAsset(imageAsset, getApplicationContext());
-                    }
-
-                    // Re-draw canvas
-                    invalidate();
+                    onWeatherDataItem(dataEvent.getDataItem());
                 }
             }
         }
 
+        /**
+         * Catches up with the data items the phone sent while we weren't listening, including
+         * before the watch face was (re)started.
+         */
+        private void queryDataItems() {
+            Wearable.DataApi.getDataItems(mGoogleApiClient)
+                    .setResultCallback(new ResultCallback<DataItemBuffer>() {
+                        @Override
+                        public void onResult(@NonNull DataItemBuffer dataItems) {
+                            try {
+                                if (!dataItems.getStatus().isSuccess()) {
+                                    Log.d(TAG, "Could not query data items: "
+                                            + dataItems.getStatus());
+                                    return;
+                                }
+                                for (DataItem dataItem : dataItems) {
+                                    onWeatherDataItem(dataItem);
+                                }
+                            } finally {
+                                dataItems.release();
+                            }
+                        }
+                    });
+        }
+
+        private void onWeatherDataItem(DataItem dataItem) {
+            if (!WatchFaceUtility.PATH_FORECAST.equals(dataItem.getUri().getPath())) {
+                return;
+            }
+
+            byte[] data = dataItem.getData();
+            try {
+                mForecast = WearableForecast.decode(data);
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Ignoring a forecast we can't read", e);
+                return;
+            }
+            mLastWeatherStore.save(data);
+            mReceivedWeather = true;
+            showTodaysForecast();
+
+            // Re-draw canvas
+            invalidate();
+        }
+
+        @Override  // WeatherArtLoader.Callback
+        public void onWeatherArtLoaded(int weatherId, WeatherArt art) {
+            mRenderer.setWeatherArt(art);
+            invalidate();
+        }
+
         @Override  // GoogleApiClient.ConnectionCallbacks
         public void onConnected(Bundle connectionHint) {
             Log.d(TAG, "onConnected: " + connectionHint);
 
             Wearable.DataApi.addListener(mGoogleApiClient, Engine.this);
+            queryDataItems();
         }
 
         @Override  // GoogleApiClient.ConnectionCallbacks
@@ -0,0 +1,343 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+
+import java.util.TimeZone;
+
+/**
+ * Draws the Sunshine watch face: the time, the weather art and today's high and low
+ * temperatures.
+ * <p>
+ * {@link #draw(Canvas, long)} runs once a second in interactive mode, so it must not allocate
+ * anything. Everything that only changes when the weather, the window insets or the surface
+ * change, like the temperature strings and where each element goes, is worked out when that
+ * happens. The time is written digit by digit into a char array that is reused for every frame.
+ * <p>
+ * Everything but the time is drawn into an offscreen layer, one for interactive and one for
+ * ambient mode. A frame copies the layer for the current mode and draws the time on top. A
+ * layer is rebuilt, on the next frame drawn in its mode, after anything on it changed.
+ */
+final class WatchFaceRenderer {
+
+    private static final Typeface NORMAL_TYPEFACE =
+            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
+
+    private static final long SECONDS_IN_DAY = 24 * 60 * 60;
+
+    /* Room for the longest time we draw, "HH:MM:SS" */
+    private static final int MAX_TIME_LENGTH = 8;
+
+    private static final int LAYER_INTERACTIVE = 0;
+    private static final int LAYER_AMBIENT = 1;
+    private static final int LAYER_COUNT = 2;
+
+    private final Resources mResources;
+
+    private final Paint mBackgroundPaint;
+    private final Paint mCenterLinePaint;
+    private final Paint mTextPaint;
+    private final Paint mWeatherPaint;
+    private final Paint mWeatherImagePaint;
+
+    private final char[] mTimeText = new char[MAX_TIME_LENGTH];
+
+    private final float mYOffset;
+    private final float mContentYOffset;
+
+    private final Bitmap[] mLayers = new Bitmap[LAYER_COUNT];
+    private final boolean[] mLayerStale = new boolean[LAYER_COUNT];
+    private final Canvas mLayerCanvas = new Canvas();
+    private boolean mLayersEnabled = true;
+
+    private TimeZone mTimeZone = TimeZone.getDefault();
+    private boolean mAmbient;
+    private boolean mLowBitAmbient;
+
+    // Data to be displayed on the watchface
+    private WeatherArt mWeatherArt;
+    private String mHighText;
+    private String mLowText;
+
+    // Layout, see #updateLayout
+    private int mWidth;
+    private int mHeight;
+    private float mCenterX;
+    private float mLineStartY;
+    private float mLineStopY;
+    private float mWeatherArtStartX;
+    private float mHighOffsetX;
+    private float mLowOffsetX;
+    private float mTemperatureOffsetY;
+
+    WatchFaceRenderer(Resources resources) {
+        mResources = resources;
+        mYOffset = resources.getDimension(R.dimen.digital_y_offset);
+        mContentYOffset = resources.getDimension(R.dimen.digital_content_y_offset);
+
+        mBackgroundPaint = new Paint();
+        mBackgroundPaint.setColor(resources.getColor(R.color.background));
+
+        mCenterLinePaint = new Paint();
+        mCenterLinePaint.setColor(resources.getColor(R.color.white));
+
+        mTextPaint = createTextPaint(resources.getColor(R.color.digital_text));
+        mWeatherPaint = createTextPaint(resources.getColor(R.color.digital_text));
+
+        // Sent anti-alias to false to improve performace
+        // since it does not have any effet on bitmaps
+        mWeatherImagePaint = new Paint();
+        mWeatherImagePaint.setAntiAlias(false);
+
+        // Default weather art image and temperatures
+        mWeatherArt = WeatherArt.from(
+                BitmapFactory.decodeResource(resources, R.drawable.ic_clear));
+        mHighText = formatTemperature(75);
+        mLowText = formatTemperature(70);
+    }
+
+    private static Paint createTextPaint(int textColor) {
+        Paint paint = new Paint();
+        paint.setColor(textColor);
+        paint.setTypeface(NORMAL_TYPEFACE);
+        paint.setAntiAlias(true);
+        paint.setTextAlign(Paint.Align.CENTER);
+        return paint;
+    }
+
+    /**
+     * Picks the text sizes for a round or a square screen.
+     */
+    void applyWindowInsets(boolean isRound) {
+        mTextPaint.setTextSize(mResources.getDimension(isRound
+                ? R.dimen.digital_text_size_round : R.dimen.digital_text_size));
+        mWeatherPaint.setTextSize(mResources.getDimension(isRound
+                ? R.dimen.digital_text_size_round_weather : R.dimen.digital_text_size_weather));
+        updateLayout();
+    }
+
+    void setSurfaceSize(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        updateLayout();
+    }
+
+    /**
+     * @param high   The high temperature in degrees celsius
+     * @param low    The low temperature in degrees celsius
+     * @param metric Whether to show them in celsius rather than fahrenheit
+     */
+    void setTemperatures(double high, double low, boolean metric) {
+        if (!metric) {
+            high = celsiusToFahrenheit(high);
+            low = celsiusToFahrenheit(low);
+        }
+        mHighText = formatTemperature(high);
+        mLowText = formatTemperature(low);
+        invalidateLayers();
+    }
+
+    void setWeatherArt(WeatherArt weatherArt) {
+        if (weatherArt == null) {
+            return;
+        }
+        mWeatherArt = weatherArt;
+        updateLayout();
+    }
+
+    void setTimeZone(TimeZone timeZone) {
+        mTimeZone = timeZone;
+    }
+
+    void setAmbient(boolean ambient, boolean lowBitAmbient) {
+        if (lowBitAmbient != mLowBitAmbient) {
+            /* The layers were drawn with the wrong anti-aliasing and art */
+            mLowBitAmbient = lowBitAmbient;
+            invalidateLayers();
+        }
+        mAmbient = ambient;
+        if (lowBitAmbient) {
+            // Set anti-alias accordingly
+            mTextPaint.setAntiAlias(!ambient);
+            mWeatherPaint.setAntiAlias(!ambient);
+        }
+    }
+
+    /**
+     * Turns the offscreen layers on or off. Without them every frame draws everything, which is
+     * only useful to measure what the layers save.
+     */
+    void setLayersEnabled(boolean enabled) {
+        mLayersEnabled = enabled;
+        invalidateLayers();
+    }
+
+    /**
+     * Frees the offscreen layers. They are created again by the next frame.
+     */
+    void release() {
+        for (int layer = 0; layer < LAYER_COUNT; layer++) {
+            if (mLayers[layer] != null) {
+                mLayers[layer].recycle();
+                mLayers[layer] = null;
+            }
+        }
+        invalidateLayers();
+    }
+
+    /**
+     * Draws a frame. Allocates nothing unless a layer has to be rebuilt, see the class comment.
+     *
+     * @param canvas     The canvas to draw on, as big as the last size set with
+     *                   {@link #setSurfaceSize(int, int)}
+     * @param timeMillis The time to show
+     */
+    void draw(Canvas canvas, long timeMillis) {
+        int layer = mAmbient ? LAYER_AMBIENT : LAYER_INTERACTIVE;
+        if (mLayersEnabled && mWidth > 0 && mHeight > 0) {
+            if (mLayerStale[layer]) {
+                buildLayer(layer);
+            }
+            canvas.drawBitmap(mLayers[layer], 0, 0, null);
+        } else {
+            drawStaticContent(canvas);
+        }
+
+        // Draw H:MM in ambient mode or H:MM:SS in interactive mode.
+        int length = formatTime(mTimeText, timeMillis + mTimeZone.getOffset(timeMillis),
+                !mAmbient);
+        canvas.drawText(mTimeText, 0, length, mCenterX, mYOffset, mTextPaint);
+    }
+
+    private void buildLayer(int layer) {
+        Bitmap bitmap = mLayers[layer];
+        if (bitmap == null || bitmap.getWidth() != mWidth || bitmap.getHeight() != mHeight) {
+            if (bitmap != null) {
+                bitmap.recycle();
+            }
+            bitmap = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+            mLayers[layer] = bitmap;
+        }
+
+        mLayerCanvas.setBitmap(bitmap);
+        drawStaticContent(mLayerCanvas);
+        mLayerCanvas.setBitmap(null);
+        mLayerStale[layer] = false;
+    }
+
+    private void invalidateLayers() {
+        for (int layer = 0; layer < LAYER_COUNT; layer++) {
+            mLayerStale[layer] = true;
+        }
+    }
+
+    /* Draws everything but the time, for the current mode */
+    private void drawStaticContent(Canvas canvas) {
+        // Draw the background.
+        if (mAmbient) {
+            canvas.drawColor(Color.BLACK);
+            canvas.drawBitmap(mLowBitAmbient ? mWeatherArt.lowBit : mWeatherArt.ambient,
+                    mWeatherArtStartX, mContentYOffset, mWeatherImagePaint);
+        } else {
+            canvas.drawRect(0, 0, mWidth, mHeight, mBackgroundPaint);
+            canvas.drawBitmap(mWeatherArt.color, mWeatherArtStartX, mContentYOffset,
+                    mWeatherImagePaint);
+        }
+
+        // Draw the center line
+        canvas.drawLine(mCenterX, mLineStartY, mCenterX, mLineStopY, mCenterLinePaint);
+
+        // Draw the high temp to the left of the center line
+        canvas.drawText(mHighText, mHighOffsetX, mTemperatureOffsetY, mWeatherPaint);
+
+        // Draw the low temp to the right of the center line
+        canvas.drawText(mLowText, mLowOffsetX, mTemperatureOffsetY, mWeatherPaint);
+    }
+
+    private void updateLayout() {
+        mCenterX = mWidth / 2f;
+
+        // These are the coordiantes for drawing a line under the weather
+        // art image between the high and low temperature values
+        mLineStartY = mContentYOffset + mWeatherArt.getHeight() + 5f;
+        mLineStopY = mLineStartY + 35f;
+
+        // Start x-coordinate for weather art bitmap
+        mWeatherArtStartX = mCenterX - mWeatherArt.getWidth() / 2;
+
+        // The x and y offsets for drawing the high and low temp
+        float weatherTextSize = mWeatherPaint.getTextSize();
+        mHighOffsetX = mCenterX - weatherTextSize;
+        mLowOffsetX = mCenterX + weatherTextSize;
+        mTemperatureOffsetY = mLineStartY + 30f;
+
+        invalidateLayers();
+    }
+
+    private String formatTemperature(double temperature) {
+        /* For presentation, assume the user doesn't care about tenths of a degree. */
+        return String.format(mResources.getString(R.string.format_temperature), temperature);
+    }
+
+    private static double celsiusToFahrenheit(double temperatureInCelsius) {
+        return (temperatureInCelsius * 1.8) + 32;
+    }
+
+    /**
+     * Writes the time of day as H:MM or H:MM:SS into a char array, with the hour from 0 to 11
+     * like {@link java.util.Calendar#HOUR}.
+     *
+     * @param out         Where to write the time, at least 8 chars long
+     * @param localMillis The time in milliseconds since the epoch, shifted to the local time zone
+     * @param showSeconds Whether to include the seconds
+     * @return The number of chars written
+     */
+    static int formatTime(char[] out, long localMillis, boolean showSeconds) {
+        long secondOfDay = (localMillis / 1000) % SECONDS_IN_DAY;
+        if (secondOfDay < 0) {
+            secondOfDay += SECONDS_IN_DAY;
+        }
+        int hour = (int) (secondOfDay / 3600) % 12;
+        int minute = (int) (secondOfDay / 60 % 60);
+        int second = (int) (secondOfDay % 60);
+
+        int length = 0;
+        if (hour >= 10) {
+            out[length++] = (char) ('0' + hour / 10);
+        }
+        out[length++] = (char) ('0' + hour % 10);
+        length = appendTwoDigits(out, length, minute);
+        if (showSeconds) {
+            length = appendTwoDigits(out, length, second);
+        }
+        return length;
+    }
+
+    private static int appendTwoDigits(char[] out, int length, int value) {
+        out[length++] = ':';
+        out[length++] = (char) ('0' + value / 10);
+        out[length++] = (char) ('0' + value % 10);
+        return length;
+    }
+}
@@ -1,16 +1,8 @@
 package com.example.android.sunshine;
 
-import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.util.Log;
 
-import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.wearable.Asset;
-import com.google.android.gms.wearable.Wearable;
-
-import java.io.InputStream;
+import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -18,39 +10,59 @@ import java.util.concurrent.TimeUnit;
  */
 
 public class WatchFaceUtility {
-    // The Paths and Keys used to send data items to the wearable device
-    public static final String PATH_WEATHER_INFO = "/weather-info";
-    public static final String PATH_WEATHER_IMAGE = "/weather-image";
-    public static final String KEY_HIGH = "high";
-    public static final String KEY_LOW = "low";
-    public static final String KEY_IMAGE = "image";
-
-    // Connection time out for GoogleApiClient
-    static final long TIMEOUT_MS = 10000;  // 10 seconds
-
-    public static Bitmap loadBitmapFromAsset(Asset asset, Context context) {
-        GoogleApiClient mGoogleApiClient = new GoogleApiClient.Builder(context)
-                .addApi(Wearable.API)
-                .build();
-
-        if (asset == null) {
-            throw new IllegalArgumentException("Asset must be non-null");
-        }
-        ConnectionResult result =
-                mGoogleApiClient.blockingConnect(TIMEOUT_MS, TimeUnit.MILLISECONDS);
-        if (!result.isSuccess()) {
-            return null;
-        }
-        // convert asset into a file descriptor and block until it's ready
-        InputStream assetInputStream = Wearable.DataApi.getFdForAsset(
-                mGoogleApiClient, asset).await().getInputStream();
-        mGoogleApiClient.disconnect();
-
-        if (assetInputStream == null) {
-            Log.w("wearableservice", "Requested an unknown Asset.");
-            return null;
+    private static final String TAG = WatchFaceUtility.class.getSimpleName();
+
+    // The Path of the data item that carries the forecast from the phone, see WearableForecast
+    public static final String PATH_FORECAST = "/forecast";
+
+    private static final long DAY_IN_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * Returns today's date the way the phone normalizes forecast dates: midnight UTC of the
+     * local date, in milliseconds.
+     */
+    public static long getNormalizedUtcDateForToday() {
+        long utcNowMillis = System.currentTimeMillis();
+        long localNowMillis = utcNowMillis + TimeZone.getDefault().getOffset(utcNowMillis);
+        return localNowMillis / DAY_IN_MILLIS * DAY_IN_MILLIS;
+    }
+
+    /**
+     * Maps a weather condition id from OpenWeatherMap to the art we bundle for it. The same
+     * mapping as the phone app's SunshineWeatherUtils.getSmallArtResourceIdForWeatherCondition.
+     */
+    public static int getArtResourceIdForWeatherCondition(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.ic_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.ic_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.ic_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.ic_fog;
+        } else if (weatherId == 761 || weatherId == 771 || weatherId == 781) {
+            return R.drawable.ic_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.ic_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.ic_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.ic_cloudy;
+        } else if (weatherId >= 900 && weatherId <= 906) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 958 && weatherId <= 962) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 951 && weatherId <= 957) {
+            return R.drawable.ic_clear;
         }
-        // decode the stream into a bitmap
-        return BitmapFactory.decodeStream(assetInputStream);
+
+        Log.e(TAG, "Unknown Weather: " + weatherId);
+        return R.drawable.ic_storm;
     }
 }
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * The forecast the phone sends to the watch face, as the data of a single DataItem on
+ * {@link WatchFaceUtility#PATH_FORECAST}. The watch picks today's entry itself, maps
+ * the weather id to the art it bundles and formats the temperatures in the units given here.
+ * <p>
+ * The encoding is big-endian:
+ * <pre>
+ *   u8  version, {@link #VERSION}
+ *   u8  flags, {@link #FLAG_METRIC}
+ *   u8  number of days
+ *   s32 first date, in days since the epoch, 0 if there are no days
+ *   for each day:
+ *     u16 days since the previous date (0 for the first day)
+ *     u16 weather id
+ *     s16 min temperature, in tenths of a degree celsius
+ *     s16 max temperature, in tenths of a degree celsius
+ * </pre>
+ * This is a copy of the phone app's class of the same name, which is where it is tested. The
+ * two must stay byte for byte compatible.
+ */
+final class WearableForecast {
+
+    static final int VERSION = 1;
+
+    static final int FLAG_METRIC = 1;
+
+    static final int MAX_DAYS = 0xff;
+
+    private static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+
+    private static final int HEADER_BYTES = 1 + 1 + 1 + 4;
+    private static final int DAY_BYTES = 2 + 2 + 2 + 2;
+
+    /* Whether the user wants temperatures in celsius rather than fahrenheit */
+    final boolean metric;
+
+    /* Normalized dates (UTC midnight of the local day, like the database's), in ascending order */
+    final long[] dates;
+    final int[] weatherIds;
+
+    /* In degrees celsius, only tenths of a degree survive encoding */
+    final double[] minTemps;
+    final double[] maxTemps;
+
+    WearableForecast(boolean metric, long[] dates, int[] weatherIds,
+                     double[] minTemps, double[] maxTemps) {
+        int size = dates.length;
+        if (size > MAX_DAYS || weatherIds.length != size
+                || minTemps.length != size || maxTemps.length != size) {
+            throw new IllegalArgumentException("Bad forecast size: " + size);
+        }
+        this.metric = metric;
+        this.dates = dates;
+        this.weatherIds = weatherIds;
+        this.minTemps = minTemps;
+        this.maxTemps = maxTemps;
+    }
+
+    int size() {
+        return dates.length;
+    }
+
+    /**
+     * @param normalizedDate A normalized date, usually today's
+     * @return The index of the first day on or after that date, or -1 if there is none
+     */
+    int indexOfDayFrom(long normalizedDate) {
+        for (int i = 0; i < dates.length; i++) {
+            if (dates[i] >= normalizedDate) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @throws IllegalArgumentException If a date isn't normalized, the dates aren't ascending or
+     *                                  a value doesn't fit its field
+     */
+    byte[] encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + DAY_BYTES * dates.length);
+        buffer.put((byte) VERSION);
+        buffer.put((byte) (metric ? FLAG_METRIC : 0));
+        buffer.put((byte) dates.length);
+
+        long previousDay = dates.length > 0 ? toDay(dates[0]) : 0;
+        if (previousDay != (int) previousDay) {
+            throw new IllegalArgumentException("Date out of range: " + dates[0]);
+        }
+        buffer.putInt((int) previousDay);
+
+        for (int i = 0; i < dates.length; i++) {
+            long day = toDay(dates[i]);
+            buffer.putShort(toUnsignedShort(day - previousDay, "date"));
+            buffer.putShort(toUnsignedShort(weatherIds[i], "weather id"));
+            buffer.putShort(toTenths(minTemps[i]));
+            buffer.putShort(toTenths(maxTemps[i]));
+            previousDay = day;
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @throws IllegalArgumentException If the data isn't a forecast this version understands
+     */
+    static WearableForecast decode(byte[] data) {
+        if (data == null || data.length < HEADER_BYTES) {
+            throw new IllegalArgumentException("Forecast too short");
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        int version = buffer.get() & 0xff;
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported forecast version: " + version);
+        }
+        int flags = buffer.get() & 0xff;
+        if ((flags & ~FLAG_METRIC) != 0) {
+            throw new IllegalArgumentException("Unknown forecast flags: " + flags);
+        }
+        int size = buffer.get() & 0xff;
+        if (data.length != HEADER_BYTES + DAY_BYTES * size) {
+            throw new IllegalArgumentException("Forecast of " + size + " days can't be "
+                    + data.length + " bytes");
+        }
+
+        long[] dates = new long[size];
+        int[] weatherIds = new int[size];
+        double[] minTemps = new double[size];
+        double[] maxTemps = new double[size];
+        try {
+            long day = buffer.getInt();
+            if (size == 0 && day != 0) {
+                throw new IllegalArgumentException("Empty forecast with a first date");
+            }
+            for (int i = 0; i < size; i++) {
+                int daysSincePrevious = buffer.getShort() & 0xffff;
+                if (i == 0 && daysSincePrevious != 0) {
+                    throw new IllegalArgumentException("First day of the forecast is offset");
+                }
+                day += daysSincePrevious;
+                dates[i] = day * DAY_IN_MILLIS;
+                weatherIds[i] = buffer.getShort() & 0xffff;
+                minTemps[i] = buffer.getShort() / 10.0;
+                maxTemps[i] = buffer.getShort() / 10.0;
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Forecast truncated", e);
+        }
+        return new WearableForecast((flags & FLAG_METRIC) != 0,
+                dates, weatherIds, minTemps, maxTemps);
+    }
+
+    private static long toDay(long normalizedDate) {
+        if (normalizedDate % DAY_IN_MILLIS != 0) {
+            throw new IllegalArgumentException("Date not normalized: " + normalizedDate);
+        }
+        return normalizedDate / DAY_IN_MILLIS;
+    }
+
+    private static short toUnsignedShort(long value, String field) {
+        if (value < 0 || value > 0xffff) {
+            throw new IllegalArgumentException("Bad " + field + ": " + value);
+        }
+        return (short) value;
+    }
+
+    private static short toTenths(double temperature) {
+        long tenths = Math.round(temperature * 10);
+        if (tenths < Short.MIN_VALUE || tenths > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Temperature out of range: " + temperature);
+        }
+        return (short) tenths;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Paint;
+
+/**
+ * The weather art for one condition, in full colour for interactive mode, already desaturated
+ * for ambient mode and reduced to lit and unlit pixels for ambient mode on low-bit screens, so
+ * no mode has to filter the image while drawing it.
+ */
+final class WeatherArt {
+
+    /* A pixel of the ambient art at least this bright on a black background is lit in low-bit */
+    static final int LOW_BIT_THRESHOLD = 0x80;
+
+    final Bitmap color;
+    final Bitmap ambient;
+    final Bitmap lowBit;
+
+    private WeatherArt(Bitmap color, Bitmap ambient, Bitmap lowBit) {
+        this.color = color;
+        this.ambient = ambient;
+        this.lowBit = lowBit;
+    }
+
+    /**
+     * @param color The decoded weather art
+     * @return The art together with its grayscale and low-bit copies for ambient mode
+     */
+    static WeatherArt from(Bitmap color) {
+        Bitmap ambient = Bitmap.createBitmap(
+                color.getWidth(), color.getHeight(), Bitmap.Config.ARGB_8888);
+
+        Paint grayPaint = new Paint();
+        ColorMatrix colorMatrix = new ColorMatrix();
+        colorMatrix.setSaturation(0);
+        grayPaint.setColorFilter(new ColorMatrixColorFilter(colorMatrix));
+        new Canvas(ambient).drawBitmap(color, 0, 0, grayPaint);
+
+        return new WeatherArt(color, ambient, toLowBit(ambient));
+    }
+
+    /**
+     * @return Whether a pixel of the grayscale art shows up lit on a low-bit screen, once drawn
+     * on the black background of ambient mode
+     */
+    static boolean isLitInLowBit(int grayPixel) {
+        return Color.red(grayPixel) * Color.alpha(grayPixel) / 0xff >= LOW_BIT_THRESHOLD;
+    }
+
+    /* Opaque white where the grayscale art is lit, transparent everywhere else */
+    private static Bitmap toLowBit(Bitmap gray) {
+        int width = gray.getWidth();
+        int height = gray.getHeight();
+        int[] pixels = new int[width * height];
+        gray.getPixels(pixels, 0, width, 0, 0, width, height);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = isLitInLowBit(pixels[i]) ? Color.WHITE : Color.TRANSPARENT;
+        }
+        return Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    int getWidth() {
+        return color.getWidth();
+    }
+
+    int getHeight() {
+        return color.getHeight();
+    }
+
+    /* How much memory all three bitmaps take */
+    int getByteCount() {
+        return color.getAllocationByteCount() + ambient.getAllocationByteCount()
+                + lowBit.getAllocationByteCount();
+    }
+}
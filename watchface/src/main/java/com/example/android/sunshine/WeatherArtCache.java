@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine;
+
+import android.support.v4.util.LruCache;
+
+/**
+ * Decoded {@link WeatherArt} keyed by weather condition id. The art comes from the drawables
+ * bundled with the watch face, which {@link WeatherArtLoader} decodes. When the weather goes back
+ * to a condition the watch has shown recently, the art comes from here and its resource isn't
+ * decoded, nor its ambient copies built, again.
+ * <p>
+ * The cache is bounded by the bytes its bitmaps take and drops the least recently used art
+ * first. Evicted bitmaps aren't recycled, the renderer may still be drawing one of them. Since
+ * Lollipop their pixels live on the Java heap and go away with the last reference anyway.
+ */
+final class WeatherArtCache {
+
+    /* Room for a dozen or so conditions at the size of the bundled art */
+    static final int DEFAULT_MAX_SIZE_BYTES = 1024 * 1024;
+
+    private final LruCache<Integer, WeatherArt> mCache;
+
+    WeatherArtCache(int maxSizeBytes) {
+        mCache = new LruCache<Integer, WeatherArt>(maxSizeBytes) {
+            @Override
+            protected int sizeOf(Integer weatherId, WeatherArt art) {
+                return art.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * @return The art for the condition, or null if it isn't cached. Counts as a hit or a miss.
+     */
+    WeatherArt get(int weatherId) {
+        return mCache.get(weatherId);
+    }
+
+    void put(int weatherId, WeatherArt art) {
+        mCache.put(weatherId, art);
+    }
+
+    int getHitCount() {
+        return mCache.hitCount();
+    }
+
+    int getMissCount() {
+        return mCache.missCount();
+    }
+
+    int getEvictionCount() {
+        return mCache.evictionCount();
+    }
+
+    /* The bytes the cached bitmaps take */
+    int getSizeBytes() {
+        return mCache.size();
+    }
+
+    int getMaxSizeBytes() {
+        return mCache.maxSize();
+    }
+
+    @Override
+    public String toString() {
+        return "WeatherArtCache{hits=" + getHitCount()
+                + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount()
+                + ", bytes=" + getSizeBytes() + "/" + getMaxSizeBytes() + "}";
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine;
+
+import android.content.res.Resources;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+/**
+ * Decodes the weather art we bundle for each condition on a background thread, so the watch
+ * face's main thread never waits for a decode.
+ * <p>
+ * Decoded art goes into the {@link WeatherArtCache} and is handed to the {@link Callback} on the
+ * main thread. Only the most recent request is delivered: if a newer one was made while art was
+ * decoding, the older result is dropped.
+ */
+final class WeatherArtLoader {
+
+    private static final String TAG = WeatherArtLoader.class.getSimpleName();
+
+    interface Callback {
+        /**
+         * Called on the main thread with the art for the latest request.
+         *
+         * @param weatherId The condition the art is for
+         */
+        void onWeatherArtLoaded(int weatherId, WeatherArt art);
+    }
+
+    private final Resources mResources;
+    private final WeatherArtCache mCache;
+    private final Callback mCallback;
+
+    private final Handler mBackgroundHandler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /* Bumped by every request, a result is only delivered if it is still the latest one */
+    private volatile int mGeneration;
+
+    /**
+     * @param backgroundLooper The looper of the thread art is decoded on
+     */
+    WeatherArtLoader(Resources resources, WeatherArtCache cache,
+                     Looper backgroundLooper, Callback callback) {
+        mResources = resources;
+        mCache = cache;
+        mCallback = callback;
+        mBackgroundHandler = new Handler(backgroundLooper);
+    }
+
+    /**
+     * Loads the art for a condition. Must be called on the main thread. Art that is already
+     * cached is delivered right away, anything else once it has been decoded.
+     *
+     * @param weatherId The weather condition id
+     */
+    void load(final int weatherId) {
+        final int generation = ++mGeneration;
+
+        WeatherArt cached = getCached(weatherId);
+        if (cached != null) {
+            mCallback.onWeatherArtLoaded(weatherId, cached);
+            return;
+        }
+
+        mBackgroundHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (generation != mGeneration) {
+                    /* A newer request came in before we even started */
+                    return;
+                }
+                final WeatherArt art = decode(weatherId);
+
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == mGeneration) {
+                            mCallback.onWeatherArtLoaded(weatherId, art);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Drops every pending request. Nothing is delivered after this.
+     */
+    void stop() {
+        mGeneration++;
+        mBackgroundHandler.removeCallbacksAndMessages(null);
+        mMainHandler.removeCallbacksAndMessages(null);
+    }
+
+    private WeatherArt getCached(int weatherId) {
+        return mCache.get(weatherId);
+    }
+
+    private WeatherArt decode(int weatherId) {
+        int resId = WatchFaceUtility.getArtResourceIdForWeatherCondition(weatherId);
+        WeatherArt art = WeatherArt.from(BitmapFactory.decodeResource(mResources, resId));
+        mCache.put(weatherId, art);
+        /* Off unless enabled with setprop */
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Weather art cache miss for " + weatherId + ": " + mCache);
+        }
+        return art;
+    }
+}